@@ -0,0 +1,112 @@
+package benchmarks;
+
+import enums.SpotSize;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import models.ParkingLot;
+import models.Vehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import services.ParkingManager;
+import services.WriteAheadLog;
+
+/**
+ * Parking a burst of vehicles and removing them again, through the batch
+ * calls against one park and one unpark per vehicle
+ * With a write-ahead log attached, each single call waits for its own disk
+ * flush while a batch waits for one
+ * @author Haryad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchParkingBenchmark {
+
+    @Param({"8", "64", "512"})
+    public int batchSize;
+
+    @Param({"false", "true"})
+    public boolean writeAheadLog;
+
+    private ParkingManager manager;
+    private WriteAheadLog log;
+    private Path logDirectory;
+    private List<Vehicle> vehicles;
+    private List<String> plates;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkSupport.silenceConsole();
+        manager = new ParkingManager(new ParkingLot("Benchmark", 10_000));
+        if (writeAheadLog) {
+            logDirectory = Files.createTempDirectory("batch-bench");
+            log = new WriteAheadLog(logDirectory);
+            manager.setWriteAheadLog(log);
+        }
+        vehicles = new ArrayList<>(batchSize);
+        plates = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Vehicle vehicle = BenchmarkSupport.vehicle(SpotSize.REGULAR, "BATCH" + i);
+            vehicles.add(vehicle);
+            plates.add(vehicle.getLicensePlate());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (log != null) {
+            log.close();
+            try (Stream<Path> files = Files.walk(logDirectory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int looped() {
+        int removed = 0;
+        for (Vehicle vehicle : vehicles) {
+            manager.park(vehicle);
+        }
+        for (String plate : plates) {
+            if (manager.unpark(plate) != null) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Benchmark
+    public int batched() {
+        manager.parkAll(vehicles);
+        int removed = 0;
+        for (Vehicle vehicle : manager.unparkAll(plates)) {
+            if (vehicle != null) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
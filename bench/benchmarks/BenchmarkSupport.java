@@ -0,0 +1,74 @@
+package benchmarks;
+
+import enums.SpotSize;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import models.Car;
+import models.Motorcycle;
+import models.ParkingLot;
+import models.Truck;
+import models.Vehicle;
+
+/**
+ * Shared setup for the benchmarks
+ * @author Haryad
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Send the services' console messages nowhere, so the benchmarks measure
+     * the work instead of the terminal
+     * JMH reports results over its own channel, so this does not hide them
+     */
+    static void silenceConsole() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Fill every spot size of a lot to the same percentage, with the vehicle
+     * type that belongs in it
+     * @param lot the lot to fill
+     * @param occupancyPercent percentage of each size to occupy
+     * @return the parked vehicles
+     */
+    static Vehicle[] fill(ParkingLot lot, int occupancyPercent) {
+        int total = 0;
+        for (SpotSize size : SpotSize.values()) {
+            total += lot.getSpotsCountBySize(size) * occupancyPercent / 100;
+        }
+
+        Vehicle[] parked = new Vehicle[total];
+        int next = 0;
+        for (SpotSize size : SpotSize.values()) {
+            int count = lot.getSpotsCountBySize(size) * occupancyPercent / 100;
+            for (int i = 0; i < count; i++) {
+                Vehicle vehicle = vehicle(size, "FILL-" + next);
+                if (lot.parkVehicle(vehicle, size) == null) {
+                    throw new IllegalStateException("Could not fill " + size + " spots");
+                }
+                parked[next++] = vehicle;
+            }
+        }
+        return parked;
+    }
+
+    /**
+     * Make a vehicle that fits a given spot size
+     * @param size the spot size
+     * @param licensePlate the plate to use
+     * @return a new vehicle
+     */
+    static Vehicle vehicle(SpotSize size, String licensePlate) {
+        return switch (size) {
+            case COMPACT ->
+                new Motorcycle(licensePlate, "Black", "Honda", "CB500", 2022, false);
+            case REGULAR ->
+                new Car(licensePlate, "Red", "Toyota", "Camry", 2022);
+            case LARGE ->
+                new Truck(licensePlate, "White", "Ford", "F-150", 2022, 2.5);
+        };
+    }
+}
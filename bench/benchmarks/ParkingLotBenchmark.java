@@ -0,0 +1,97 @@
+package benchmarks;
+
+import enums.SpotSize;
+import java.util.concurrent.TimeUnit;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Vehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parking hot paths of ParkingLot across lot sizes and occupancy levels
+ * <p>
+ * Park and remove are measured as one round trip so the lot stays at the
+ * chosen occupancy for the whole run; lookups are measured on their own.</p>
+ * @author Haryad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParkingLotBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int spots;
+
+    @Param({"0", "50", "90"})
+    public int occupancyPercent;
+
+    private ParkingLot lot;
+    private Vehicle[] parked;
+    private Vehicle visitor;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.silenceConsole();
+        lot = new ParkingLot("Benchmark", spots);
+        parked = BenchmarkSupport.fill(lot, occupancyPercent);
+        visitor = BenchmarkSupport.vehicle(SpotSize.REGULAR, "VISITOR");
+    }
+
+    /**
+     * Next parked vehicle, cycling through all of them so lookups are not
+     * always served from the same cache lines
+     * @return a parked vehicle
+     */
+    private Vehicle nextParked() {
+        Vehicle vehicle = parked[cursor];
+        cursor = (cursor + 1 == parked.length) ? 0 : cursor + 1;
+        return vehicle;
+    }
+
+    @Benchmark
+    public Vehicle parkAndRemove() {
+        lot.parkVehicle(visitor);
+        return lot.removeVehicle(visitor.getLicensePlate());
+    }
+
+    @Benchmark
+    public ParkingSpot findSpotByVehicle() {
+        if (parked.length == 0) {
+            return lot.findSpotByVehicle(visitor.getLicensePlate());
+        }
+        return lot.findSpotByVehicle(nextParked().getLicensePlate());
+    }
+
+    @Benchmark
+    public ParkingSpot findSpotByVehicleMiss() {
+        return lot.findSpotByVehicle(visitor.getLicensePlate());
+    }
+
+    @Benchmark
+    public void findAvailableSpot(Blackhole blackhole) {
+        for (SpotSize size : SpotSize.values()) {
+            blackhole.consume(lot.findAvailableSpot(size));
+        }
+    }
+
+    @Benchmark
+    public int getAvailableSpotsCount() {
+        return lot.getAvailableSpotsCount();
+    }
+}
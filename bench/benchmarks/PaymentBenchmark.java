@@ -0,0 +1,48 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.PaymentProcessor;
+
+/**
+ * Payment hot path of PaymentProcessor
+ * @author Haryad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentBenchmark {
+
+    private PaymentProcessor processor;
+    private double amount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.silenceConsole();
+        processor = new PaymentProcessor();
+        amount = 12.5;
+    }
+
+    @Benchmark
+    public boolean processPayment() {
+        return processor.processPayment(amount);
+    }
+
+    @Benchmark
+    public double calculateAmount() {
+        return processor.calculateAmount(3, amount);
+    }
+}
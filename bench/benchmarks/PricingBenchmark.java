@@ -0,0 +1,127 @@
+package benchmarks;
+
+import enums.SpotSize;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.ParkingLot;
+import models.PricingPolicy;
+import models.RateTable;
+import models.Tariff;
+import models.Ticket;
+import models.Vehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import services.PricingEngine;
+import services.TicketGenerator;
+
+/**
+ * Fee lookups against a lot's tariff
+ * <p>
+ * Fees are worked out on the flat rates and whole-hour tariff, and on
+ * compiled dynamic rates with per-minute billing, grace and a daily cap;
+ * again while another thread keeps compiling and swapping in new tables,
+ * which the lookups must not wait for; and for every active ticket at
+ * once, one at a time and in one bulk pass.</p>
+ * @author Haryad
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean dynamic;
+
+    private ParkingLot lot;
+    private PricingEngine engine;
+    private Ticket[] active;
+    private List<Ticket> activeList;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.silenceConsole();
+        lot = new ParkingLot("Benchmark", 10000);
+        Vehicle[] parked = BenchmarkSupport.fill(lot, 75);
+        TicketGenerator tickets = new TicketGenerator();
+        active = new Ticket[parked.length];
+        for (int i = 0; i < parked.length; i++) {
+            active[i] = tickets.generateTicket(parked[i], lot.findSpotByVehicle(parked[i].getLicensePlate()));
+        }
+        activeList = Arrays.asList(active);
+        lot.setTariff(dynamic ? Tariff.standard() : Tariff.HOURLY);
+        engine = new PricingEngine(lot, dynamic ? PricingPolicy.standard() : PricingPolicy.flat());
+        engine.refresh();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public long calculateFee() {
+        return nextTicket().calculateFeeCents();
+    }
+
+    @Benchmark
+    public RateTable refresh() {
+        return engine.refresh();
+    }
+
+    @Benchmark
+    @Group("swapping")
+    @GroupThreads(3)
+    public long feeWhileSwapping() {
+        return nextTicket().calculateFeeCents();
+    }
+
+    @Benchmark
+    @Group("swapping")
+    @GroupThreads(1)
+    public RateTable swap() {
+        return engine.refresh();
+    }
+
+    @Benchmark
+    public long amountsDueEach() {
+        long total = 0;
+        for (Ticket ticket : active) {
+            total += ticket.calculateFeeCents();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long[] amountsDueBulk() {
+        return Ticket.calculateAmountsDue(activeList, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public int lookupRate() {
+        return lot.getRateTable().getRatePermille(SpotSize.REGULAR, System.currentTimeMillis());
+    }
+
+    private Ticket nextTicket() {
+        Ticket ticket = active[cursor];
+        cursor = (cursor + 1 == active.length) ? 0 : cursor + 1;
+        return ticket;
+    }
+}
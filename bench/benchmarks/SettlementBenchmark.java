@@ -0,0 +1,74 @@
+package benchmarks;
+
+import interfaces.SettlementBackend;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.Payment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import services.LocalSettlementBackend;
+import services.SettlementPipeline;
+
+/**
+ * Settlement throughput of the batching pipeline against settling each
+ * payment with its own backend call, with many exit lanes paying at once
+ * The backend allows a few calls at a time, like a remote processor with a
+ * small connection pool
+ * @author Haryad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class SettlementBenchmark {
+
+    @Param({"0", "1", "5"})
+    public long roundTripMillis;
+
+    @Param({"16", "64"})
+    public int batchSize;
+
+    @Param({"4"})
+    public int connections;
+
+    private SettlementBackend backend;
+    private SettlementPipeline pipeline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.silenceConsole();
+        backend = new LocalSettlementBackend(roundTripMillis, connections);
+        pipeline = new SettlementPipeline(backend, batchSize, connections, 1, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pipeline.close();
+    }
+
+    @Benchmark
+    public boolean perCall() throws IOException {
+        return backend.settle(List.of(new Payment(null, 1250)))[0];
+    }
+
+    @Benchmark
+    public Payment pipelined() {
+        return pipeline.submit(new Payment(null, 1250)).join();
+    }
+}
@@ -0,0 +1,101 @@
+package benchmarks;
+
+import enums.SpotSize;
+import java.util.concurrent.TimeUnit;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Ticket;
+import models.Vehicle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.TicketGenerator;
+
+/**
+ * Ticketing hot paths of TicketGenerator
+ * <p>
+ * Every parked vehicle holds an active ticket, and as many tickets again
+ * have already been completed and half of them paid, so revenue queries
+ * run against a realistic history. Completed tickets pile up while a
+ * benchmark runs, so the tickets are rebuilt before each iteration.</p>
+ * @author Haryad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TicketBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int spots;
+
+    @Param({"0", "50", "90"})
+    public int occupancyPercent;
+
+    private ParkingLot lot;
+    private Vehicle[] parked;
+    private TicketGenerator tickets;
+    private Vehicle visitor;
+    private ParkingSpot visitorSpot;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.silenceConsole();
+        lot = new ParkingLot("Benchmark", spots);
+        parked = BenchmarkSupport.fill(lot, occupancyPercent);
+        visitor = BenchmarkSupport.vehicle(SpotSize.REGULAR, "VISITOR");
+        visitorSpot = lot.getSpots().get(0);
+    }
+
+    @Setup(Level.Iteration)
+    public void issueTickets() {
+        tickets = new TicketGenerator();
+
+        // History: one full turnover of the lot, every other ticket paid
+        for (int i = 0; i < spots; i++) {
+            Vehicle vehicle = BenchmarkSupport.vehicle(SpotSize.REGULAR, "DONE-" + i);
+            tickets.generateTicket(vehicle, visitorSpot);
+            Ticket ticket = tickets.completeTicket(vehicle.getLicensePlate());
+            if (i % 2 == 0) {
+                ticket.markAsPaid();
+            }
+        }
+
+        for (Vehicle vehicle : parked) {
+            tickets.generateTicket(vehicle, lot.findSpotByVehicle(vehicle.getLicensePlate()));
+        }
+    }
+
+    @Benchmark
+    public Ticket generateAndComplete() {
+        tickets.generateTicket(visitor, visitorSpot);
+        return tickets.completeTicket(visitor.getLicensePlate());
+    }
+
+    @Benchmark
+    public double getTotalRevenue() {
+        return tickets.getTotalRevenue();
+    }
+
+    @Benchmark
+    public Ticket findActiveTicket() {
+        if (parked.length == 0) {
+            return tickets.findActiveTicket(visitor.getLicensePlate());
+        }
+        Vehicle vehicle = parked[cursor];
+        cursor = (cursor + 1 == parked.length) ? 0 : cursor + 1;
+        return tickets.findActiveTicket(vehicle.getLicensePlate());
+    }
+}
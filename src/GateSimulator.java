@@ -0,0 +1,298 @@
+import enums.EventLevel;
+import enums.PaymentStatus;
+import interfaces.Parkable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import models.*;
+import services.*;
+
+/**
+ * Load generator that plays rush hour against the parking services
+ * <p>
+ * Every simulated vehicle is a virtual thread that arrives, parks, takes a
+ * ticket, dwells, completes the ticket, pays and leaves, for a number of
+ * visits. Each operation is timed, and the run ends with throughput and
+ * p50/p99/p999 latency per operation.</p>
+ * <p>
+ * With {@code --shards} the lot is split across that many worker
+ * processes on this machine, reached through a ShardCoordinator, to see
+ * how throughput grows with partitions. Tickets and payments stay in this
+ * process.</p>
+ * <p>
+ * The workload is drawn from the seed: vehicle types, arrival times and
+ * dwell times are the same on every run with the same options. Each vehicle
+ * draws from its own generator split off the seed, so the interleaving of
+ * the threads does not change what any vehicle does. The interleaving
+ * itself, and so the exact latencies, is up to the scheduler.</p>
+ * <pre>
+ * java -cp ParkingSystem.jar GateSimulator --vehicles 10000 --capacity 2000
+ *      --visits 3 --dwell exponential --dwell-ms 20 --seed 42
+ * </pre>
+ * @author Haryad
+ */
+public class GateSimulator {
+
+    /** How long vehicles stay parked */
+    private enum Dwell {
+        FIXED, UNIFORM, EXPONENTIAL
+    }
+
+    /** Timed operations, in the order a visit performs them */
+    private enum Operation {
+        PARK, TICKET, COMPLETE, PAY, UNPARK
+    }
+
+    // Wait before trying again when the lot is full
+    private static final long FULL_BACKOFF_MILLIS = 1;
+
+    private int vehicles = 1000;
+    private int capacity = 500;
+    private int visits = 1;
+    private long arrivalMillis = 1000;   // Window over which first arrivals are spread
+    private Dwell dwell = Dwell.EXPONENTIAL;
+    private long dwellMillis = 50;       // Mean dwell
+    private long seed = 1;
+    private int settleBatch = 0;         // 0 settles each payment inline
+    private int shards = 0;              // 0 keeps the lot in this process
+    private int shardConnections = 16;
+
+    // One slot per visit per operation, written by a single vehicle each
+    private long[][] latencies;
+    private final AtomicLong fullRejections = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        GateSimulator simulator = new GateSimulator();
+        try {
+            simulator.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+        simulator.run();
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: GateSimulator [options]");
+        System.err.println("  --vehicles N       simulated vehicles, one virtual thread each (1000)");
+        System.err.println("  --capacity N       spots in the lot (500)");
+        System.err.println("  --visits N         visits per vehicle (1)");
+        System.err.println("  --arrival-ms N     first arrivals spread over this window (1000)");
+        System.err.println("  --dwell KIND       fixed, uniform or exponential (exponential)");
+        System.err.println("  --dwell-ms N       mean dwell time (50)");
+        System.err.println("  --seed N           seed for the workload (1)");
+        System.err.println("  --settle-batch N   settle payments in batches of N, 0 for inline (0)");
+        System.err.println("  --shards N         split the lot across N worker processes, 0 for none (0)");
+        System.err.println("  --shard-connections N  connections to each worker (16)");
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--vehicles" -> vehicles = Integer.parseInt(value);
+                    case "--capacity" -> capacity = Integer.parseInt(value);
+                    case "--visits" -> visits = Integer.parseInt(value);
+                    case "--arrival-ms" -> arrivalMillis = Long.parseLong(value);
+                    case "--dwell" -> dwell = Dwell.valueOf(value.toUpperCase());
+                    case "--dwell-ms" -> dwellMillis = Long.parseLong(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--settle-batch" -> settleBatch = Integer.parseInt(value);
+                    case "--shards" -> shards = Integer.parseInt(value);
+                    case "--shard-connections" -> shardConnections = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + option);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + option + ": " + value);
+            }
+        }
+        if (vehicles < 1 || capacity < 1 || visits < 1 || arrivalMillis < 0
+                || dwellMillis < 0 || settleBatch < 0 || shards < 0 || shardConnections < 1) {
+            throw new IllegalArgumentException("Counts must be positive and times not negative");
+        }
+        if ((long) vehicles * visits > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many visits to record");
+        }
+    }
+
+    private void run() throws InterruptedException, IOException {
+        // The services report every operation; that would measure the console
+        EventLog.setLevel(EventLevel.OFF);
+
+        ShardCoordinator coordinator = null;
+        Parkable parking;
+        if (shards > 0) {
+            coordinator = ShardCoordinator.launchLocal(shards, Math.max(1, capacity / shards),
+                    shardConnections, null);
+            parking = coordinator;
+        } else {
+            parking = new ParkingManager(new ParkingLot("Simulated Lot", capacity));
+        }
+        TicketGenerator ticketGenerator = new TicketGenerator();
+        SettlementPipeline settlement = (settleBatch > 0)
+                ? new SettlementPipeline(new LocalSettlementBackend(), settleBatch, 4, 2, TimeUnit.MILLISECONDS)
+                : null;
+        PaymentProcessor paymentProcessor = new PaymentProcessor(settlement);
+
+        latencies = new long[Operation.values().length][vehicles * visits];
+        SplittableRandom workload = new SplittableRandom(seed);
+        CountDownLatch start = new CountDownLatch(1);
+        long begin;
+
+        System.out.println("Simulating " + vehicles + " vehicles x " + visits + " visits, "
+                + capacity + " spots, " + dwell.name().toLowerCase() + " dwell of " + dwellMillis
+                + " ms, seed " + seed + (shards > 0 ? ", " + shards + " shards" : ""));
+        try (ExecutorService gates = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int v = 0; v < vehicles; v++) {
+                int index = v;
+                SplittableRandom random = workload.split();
+                gates.execute(() -> {
+                    try {
+                        start.await();
+                        drive(index, random, parking, ticketGenerator, paymentProcessor);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                });
+            }
+            begin = System.nanoTime();
+            start.countDown();
+        }
+        long elapsed = System.nanoTime() - begin;
+        if (settlement != null) {
+            settlement.close();
+        }
+        if (coordinator != null) {
+            coordinator.close();
+        }
+
+        EventLog.setLevel(EventLevel.INFO);
+        report(elapsed, ticketGenerator);
+    }
+
+    /**
+     * Play all visits of one vehicle
+     * @param index the vehicle's number
+     * @param random the vehicle's own generator
+     */
+    private void drive(int index, SplittableRandom random, Parkable parking,
+                       TicketGenerator ticketGenerator, PaymentProcessor paymentProcessor)
+            throws InterruptedException {
+        Vehicle vehicle = makeVehicle(index, random);
+        String plate = vehicle.getLicensePlate();
+        Thread.sleep(arrivalMillis == 0 ? 0 : random.nextLong(arrivalMillis + 1));
+
+        for (int visit = 0; visit < visits; visit++) {
+            int slot = index * visits + visit;
+            // A stay under a millisecond is free and would leave nothing to pay
+            long dwellTime = Math.max(1, nextDwell(random));
+
+            ParkingSpot spot;
+            while (true) {
+                long t0 = System.nanoTime();
+                spot = parking.park(vehicle);
+                if (spot != null) {
+                    record(Operation.PARK, slot, t0);
+                    break;
+                }
+                fullRejections.incrementAndGet();
+                Thread.sleep(FULL_BACKOFF_MILLIS);
+            }
+
+            long t0 = System.nanoTime();
+            Ticket ticket = ticketGenerator.generateTicket(vehicle, spot);
+            record(Operation.TICKET, slot, t0);
+
+            Thread.sleep(dwellTime);
+
+            t0 = System.nanoTime();
+            ticketGenerator.completeTicket(plate);
+            record(Operation.COMPLETE, slot, t0);
+
+            t0 = System.nanoTime();
+            Payment payment = paymentProcessor.submitPayment(ticket).join();
+            record(Operation.PAY, slot, t0);
+            if (payment.getStatus() != PaymentStatus.SETTLED) {
+                failures.incrementAndGet();
+            }
+
+            t0 = System.nanoTime();
+            parking.unpark(plate);
+            record(Operation.UNPARK, slot, t0);
+
+            // Some time outside the lot before coming back
+            Thread.sleep(nextDwell(random) / 2);
+        }
+    }
+
+    private void record(Operation operation, int slot, long startNanos) {
+        latencies[operation.ordinal()][slot] = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Vehicle mix matching the lot layout: 40% motorcycles, 40% cars and
+     * 20% trucks
+     */
+    private static Vehicle makeVehicle(int index, SplittableRandom random) {
+        String plate = "SIM" + index;
+        int roll = random.nextInt(10);
+        if (roll < 4) {
+            return new Motorcycle(plate, "Black", "Honda", "CB500", 2022, random.nextBoolean());
+        } else if (roll < 8) {
+            return new Car(plate, "Red", "Toyota", "Camry", 2022);
+        }
+        return new Truck(plate, "White", "Ford", "F-150", 2022, 2.0 + random.nextInt(3) * 0.5);
+    }
+
+    private long nextDwell(SplittableRandom random) {
+        return switch (dwell) {
+            case FIXED ->
+                dwellMillis;
+            case UNIFORM ->
+                random.nextLong(2 * dwellMillis + 1);
+            case EXPONENTIAL ->
+                (long) (-dwellMillis * Math.log(1.0 - random.nextDouble()));
+        };
+    }
+
+    private void report(long elapsedNanos, TicketGenerator ticketGenerator) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%nFinished in %.2f s, %d visits, %d lot-full retries, %d failures%n",
+                seconds, (long) vehicles * visits, fullRejections.get(), failures.get());
+        System.out.println("Revenue: $" + Money.format(ticketGenerator.getTotalRevenueCents()));
+        System.out.printf("%n%-10s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "ops/s", "p50 us", "p99 us", "p999 us", "max us", "count");
+
+        for (Operation operation : Operation.values()) {
+            long[] sorted = latencies[operation.ordinal()].clone();
+            Arrays.sort(sorted);
+            System.out.printf("%-10s %10.0f %10.1f %10.1f %10.1f %10.1f %10d%n",
+                    operation.name().toLowerCase(), sorted.length / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), sorted[sorted.length - 1] / 1e3, sorted.length);
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of sorted latencies
+     * @return the latency in microseconds
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e3;
+    }
+}
@@ -120,9 +120,9 @@ public class Main {
         
         System.out.println("\n--- Payment Summary ---");
         System.out.println("Total Revenue Collected: $" + 
-                         String.format("%.2f", ticketGenerator.getTotalRevenue()));
+                         Money.format(ticketGenerator.getTotalRevenueCents()));
         System.out.println("Total Unpaid Fees: $" + 
-                         String.format("%.2f", ticketGenerator.getTotalUnpaid()));
+                         Money.format(ticketGenerator.getTotalUnpaidCents()));
         
         // Summary
         System.out.println("\n╔════════════════════════════════════════╗");
@@ -191,10 +191,10 @@ public class Main {
         
         if (ticket != null) {
             System.out.println("Hours parked: " + ticket.calculateHoursParked());
-            System.out.println("Parking fee: $" + String.format("%.2f", ticket.getParkingFee()));
+            System.out.println("Parking fee: $" + Money.format(ticket.getParkingFeeCents()));
             
             // Process payment
-            boolean paymentSuccess = payment.processPayment(ticket.getParkingFee());
+            boolean paymentSuccess = payment.processPaymentCents(ticket.getParkingFeeCents());
             
             if (paymentSuccess) {
                 ticket.markAsPaid();
@@ -207,10 +207,10 @@ public class Main {
                 }
                 
                 // Print receipt
-                String receipt = payment.generateReceipt(
+                String receipt = payment.generateReceiptCents(
                     licensePlate, 
                     ticket.calculateHoursParked(), 
-                    ticket.getVehicle().getParkingRate()
+                    ticket.getVehicle().getParkingRateCents()
                 );
                 System.out.println(receipt);
             }
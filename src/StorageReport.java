@@ -0,0 +1,113 @@
+import enums.EventLevel;
+import enums.SpotStatus;
+import enums.SpotStorage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import models.*;
+
+/**
+ * Compares OBJECTS and COMPACT spot storage on a large lot
+ * <p>
+ * Builds the same lot both ways and uses a tenth of it, then reports the
+ * heap each one takes, as measured and as estimated by the lot, and how
+ * long a full scan of the spots takes. An OBJECTS lot only creates the
+ * spots it has used, so it wins on lots that are mostly idle and COMPACT
+ * wins once most spots have been used. Run with a heap large enough for the object lot, for
+ * example {@code java -Xmx4g -cp ParkingSystem.jar StorageReport 5000000}.</p>
+ * <p>
+ * Given a state file as a second argument, it also compares a restart:
+ * attaching a MAPPED lot to its file against rebuilding an OBJECTS lot
+ * and parking its vehicles again. The file is deleted afterwards.</p>
+ * @author Haryad
+ */
+public class StorageReport {
+
+    private static final int SCAN_ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        int capacity = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        EventLog.setLevel(EventLevel.OFF);
+
+        System.out.println("Spot storage for a lot of " + capacity + " spots");
+        System.out.printf("%-8s %12s %12s %12s%n", "storage", "heap MB", "estimate MB", "scan ms");
+        double[] objects = measure(capacity, SpotStorage.OBJECTS);
+        double[] compact = measure(capacity, SpotStorage.COMPACT);
+        System.out.printf("%nCOMPACT takes %.2fx the heap of OBJECTS and %.2fx the scan time%n",
+                compact[0] / objects[0], compact[2] / objects[2]);
+
+        if (args.length > 1) {
+            restart(capacity, Path.of(args[1]));
+        }
+    }
+
+    /**
+     * Time bringing back a lot with a tenth of it occupied
+     */
+    private static void restart(int capacity, Path stateFile) throws IOException {
+        Files.deleteIfExists(stateFile);
+        ParkingLot lot = ParkingLot.open("Report", "Nowhere", capacity, stateFile);
+        int parked = park(lot, capacity / 10);
+        lot.closeStorage();
+
+        long start = System.nanoTime();
+        ParkingLot attached = ParkingLot.open("Report", "Nowhere", capacity, stateFile);
+        double attachMs = (System.nanoTime() - start) / 1e6;
+        int found = attached.getOccupiedSpotsCount();
+        attached.closeStorage();
+        Files.delete(stateFile);
+
+        start = System.nanoTime();
+        park(new ParkingLot("Report", "Nowhere", capacity), parked);
+        double rebuildMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("%nRestart with %d vehicles: MAPPED attaches in %.0f ms (%d found),"
+                + " OBJECTS rebuilds in %.0f ms%n", parked, attachMs, found, rebuildMs);
+    }
+
+    private static int park(ParkingLot lot, int vehicles) {
+        for (int i = 0; i < vehicles; i++) {
+            lot.parkVehicle(new Motorcycle("R" + i, "Black", "Honda", "CB500", 2022, false));
+        }
+        return lot.getOccupiedSpotsCount();
+    }
+
+    /**
+     * Build a lot with a tenth of it occupied and a few spots out of
+     * service
+     * @return heap MB, estimated MB and best scan time in ms
+     */
+    private static double[] measure(int capacity, SpotStorage storage) {
+        long before = usedHeap();
+        ParkingLot lot = new ParkingLot("Report", "Nowhere", capacity, storage);
+        park(lot, capacity / 10);
+        for (int n = 1; n <= capacity; n += 10_000) {
+            lot.findSpotByNumber(n).markOutOfService();
+        }
+        long built = usedHeap();
+
+        // A filtered scan visits every spot and returns only a handful
+        long best = Long.MAX_VALUE;
+        int found = 0;
+        for (int round = 0; round < SCAN_ROUNDS; round++) {
+            long start = System.nanoTime();
+            found = lot.getSpotsByStatus(SpotStatus.OUT_OF_SERVICE).size();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double heapMb = (built - before) / 1e6;
+        double estimateMb = lot.getStorageFootprintBytes() / 1e6;
+        double scanMs = best / 1e6;
+        System.out.printf("%-8s %12.1f %12.1f %12.2f   (%d found)%n",
+                storage, heapMb, estimateMb, scanMs, found);
+        return new double[] {heapMb, estimateMb, scanMs};
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,9 @@
+package enums;
+
+/**
+ * Enumeration for the severity of operational events, lowest first
+ * OFF is above every real level, so setting it turns all events off
+ */
+public enum EventLevel {
+    DEBUG, INFO, WARN, ERROR, OFF
+}
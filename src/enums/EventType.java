@@ -0,0 +1,60 @@
+package enums;
+
+/**
+ * Enumeration for operational events reported by the parking services
+ * Each type has a fixed level, so a disabled event can be skipped before
+ * anything is built for it
+ */
+public enum EventType {
+    VEHICLE_PARKED(EventLevel.INFO),
+    VEHICLE_REMOVED(EventLevel.INFO),
+    PARK_FAILED(EventLevel.WARN),
+    INVALID_VEHICLE(EventLevel.ERROR),
+    INVALID_PLATE(EventLevel.ERROR),
+    LOT_FULL(EventLevel.ERROR),
+    ALREADY_PARKED(EventLevel.ERROR),
+    VEHICLE_NOT_FOUND(EventLevel.ERROR),
+    SPOT_TOO_SMALL(EventLevel.ERROR),
+    SPOT_NOT_AVAILABLE(EventLevel.ERROR),
+    TICKET_ISSUED(EventLevel.INFO),
+    TICKET_COMPLETED(EventLevel.INFO),
+    INVALID_TICKET(EventLevel.ERROR),
+    DUPLICATE_TICKET(EventLevel.ERROR),
+    TICKET_NOT_FOUND(EventLevel.ERROR),
+    PAYMENT_PROCESSED(EventLevel.INFO),
+    INVALID_PAYMENT(EventLevel.ERROR),
+    PAYMENT_DECLINED(EventLevel.WARN),
+    DUPLICATE_PAYMENT(EventLevel.WARN),
+    TICKET_NOT_COMPLETED(EventLevel.ERROR),
+    TICKET_ALREADY_PAID(EventLevel.WARN),
+    REFUND_ISSUED(EventLevel.INFO),
+    INVALID_REFUND(EventLevel.ERROR),
+    PRICING_REFRESH_FAILED(EventLevel.ERROR),
+    RESERVATION_BOOKED(EventLevel.INFO),
+    RESERVATION_REJECTED(EventLevel.WARN),
+    INVALID_RESERVATION(EventLevel.ERROR),
+    RESERVATION_NOT_FOUND(EventLevel.ERROR),
+    RESERVATION_CANCELLED(EventLevel.INFO),
+    RESERVATION_EXPIRED(EventLevel.INFO),
+    RESERVATION_TIMERS_FAILED(EventLevel.ERROR),
+    VEHICLE_WAITLISTED(EventLevel.INFO),
+    WAIT_TIMED_OUT(EventLevel.WARN),
+    SNAPSHOT_LOADED(EventLevel.INFO),
+    SNAPSHOT_FAILED(EventLevel.ERROR),
+    LOG_RECOVERED(EventLevel.INFO),
+    LOG_EVENTS_SKIPPED(EventLevel.WARN);
+
+    private final EventLevel level;
+
+    EventType(EventLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * Get the level events of this type are reported at
+     * @return the level
+     */
+    public EventLevel getLevel() {
+        return level;
+    }
+}
@@ -0,0 +1,9 @@
+package enums;
+
+/**
+ * Enumeration for entries in the payment ledger
+ * REVERSAL cancels a charge whose payment did not go through
+ */
+public enum LedgerEntryType {
+    CHARGE, REFUND, REVERSAL
+}
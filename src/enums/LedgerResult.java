@@ -0,0 +1,16 @@
+package enums;
+
+/**
+ * Enumeration for the outcome of recording a charge or refund in the
+ * payment ledger
+ */
+public enum LedgerResult {
+    RECORDED,           // New entry appended
+    DUPLICATE,          // Same request seen before, nothing appended
+    KEY_CONFLICT,       // Key already used for a different request
+    INVALID_AMOUNT,
+    UNKNOWN_CHARGE,     // No such charge, or it has rolled out of the ledger
+    CHARGE_REVERSED,
+    TICKET_CHARGED,     // Ticket already has a charge that was not reversed
+    EXCEEDS_CHARGE      // Refunds would add up to more than was charged
+}
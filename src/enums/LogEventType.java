@@ -0,0 +1,9 @@
+package enums;
+
+/**
+ * Enumeration for events recorded in the write-ahead log
+ * The ordinal is stored in the log, so new types go at the end
+ */
+public enum LogEventType {
+    PARK, UNPARK, TICKET_ISSUED, TICKET_COMPLETED, TICKET_PAID
+}
@@ -0,0 +1,10 @@
+package enums;
+
+/**
+ * Enumeration for the state of a payment sent for settlement
+ * DUPLICATE means the same request was already charged and nothing new
+ * was taken
+ */
+public enum PaymentStatus {
+    PENDING, SETTLED, DECLINED, DUPLICATE
+}
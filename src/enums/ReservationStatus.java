@@ -0,0 +1,10 @@
+package enums;
+
+/**
+ * Enumeration for the state of a reservation
+ * BOOKED counts against its window but has no spot yet; a spot is HELD
+ * once the window starts. EXPIRED, CANCELLED and COMPLETED are final.
+ */
+public enum ReservationStatus {
+    BOOKED, HELD, CHECKED_IN, EXPIRED, CANCELLED, COMPLETED
+}
@@ -0,0 +1,11 @@
+package enums;
+
+/**
+ * Enumeration for how a ParkingLot keeps the state of its spots
+ * OBJECTS keeps one ParkingSpot per spot; COMPACT keeps primitive arrays
+ * and creates ParkingSpot views only when asked for one; MAPPED keeps the
+ * same layout in a memory-mapped file that a restarted process attaches to
+ */
+public enum SpotStorage {
+    OBJECTS, COMPACT, MAPPED
+}
@@ -0,0 +1,23 @@
+package interfaces;
+
+import enums.SpotSize;
+import models.ParkingLot;
+
+/**
+ * Interface for services that track which lots have room, without polling
+ * their counters
+ * @author Haryad
+ */
+public interface AvailabilityListener {
+    
+    /**
+     * Called when the last available spot of a size in a lot is taken, or
+     * the first one becomes available again
+     * Calls from concurrent changes may arrive out of order, so re-read the
+     * lot's counter before trusting a "no longer available" call
+     * @param lot the lot that changed
+     * @param size the spot size
+     * @param available true if spots of that size are now available
+     */
+    void availabilityChanged(ParkingLot lot, SpotSize size, boolean available);
+}
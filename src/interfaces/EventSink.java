@@ -0,0 +1,18 @@
+package interfaces;
+
+import models.Event;
+
+/**
+ * Interface for destinations of operational events
+ * Called from the gate threads, so implementations must be thread-safe and
+ * should return quickly; slow output belongs on a background thread
+ * @author Haryad
+ */
+public interface EventSink {
+    
+    /**
+     * Accept one event
+     * @param event the event, already filtered by level
+     */
+    void publish(Event event);
+}
@@ -1,8 +1,12 @@
 package interfaces;
 
+import models.Money;
+
 /**
  * Interface for entities that can process payments
  * Implemented by classes that handle payment operations
+ * Amounts are whole cents held in a long, so they add up exactly; the
+ * dollar methods convert at the edge for callers that use doubles
  * @author Paywast
  * @author Haryad
  */
@@ -10,25 +14,25 @@ public interface Payable {
     
     /**
      * Process a payment for a given amount
-     * @param amount the amount to be paid
+     * @param amountCents the amount to be paid, in cents
      * @return true if payment was successful, false otherwise
      */
-    boolean processPayment(double amount);
+    boolean processPaymentCents(long amountCents);
     
     /**
      * Calculate the total amount due
      * @param hours number of hours parked
-     * @param rate hourly parking rate
-     * @return total amount to be paid
+     * @param rateCents hourly parking rate in cents
+     * @return total amount to be paid, in cents
      */
-    double calculateAmount(int hours, double rate);
+    long calculateAmountCents(int hours, long rateCents);
     
     /**
      * Issue a refund for a given amount
-     * @param amount the amount to be refunded
+     * @param amountCents the amount to be refunded, in cents
      * @return true if refund was successful, false otherwise
      */
-    boolean issueRefund(double amount);
+    boolean issueRefundCents(long amountCents);
     
     /**
      * Get the payment status
@@ -36,6 +40,47 @@ public interface Payable {
      */
     String getPaymentStatus();
     
+    /**
+     * Process a payment for a given amount
+     * @param amount the amount to be paid, in dollars
+     * @return true if payment was successful, false otherwise
+     */
+    default boolean processPayment(double amount) {
+        return processPaymentCents(Money.ofDollars(amount));
+    }
+    
+    /**
+     * Calculate the total amount due
+     * @param hours number of hours parked
+     * @param rate hourly parking rate in dollars
+     * @return total amount to be paid, in dollars
+     */
+    default double calculateAmount(int hours, double rate) {
+        return Money.toDollars(calculateAmountCents(hours, Money.ofDollars(rate)));
+    }
+    
+    /**
+     * Issue a refund for a given amount
+     * @param amount the amount to be refunded, in dollars
+     * @return true if refund was successful, false otherwise
+     */
+    default boolean issueRefund(double amount) {
+        return issueRefundCents(Money.ofDollars(amount));
+    }
+    
+    /**
+     * Apply a discount to the payment amount
+     * @param amountCents original amount in cents
+     * @param discountPercent discount percentage (0-100)
+     * @return discounted amount in cents
+     */
+    default long applyDiscountCents(long amountCents, double discountPercent) {
+        if (discountPercent < 0 || discountPercent > 100) {
+            return amountCents;
+        }
+        return amountCents - Money.percentOf(amountCents, discountPercent);
+    }
+    
     /**
      * Apply a discount to the payment amount
      * @param amount original amount
@@ -43,10 +88,20 @@ public interface Payable {
      * @return discounted amount
      */
     default double applyDiscount(double amount, double discountPercent) {
-        if (discountPercent < 0 || discountPercent > 100) {
-            return amount;
+        return Money.toDollars(applyDiscountCents(Money.ofDollars(amount), discountPercent));
+    }
+    
+    /**
+     * Calculate tax on the payment amount
+     * @param amountCents the base amount in cents
+     * @param taxRate tax rate as percentage (e.g., 8.5 for 8.5%)
+     * @return total amount including tax, in cents
+     */
+    default long calculateWithTaxCents(long amountCents, double taxRate) {
+        if (taxRate < 0) {
+            return amountCents;
         }
-        return amount * (1 - discountPercent / 100.0);
+        return amountCents + Money.percentOf(amountCents, taxRate);
     }
     
     /**
@@ -56,10 +111,16 @@ public interface Payable {
      * @return total amount including tax
      */
     default double calculateWithTax(double amount, double taxRate) {
-        if (taxRate < 0) {
-            return amount;
-        }
-        return amount * (1 + taxRate / 100.0);
+        return Money.toDollars(calculateWithTaxCents(Money.ofDollars(amount), taxRate));
+    }
+    
+    /**
+     * Validate payment amount
+     * @param amountCents the amount to validate, in cents
+     * @return true if amount is valid (positive and reasonable)
+     */
+    default boolean validateAmountCents(long amountCents) {
+        return amountCents > 0 && amountCents < 100 * Money.CENTS_PER_DOLLAR; // Max $100 per transaction
     }
     
     /**
@@ -68,6 +129,6 @@ public interface Payable {
      * @return true if amount is valid (positive and reasonable)
      */
     default boolean validateAmount(double amount) {
-        return amount > 0 && amount < 100; // Max $100 per transaction
+        return validateAmountCents(Money.ofDollars(amount));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package interfaces;
+
+import java.io.IOException;
+import java.util.List;
+import models.Payment;
+
+/**
+ * Interface for the service that actually moves the money, such as a card
+ * processor
+ * Called with whole batches, so one round trip settles many payments
+ * @author Haryad
+ */
+public interface SettlementBackend {
+    
+    /**
+     * Settle a batch of payments
+     * @param batch the payments, all pending
+     * @return one entry per payment, in the same order: true if it was
+     * accepted, false if it was declined
+     * @throws IOException if the batch could not be submitted at all
+     */
+    boolean[] settle(List<Payment> batch) throws IOException;
+}
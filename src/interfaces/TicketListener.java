@@ -0,0 +1,18 @@
+package interfaces;
+
+import models.Ticket;
+
+/**
+ * Interface for services that need to know when a ticket changes state
+ * outside of their own methods
+ * @author Haryad
+ */
+public interface TicketListener {
+    
+    /**
+     * Called after a ticket has been marked as paid, while the ticket is
+     * still locked, so no other change to it can happen in between
+     * @param ticket the ticket that was paid
+     */
+    void ticketPaid(Ticket ticket);
+}
@@ -0,0 +1,79 @@
+package models;
+
+import enums.SpotSize;
+import enums.SpotStatus;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Spot store on the Java heap: one byte of size and one long of state per
+ * spot, with parked vehicles in a handle table
+ *
+ * @author Haryad
+ */
+final class ArraySpotStore extends SpotStore {
+
+    private static final VarHandle STATES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final SpotSize[] SIZES = SpotSize.values();
+
+    private final byte[] sizes;
+    private final long[] states;
+    private final VehicleTable vehicles;
+
+    /**
+     * Constructor for ArraySpotStore
+     * Every spot starts out available
+     *
+     * @param sizes size of each spot, by index
+     */
+    ArraySpotStore(SpotSize[] sizes) {
+        this.sizes = new byte[sizes.length];
+        this.states = new long[sizes.length];
+        long available = pack(SpotStatus.AVAILABLE, 0, 0);
+        for (int i = 0; i < sizes.length; i++) {
+            this.sizes[i] = (byte) sizes[i].ordinal();
+            this.states[i] = available;
+        }
+        this.vehicles = new VehicleTable(0);
+    }
+
+    @Override
+    int capacity() {
+        return sizes.length;
+    }
+
+    @Override
+    SpotSize getSize(int index) {
+        return SIZES[sizes[index]];
+    }
+
+    @Override
+    long getState(int index) {
+        return (long) STATES.getVolatile(states, index);
+    }
+
+    @Override
+    boolean compareAndSetState(int index, long expected, long next) {
+        return STATES.compareAndSet(states, index, expected, next);
+    }
+
+    @Override
+    Vehicle getVehicle(int handle) {
+        return vehicles.get(handle);
+    }
+
+    @Override
+    int addVehicle(Vehicle vehicle) {
+        return vehicles.add(vehicle);
+    }
+
+    @Override
+    void removeVehicle(int handle) {
+        vehicles.remove(handle);
+    }
+
+    @Override
+    long getFootprintBytes() {
+        return sizes.length + 8L * states.length + vehicles.getFootprintBytes();
+    }
+}
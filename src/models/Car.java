@@ -11,7 +11,7 @@ import enums.VehicleType;
  */
 public class Car extends Vehicle {
     
-    private static final double HOURLY_RATE = 2.0;
+    private static final long HOURLY_RATE_CENTS = 200;
     
     
     /**
@@ -28,17 +28,8 @@ public class Car extends Vehicle {
     }
     
     @Override
-    public double getParkingRate(){
-        return HOURLY_RATE;
-    }
-    
-    
-    @Override
-    public double calculateParkingFee(int hours){
-        if (hours < 0) {
-            throw new IllegalArgumentException("Hours cannot be negative");
-        }
-        return hours * HOURLY_RATE;
+    public long getParkingRateCents(){
+        return HOURLY_RATE_CENTS;
     }
 
     @Override
@@ -0,0 +1,208 @@
+package models;
+
+import enums.SpotStatus;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of available spots for one spot size of a compact lot, holding
+ * spot indexes instead of ParkingSpot objects.
+ * <p>
+ * Like {@link FreeSpotPool} it is striped by spot and its entries are only
+ * hints that callers must still claim. Each stripe is an int stack with a
+ * bit per spot that keeps a spot from being queued twice, guarded by a
+ * short lock of its own, so a queued spot costs about four bytes.</p>
+ *
+ * @author Haryad
+ */
+class CompactFreePool {
+
+    /** Stack of queued spots for every stripe-th spot of the size */
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final int[] stack;
+        final long[] queued;   // Bit per spot of this stripe
+        int top;
+
+        Stripe(int spots) {
+            this.stack = new int[spots];
+            this.queued = new long[(spots + 63) >>> 6];
+        }
+    }
+
+    // Below this many spots per stripe, extra stripes only spread a small lot thin
+    private static final int MIN_SPOTS_PER_STRIPE = 256;
+
+    private final SpotStore store;
+    private final int firstIndex;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int stripeShift;
+
+    /**
+     * Constructor for CompactFreePool
+     *
+     * @param store the spots
+     * @param firstIndex index of the first spot of this size
+     * @param count number of spots of this size, at consecutive indexes
+     */
+    CompactFreePool(SpotStore store, int firstIndex, int count) {
+        this.store = store;
+        this.firstIndex = firstIndex;
+        int wanted = Math.min(Runtime.getRuntime().availableProcessors(), count / MIN_SPOTS_PER_STRIPE);
+        int stripeCount = Integer.highestOneBit(Math.max(1, wanted));
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        this.stripeShift = Integer.numberOfTrailingZeros(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe((count + stripeCount - 1 - i) / stripeCount);
+        }
+    }
+
+    /**
+     * Queue every spot of the range that is available, lowest index on top.
+     * Only for a new pool that no other thread can see yet.
+     */
+    void fill() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.stack.length;
+        }
+        for (int local = count - 1; local >= 0; local--) {
+            int index = firstIndex + local;
+            if (isAvailable(index)) {
+                Stripe stripe = stripes[local & stripeMask];
+                int slot = local >>> stripeShift;
+                stripe.queued[slot >>> 6] |= 1L << slot;
+                stripe.stack[stripe.top++] = index;
+            }
+        }
+    }
+
+    /**
+     * Queue a spot that has just become available. Does nothing if the spot
+     * is already queued.
+     *
+     * @param index the spot index
+     */
+    void offer(int index) {
+        int local = index - firstIndex;
+        Stripe stripe = stripes[local & stripeMask];
+        int slot = local >>> stripeShift;
+        stripe.lock.lock();
+        try {
+            long bit = 1L << slot;
+            if ((stripe.queued[slot >>> 6] & bit) == 0) {
+                stripe.queued[slot >>> 6] |= bit;
+                stripe.stack[stripe.top++] = index;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Take a spot that was available when it was polled. The caller still
+     * has to claim it, since another thread may take it first.
+     *
+     * @return a spot index, or -1 if none of this size is left
+     */
+    int poll() {
+        int home = homeStripe();
+        for (int i = 0; i <= stripeMask; i++) {
+            Stripe stripe = stripes[(home + i) & stripeMask];
+            stripe.lock.lock();
+            try {
+                while (stripe.top > 0) {
+                    int index = stripe.stack[--stripe.top];
+                    int slot = (index - firstIndex) >>> stripeShift;
+                    stripe.queued[slot >>> 6] &= ~(1L << slot);
+                    if (isAvailable(index)) {
+                        return index;
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Take several spots that were available when they were polled, locking
+     * each stripe once rather than once per spot
+     *
+     * @param max most spots to take
+     * @param into where the spot indexes are written, from the start
+     * @return number of spots taken
+     */
+    int poll(int max, int[] into) {
+        int taken = 0;
+        int home = homeStripe();
+        for (int i = 0; i <= stripeMask && taken < max; i++) {
+            Stripe stripe = stripes[(home + i) & stripeMask];
+            stripe.lock.lock();
+            try {
+                while (taken < max && stripe.top > 0) {
+                    int index = stripe.stack[--stripe.top];
+                    int slot = (index - firstIndex) >>> stripeShift;
+                    stripe.queued[slot >>> 6] &= ~(1L << slot);
+                    if (isAvailable(index)) {
+                        into[taken++] = index;
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Look at a free spot without taking it
+     *
+     * @return index of a spot that is currently available, or -1 if none
+     */
+    int peek() {
+        int home = homeStripe();
+        for (int i = 0; i <= stripeMask; i++) {
+            Stripe stripe = stripes[(home + i) & stripeMask];
+            stripe.lock.lock();
+            try {
+                for (int j = stripe.top - 1; j >= 0; j--) {
+                    if (isAvailable(stripe.stack[j])) {
+                        return stripe.stack[j];
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return -1;
+    }
+
+    private boolean isAvailable(int index) {
+        return SpotStore.statusOf(store.getState(index)) == SpotStatus.AVAILABLE;
+    }
+
+    /**
+     * Estimate the memory held by the pool
+     *
+     * @return size in bytes
+     */
+    long getFootprintBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            bytes += 4L * stripe.stack.length + 8L * stripe.queued.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Stripe this thread starts from
+     *
+     * @return stripe index
+     */
+    private int homeStripe() {
+        return (int) Thread.currentThread().threadId() & stripeMask;
+    }
+}
@@ -0,0 +1,239 @@
+package models;
+
+import enums.SpotSize;
+import enums.VehicleType;
+import enums.EventType;
+import java.time.Instant;
+
+/**
+ * Immutable operational event, such as a vehicle being parked or a payment
+ * being rejected
+ * Only the raw fields are captured when the event happens; the readable
+ * message is built later by whichever sink prints it. Created through
+ * {@link EventLog}, which skips disabled types before building one.
+ * @author Haryad
+ */
+public final class Event {
+
+    private final long time;
+    private final EventType type;
+    private final String licensePlate;
+    private final VehicleType vehicleType;
+    private final String ticketId;
+    private final SpotSize spotSize;
+    private final int spotNumber;
+    private final long amountCents;
+    private final long count;
+    private final long durationMillis;
+    private final String cause;
+
+    Event(EventType type, String licensePlate, VehicleType vehicleType, String ticketId,
+          SpotSize spotSize, int spotNumber, long amountCents) {
+        this(type, licensePlate, vehicleType, ticketId, spotSize, spotNumber, amountCents, 0, 0, null);
+    }
+
+    Event(EventType type, String licensePlate, VehicleType vehicleType, String ticketId,
+          SpotSize spotSize, int spotNumber, long amountCents, long count, long durationMillis,
+          String cause) {
+        this.time = System.currentTimeMillis();
+        this.type = type;
+        this.licensePlate = licensePlate;
+        this.vehicleType = vehicleType;
+        this.ticketId = ticketId;
+        this.spotSize = spotSize;
+        this.spotNumber = spotNumber;
+        this.amountCents = amountCents;
+        this.count = count;
+        this.durationMillis = durationMillis;
+        this.cause = cause;
+    }
+
+    /**
+     * Get the human readable message for this event, as printed on the
+     * console
+     * @return the message
+     */
+    public String getMessage() {
+        return switch (type) {
+            case VEHICLE_PARKED ->
+                "SUCCESS: " + vehicleType + " (" + licensePlate + ") parked in spot #" + spotNumber;
+            case VEHICLE_REMOVED ->
+                "SUCCESS: Vehicle " + licensePlate + " removed from parking lot";
+            case PARK_FAILED ->
+                "FAILED: Unable to park " + licensePlate;
+            case INVALID_VEHICLE ->
+                "ERROR: Cannot park null vehicle";
+            case INVALID_PLATE ->
+                "ERROR: Invalid license plate";
+            case LOT_FULL ->
+                "ERROR: Parking lot is FULL";
+            case ALREADY_PARKED ->
+                "ERROR: Vehicle " + licensePlate + " is already parked";
+            case VEHICLE_NOT_FOUND ->
+                "ERROR: Vehicle " + licensePlate + " not found in parking lot";
+            case SPOT_TOO_SMALL ->
+                "ERROR: " + vehicleType + " cannot fit in " + spotSize + " spot!";
+            case SPOT_NOT_AVAILABLE ->
+                "ERROR: Spot is not available";
+            case TICKET_ISSUED ->
+                "Ticket generated: " + ticketId + " for vehicle " + licensePlate;
+            case TICKET_COMPLETED ->
+                "Ticket completed: " + ticketId;
+            case INVALID_TICKET ->
+                "ERROR: Cannot generate ticket - invalid vehicle or spot";
+            case DUPLICATE_TICKET ->
+                "ERROR: Vehicle " + licensePlate + " already has an active ticket";
+            case TICKET_NOT_FOUND ->
+                "ERROR: No active ticket found for " + licensePlate;
+            case PAYMENT_PROCESSED ->
+                "Processing payment of $" + Money.format(amountCents);
+            case INVALID_PAYMENT ->
+                "ERROR: Invalid payment amount";
+            case PAYMENT_DECLINED ->
+                "DECLINED: Payment of $" + Money.format(amountCents);
+            case DUPLICATE_PAYMENT ->
+                "DUPLICATE: Payment of $" + Money.format(amountCents) + " already recorded";
+            case TICKET_NOT_COMPLETED ->
+                "ERROR: Ticket " + ticketId + " is still active and cannot be paid yet";
+            case TICKET_ALREADY_PAID ->
+                "DUPLICATE: Ticket " + ticketId + " is already paid";
+            case REFUND_ISSUED ->
+                "Issuing refund of $" + Money.format(amountCents);
+            case INVALID_REFUND ->
+                "ERROR: Invalid refund amount";
+            case PRICING_REFRESH_FAILED ->
+                "ERROR: Pricing refresh failed - " + cause;
+            case RESERVATION_BOOKED ->
+                "Reservation booked: " + spotSize + " spot for " + licensePlate;
+            case RESERVATION_REJECTED ->
+                "FAILED: No " + spotSize + " spot free for " + licensePlate + " in that window";
+            case INVALID_RESERVATION ->
+                "ERROR: Invalid reservation";
+            case RESERVATION_NOT_FOUND ->
+                "ERROR: No open reservation found for " + licensePlate;
+            case RESERVATION_CANCELLED ->
+                "Reservation cancelled for " + licensePlate;
+            case RESERVATION_EXPIRED ->
+                "Reservation expired for " + licensePlate + ", spot #" + spotNumber + " released";
+            case RESERVATION_TIMERS_FAILED ->
+                "ERROR: Reservation timers failed - " + cause;
+            case VEHICLE_WAITLISTED ->
+                "Lot full: " + licensePlate + " is waiting for a spot";
+            case WAIT_TIMED_OUT ->
+                "FAILED: No spot freed for " + licensePlate + " in time";
+            case SNAPSHOT_LOADED ->
+                "Loaded snapshot at LSN " + count + " in " + durationMillis + " ms";
+            case SNAPSHOT_FAILED ->
+                "ERROR: Snapshot failed - " + cause;
+            case LOG_RECOVERED ->
+                "Recovered " + count + " events in " + durationMillis + " ms";
+            case LOG_EVENTS_SKIPPED ->
+                "WARNING: " + count + " logged events did not apply and were skipped";
+        };
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public String getLicensePlate() {
+        return licensePlate;
+    }
+
+    public VehicleType getVehicleType() {
+        return vehicleType;
+    }
+
+    public String getTicketId() {
+        return ticketId;
+    }
+
+    public SpotSize getSpotSize() {
+        return spotSize;
+    }
+
+    /**
+     * Get the spot number
+     * @return the spot number, or 0 if the event is not about a spot
+     */
+    public int getSpotNumber() {
+        return spotNumber;
+    }
+
+    /**
+     * Get the payment or refund amount
+     * @return the amount in cents, or 0 if the event is not about money
+     */
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    /**
+     * Get the number the event reports, such as events replayed
+     * @return the count, or 0 if the event has none
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get how long the reported work took
+     * @return the duration in milliseconds, or 0 if the event has none
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Get what went wrong, for events reporting a failure
+     * @return the exception, as text, or null if the event has none
+     */
+    public String getCause() {
+        return cause;
+    }
+
+    /**
+     * Structured form: time, level, type and then only the fields that are
+     * set, as key=value pairs
+     * @return one line describing the event
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(96);
+        line.append(Instant.ofEpochMilli(time)).append(' ')
+            .append(type.getLevel()).append(' ')
+            .append(type);
+        if (licensePlate != null) {
+            line.append(" plate=").append(licensePlate);
+        }
+        if (vehicleType != null) {
+            line.append(" vehicle=").append(vehicleType);
+        }
+        if (ticketId != null) {
+            line.append(" ticket=").append(ticketId);
+        }
+        if (spotSize != null) {
+            line.append(" size=").append(spotSize);
+        }
+        if (spotNumber != 0) {
+            line.append(" spot=").append(spotNumber);
+        }
+        if (amountCents != 0) {
+            Money.appendTo(line.append(" amount="), amountCents);
+        }
+        if (count != 0) {
+            line.append(" count=").append(count);
+        }
+        if (durationMillis != 0) {
+            line.append(" ms=").append(durationMillis);
+        }
+        if (cause != null) {
+            line.append(" cause=").append(cause);
+        }
+        return line.toString();
+    }
+}
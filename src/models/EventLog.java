@@ -0,0 +1,162 @@
+package models;
+
+import enums.EventLevel;
+import enums.EventType;
+import interfaces.EventSink;
+
+/**
+ * Entry point for reporting operational events from the parking services
+ * <p>
+ * Every method first checks the event's level, so a disabled event costs
+ * one volatile read and no allocation. Callers pass the values they
+ * already have; nothing is concatenated or formatted on the calling
+ * thread. Events go to the console by default, one message per line as
+ * before; install an asynchronous sink such as
+ * {@code services.AsyncEventSink} to keep the gates off the console
+ * lock.</p>
+ * @author Haryad
+ */
+public final class EventLog {
+
+    private static final EventSink CONSOLE = event -> System.out.println(event.getMessage());
+
+    private static volatile EventSink sink = CONSOLE;
+    private static volatile int minimumLevel = EventLevel.INFO.ordinal();
+
+    private EventLog() {
+    }
+
+    /**
+     * Send events to a different sink
+     * @param newSink the sink, or null for the console
+     */
+    public static void setSink(EventSink newSink) {
+        sink = (newSink == null) ? CONSOLE : newSink;
+    }
+
+    /**
+     * Get the sink events currently go to
+     * @return the sink
+     */
+    public static EventSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Set the lowest level that is reported
+     * @param level the level, or EventLevel.OFF to report nothing
+     */
+    public static void setLevel(EventLevel level) {
+        minimumLevel = level.ordinal();
+    }
+
+    /**
+     * Get the lowest level that is reported
+     * @return the level
+     */
+    public static EventLevel getLevel() {
+        return EventLevel.values()[minimumLevel];
+    }
+
+    /**
+     * Check whether events of a type are reported
+     * @param type the event type
+     * @return true if its level is enabled
+     */
+    public static boolean isEnabled(EventType type) {
+        return type.getLevel().ordinal() >= minimumLevel;
+    }
+
+    /**
+     * Report an event with no details
+     * @param type the event type
+     */
+    public static void log(EventType type) {
+        if (isEnabled(type)) {
+            sink.publish(new Event(type, null, null, null, null, 0, 0));
+        }
+    }
+
+    /**
+     * Report an event about a license plate
+     * @param type the event type
+     * @param licensePlate the plate
+     */
+    public static void logVehicle(EventType type, String licensePlate) {
+        if (isEnabled(type)) {
+            sink.publish(new Event(type, licensePlate, null, null, null, 0, 0));
+        }
+    }
+
+    /**
+     * Report an event about a vehicle and a spot
+     * @param type the event type
+     * @param vehicle the vehicle
+     * @param spot the spot
+     */
+    public static void logSpot(EventType type, Vehicle vehicle, ParkingSpot spot) {
+        if (isEnabled(type)) {
+            sink.publish(new Event(type, vehicle.getLicensePlate(), vehicle.getType(), null,
+                    spot.getSize(), spot.getSpotNumber(), 0));
+        }
+    }
+
+    /**
+     * Report an event about a ticket
+     * @param type the event type
+     * @param ticket the ticket
+     */
+    public static void logTicket(EventType type, Ticket ticket) {
+        if (isEnabled(type)) {
+            sink.publish(new Event(type, ticket.getVehicle().getLicensePlate(), null,
+                    ticket.getTicketId(), null, 0, 0));
+        }
+    }
+
+    /**
+     * Report an event about a reservation
+     * @param type the event type
+     * @param reservation the reservation
+     */
+    public static void logReservation(EventType type, Reservation reservation) {
+        if (isEnabled(type)) {
+            ParkingSpot spot = reservation.getSpot();
+            sink.publish(new Event(type, reservation.getLicensePlate(), null, null,
+                    reservation.getSize(), (spot != null) ? spot.getSpotNumber() : 0, 0));
+        }
+    }
+
+    /**
+     * Report an event about a number of things and how long they took
+     * @param type the event type
+     * @param count the number, such as events replayed
+     * @param durationMillis how long it took, in milliseconds
+     */
+    public static void logCount(EventType type, long count, long durationMillis) {
+        if (isEnabled(type)) {
+            sink.publish(new Event(type, null, null, null, null, 0, 0, count, durationMillis, null));
+        }
+    }
+
+    /**
+     * Report an event about an amount of money
+     * @param type the event type
+     * @param amountCents the amount in cents
+     */
+    public static void logAmount(EventType type, long amountCents) {
+        if (isEnabled(type)) {
+            sink.publish(new Event(type, null, null, null, null, 0, amountCents));
+        }
+    }
+
+    /**
+     * Report a failure of work running in the background
+     * @param type the event type
+     * @param cause what was thrown
+     */
+    public static void logFailure(EventType type, Throwable cause) {
+        if (isEnabled(type)) {
+            sink.publish(new Event(type, null, null, null, null, 0, 0, 0, 0, cause.toString()));
+        }
+    }
+}
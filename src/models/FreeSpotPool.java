@@ -0,0 +1,150 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Lock-free pool of available spots for one spot size.
+ * <p>
+ * The pool is split into stripes so that gates running on different threads
+ * mostly work on different queues. A thread takes from its own stripe first
+ * and only looks at the others when that one is empty.</p>
+ * <p>
+ * Entries are only hints: a queued spot may have been taken directly through
+ * {@link ParkingSpot} since it was queued. Callers must still claim the spot
+ * with {@link ParkingSpot#occupy(Vehicle)}, and stale entries are dropped
+ * when they are polled or reach the front of a queue being peeked. The {@code inFreePool} flag on each spot keeps a spot
+ * from being queued more than once.</p>
+ *
+ * @author Haryad
+ */
+class FreeSpotPool {
+
+    private static final AtomicIntegerFieldUpdater<ParkingSpot> IN_POOL
+            = AtomicIntegerFieldUpdater.newUpdater(ParkingSpot.class, "inFreePool");
+
+    // Below this many spots per stripe, extra stripes only spread a small lot thin
+    private static final int MIN_SPOTS_PER_STRIPE = 256;
+
+    private final List<ConcurrentLinkedQueue<ParkingSpot>> stripes;
+    private final int stripeMask;
+
+    /**
+     * Constructor for FreeSpotPool
+     *
+     * @param expectedSpots number of spots of this size in the lot
+     */
+    FreeSpotPool(int expectedSpots) {
+        int wanted = Math.min(Runtime.getRuntime().availableProcessors(),
+                expectedSpots / MIN_SPOTS_PER_STRIPE);
+        int count = Integer.highestOneBit(Math.max(1, wanted));
+        List<ConcurrentLinkedQueue<ParkingSpot>> queues = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+        }
+        this.stripes = List.copyOf(queues);
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Queue a spot that has just become available. Must be called after the
+     * spot's status is AVAILABLE. Does nothing if the spot is already queued.
+     *
+     * @param spot the available spot
+     */
+    void offer(ParkingSpot spot) {
+        if (IN_POOL.compareAndSet(spot, 0, 1)) {
+            stripes.get(spot.getSpotNumber() & stripeMask).offer(spot);
+        }
+    }
+
+    /**
+     * Take a spot that was available when it was polled. The caller still
+     * has to claim it, since another thread may take it first.
+     *
+     * @return a free spot, or null if none of this size is left
+     */
+    ParkingSpot poll() {
+        int home = homeStripe();
+        for (int i = 0; i <= stripeMask; i++) {
+            ConcurrentLinkedQueue<ParkingSpot> stripe = stripes.get((home + i) & stripeMask);
+            ParkingSpot spot;
+            while ((spot = stripe.poll()) != null) {
+                // Clear the flag before reading the status: a spot freed in
+                // between is then either seen here or queued again by offer
+                IN_POOL.set(spot, 0);
+                if (spot.isAvailable()) {
+                    return spot;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Take several spots that were available when they were polled, as
+     * {@link #poll()} would one at a time
+     *
+     * @param max most spots to take
+     * @param into where the spots are added
+     * @return number of spots taken
+     */
+    int poll(int max, List<ParkingSpot> into) {
+        int taken = 0;
+        int home = homeStripe();
+        for (int i = 0; i <= stripeMask && taken < max; i++) {
+            ConcurrentLinkedQueue<ParkingSpot> stripe = stripes.get((home + i) & stripeMask);
+            ParkingSpot spot;
+            while (taken < max && (spot = stripe.poll()) != null) {
+                IN_POOL.set(spot, 0);
+                if (spot.isAvailable()) {
+                    into.add(spot);
+                    taken++;
+                }
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Look at a free spot without taking it. Spots taken since they were
+     * queued are dropped from the front of each queue on the way.
+     *
+     * @return a spot that is currently available, or null if none
+     */
+    ParkingSpot peek() {
+        int home = homeStripe();
+        for (int i = 0; i <= stripeMask; i++) {
+            ParkingSpot spot = firstAvailable(stripes.get((home + i) & stripeMask));
+            if (spot != null) {
+                return spot;
+            }
+        }
+        return null;
+    }
+
+    private ParkingSpot firstAvailable(ConcurrentLinkedQueue<ParkingSpot> stripe) {
+        ParkingSpot head;
+        while ((head = stripe.peek()) != null && !head.isAvailable()) {
+            if (stripe.remove(head)) {
+                // As in poll: a spot freed meanwhile is queued again
+                IN_POOL.set(head, 0);
+                if (head.isAvailable()) {
+                    offer(head);
+                }
+            }
+        }
+        return head;
+    }
+
+    /**
+     * Stripe this thread starts from
+     *
+     * @return stripe index
+     */
+    private int homeStripe() {
+        return (int) Thread.currentThread().threadId() & stripeMask;
+    }
+}
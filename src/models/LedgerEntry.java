@@ -0,0 +1,73 @@
+package models;
+
+import enums.LedgerEntryType;
+
+/**
+ * Immutable entry in the payment ledger
+ * @author Haryad
+ */
+public final class LedgerEntry {
+
+    private final long sequence;
+    private final LedgerEntryType type;
+    private final String idempotencyKey;  // Null for reversals
+    private final String ticketId;
+    private final long amountCents;
+    private final long chargeSequence;    // The charge itself, or the charge refunded or reversed
+    private final long time;
+
+    /**
+     * Constructor for LedgerEntry
+     * @param sequence position in the ledger
+     * @param type the entry type
+     * @param idempotencyKey key the request was submitted with, or null
+     * @param ticketId the ticket paid for
+     * @param amountCents the amount in cents
+     * @param chargeSequence sequence of the charge this entry belongs to
+     */
+    public LedgerEntry(long sequence, LedgerEntryType type, String idempotencyKey, String ticketId,
+                       long amountCents, long chargeSequence) {
+        this.sequence = sequence;
+        this.type = type;
+        this.idempotencyKey = idempotencyKey;
+        this.ticketId = ticketId;
+        this.amountCents = amountCents;
+        this.chargeSequence = chargeSequence;
+        this.time = System.currentTimeMillis();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public LedgerEntryType getType() {
+        return type;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getTicketId() {
+        return ticketId;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public long getChargeSequence() {
+        return chargeSequence;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "LedgerEntry [" + sequence + ", " + type + ", " + ticketId
+                + ", $" + Money.format(amountCents)
+                + (idempotencyKey != null ? ", key " + idempotencyKey : "") + "]";
+    }
+}
@@ -0,0 +1,411 @@
+package models;
+
+import enums.SpotSize;
+import enums.VehicleType;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Spot store in a memory-mapped file, so the state of a lot outlives the
+ * process that changes it
+ * <p>
+ * The file holds a header, then a byte of size and a long of state per
+ * spot as in {@link ArraySpotStore}, then a fixed-size record per vehicle
+ * handle. State words are changed with compare-and-set in the mapping
+ * itself, and a vehicle's record is written before the word that
+ * publishes its handle, so the file is consistent after every change. A
+ * new process attaches by mapping the file: only the free handle list is
+ * rebuilt, and vehicles are decoded from their records when first read.</p>
+ * <p>
+ * The file is locked while open, so one process owns it at a time. Changes
+ * reach the operating system as they are made and survive the process
+ * stopping at any point; {@link #force()} also writes them to disk, for
+ * surviving the machine.</p>
+ *
+ * @author Haryad
+ */
+final class MappedSpotStore extends SpotStore {
+
+    private static final long MAGIC = 0x504B_5350_4F54_5331L;  // "PKSPOTS1"
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 128;
+    // Type, sidecar flag, year and weight come before the strings of a record
+    private static final int RECORD_STRINGS = 16;
+    private static final int NULL_STRING = 0xFF;
+    private static final int CHUNK_SHIFT = 23;                  // 1 GB of records per mapping
+    // Handles beyond one per spot, for vehicles added while their park is still racing
+    private static final int SPARE_HANDLES = 1024;
+
+    private static final VarHandle WORDS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle VEHICLES = MethodHandles.arrayElementVarHandle(Vehicle[].class);
+    private static final SpotSize[] SIZES = SpotSize.values();
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private final FileChannel channel;
+    private final FileLock fileLock;
+    private final MappedByteBuffer spots;        // Header, sizes and states
+    private final MappedByteBuffer[] records;    // Vehicle records by handle, in chunks
+    private final int capacity;
+    private final int statesOffset;
+    private final boolean attached;
+
+    // Heap side of the handle table, rebuilt on attach
+    private final ReentrantLock lock;
+    private final Condition handleFreed;
+    private final Vehicle[] vehicles;            // Decoded on first use; slot 0 is never used
+    private final long[] allocated;              // Bit per handle in use
+    private final int[] freeHandles;
+    private int freeCount;
+
+    /**
+     * Open a state file, creating it if it does not exist yet
+     *
+     * @param file the state file
+     * @param sizes size of each spot, by index; an existing file must have
+     * the same layout
+     * @return the store, attached to the file's state if it had any
+     * @throws IOException if the file cannot be opened, is in use, or holds
+     * a different lot
+     */
+    static MappedSpotStore open(Path file, SpotSize[] sizes) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                throw new IOException("State file " + file + " is in use");
+            }
+            return new MappedSpotStore(file, channel, fileLock, sizes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private MappedSpotStore(Path file, FileChannel channel, FileLock fileLock, SpotSize[] sizes)
+            throws IOException {
+        this.channel = channel;
+        this.fileLock = fileLock;
+        this.capacity = sizes.length;
+        int handleCount = capacity + SPARE_HANDLES;
+
+        long states = (HEADER_BYTES + capacity + 7L) & ~7L;
+        long spotBytes = states + 8L * capacity;
+        if (spotBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Lot too large for a state file: " + capacity + " spots");
+        }
+        this.statesOffset = (int) states;
+        long recordsOffset = (spotBytes + 4095) & ~4095L;
+
+        // Growing the file by mapping it leaves the new pages zero, which
+        // reads as every spot available at version 0
+        this.spots = channel.map(FileChannel.MapMode.READ_WRITE, 0, spotBytes);
+        spots.order(ByteOrder.nativeOrder());
+        int chunks = (handleCount + (1 << CHUNK_SHIFT)) >>> CHUNK_SHIFT;
+        this.records = new MappedByteBuffer[chunks];
+        for (int c = 0; c < chunks; c++) {
+            long first = (long) c << CHUNK_SHIFT;
+            long count = Math.min(1L << CHUNK_SHIFT, handleCount + 1 - first);
+            records[c] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    recordsOffset + first * RECORD_BYTES, count * RECORD_BYTES);
+        }
+
+        byte[] layout = new byte[capacity];
+        for (int i = 0; i < capacity; i++) {
+            layout[i] = (byte) sizes[i].ordinal();
+        }
+        this.attached = (spots.getLong(0) == MAGIC);
+        if (attached) {
+            checkLayout(file, layout, handleCount);
+        } else {
+            spots.put(HEADER_BYTES, layout);
+            spots.putInt(8, capacity);
+            spots.putInt(12, handleCount);
+            spots.putInt(16, RECORD_BYTES);
+            // Written last, so a file cut short while being created is created again
+            spots.putLong(0, MAGIC);
+        }
+
+        this.lock = new ReentrantLock();
+        this.handleFreed = lock.newCondition();
+        this.vehicles = new Vehicle[handleCount + 1];
+        this.allocated = new long[(handleCount + 64) >>> 6];
+        this.freeHandles = new int[handleCount];
+        for (int i = 0; i < capacity; i++) {
+            int handle = handleOf(getState(i));
+            if (handle < 0 || handle > handleCount) {
+                throw new IOException("State file " + file + " is corrupt at spot " + (i + 1));
+            }
+            if (handle != 0) {
+                allocated[handle >>> 6] |= 1L << handle;
+            }
+        }
+        // Handles of vehicles that were never published are free again
+        for (int handle = handleCount; handle >= 1; handle--) {
+            if (!isAllocated(handle)) {
+                freeHandles[freeCount++] = handle;
+            }
+        }
+    }
+
+    private void checkLayout(Path file, byte[] layout, int handleCount) throws IOException {
+        boolean same = spots.getInt(8) == capacity
+                && spots.getInt(12) == handleCount
+                && spots.getInt(16) == RECORD_BYTES
+                && spots.slice(HEADER_BYTES, capacity).mismatch(ByteBuffer.wrap(layout)) < 0;
+        if (!same) {
+            throw new IOException("State file " + file + " holds a lot with a different layout");
+        }
+    }
+
+    /**
+     * Check whether the store picked up state left in the file by an
+     * earlier process
+     *
+     * @return true if the file already held a lot
+     */
+    boolean isAttached() {
+        return attached;
+    }
+
+    @Override
+    int capacity() {
+        return capacity;
+    }
+
+    @Override
+    SpotSize getSize(int index) {
+        return SIZES[spots.get(HEADER_BYTES + index)];
+    }
+
+    @Override
+    long getState(int index) {
+        return (long) WORDS.getVolatile(spots, statesOffset + 8 * index);
+    }
+
+    @Override
+    boolean compareAndSetState(int index, long expected, long next) {
+        return WORDS.compareAndSet(spots, statesOffset + 8 * index, expected, next);
+    }
+
+    @Override
+    Vehicle getVehicle(int handle) {
+        Vehicle vehicle = (Vehicle) VEHICLES.getAcquire(vehicles, handle);
+        if (vehicle != null) {
+            return vehicle;
+        }
+        lock.lock();
+        try {
+            // A freed handle is no longer in any state word; the caller reads again
+            if (!isAllocated(handle)) {
+                return null;
+            }
+            vehicle = vehicles[handle];
+            if (vehicle == null) {
+                vehicle = decode(record(handle), recordOffset(handle));
+                VEHICLES.setRelease(vehicles, handle, vehicle);
+            }
+            return vehicle;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    boolean canHold(Vehicle vehicle) {
+        return encode(vehicle) != null;
+    }
+
+    @Override
+    int addVehicle(Vehicle vehicle) {
+        byte[] encoded = encode(vehicle);
+        if (encoded == null) {
+            throw new IllegalArgumentException("Vehicle " + vehicle.getLicensePlate()
+                    + " does not fit in a state file record");
+        }
+        int handle;
+        lock.lock();
+        try {
+            while (freeCount == 0) {
+                handleFreed.awaitUninterruptibly();
+            }
+            handle = freeHandles[--freeCount];
+            // Written under the lock, so getVehicle() never decodes half a record
+            record(handle).put(recordOffset(handle), encoded);
+            allocated[handle >>> 6] |= 1L << handle;
+            VEHICLES.setRelease(vehicles, handle, vehicle);
+        } finally {
+            lock.unlock();
+        }
+        return handle;
+    }
+
+    @Override
+    void removeVehicle(int handle) {
+        lock.lock();
+        try {
+            VEHICLES.setRelease(vehicles, handle, null);
+            allocated[handle >>> 6] &= ~(1L << handle);
+            freeHandles[freeCount++] = handle;
+            handleFreed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of vehicles in the store
+     *
+     * @return handles in use
+     */
+    int getVehicleCount() {
+        lock.lock();
+        try {
+            return freeHandles.length - freeCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read only the license plate of a stored vehicle, for rebuilding the
+     * plate index without decoding whole vehicles
+     *
+     * @param handle a handle from a state word
+     * @return the license plate
+     */
+    String readPlate(int handle) {
+        ByteBuffer record = record(handle);
+        int offset = recordOffset(handle) + RECORD_STRINGS;
+        int length = record.get(offset) & 0xFF;
+        byte[] bytes = new byte[length];
+        record.get(offset + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write all changes to disk
+     */
+    void force() {
+        spots.force();
+        for (MappedByteBuffer chunk : records) {
+            chunk.force();
+        }
+    }
+
+    /**
+     * Write all changes to disk and release the file. The store must not be
+     * used afterwards.
+     *
+     * @throws IOException if releasing the file fails
+     */
+    void close() throws IOException {
+        force();
+        fileLock.release();
+        channel.close();
+    }
+
+    /**
+     * Heap held by the store; the mapped file is outside the heap
+     *
+     * @return size in bytes
+     */
+    @Override
+    long getFootprintBytes() {
+        return 4L * vehicles.length + 8L * allocated.length + 4L * freeHandles.length;
+    }
+
+    private boolean isAllocated(int handle) {
+        return (allocated[handle >>> 6] & (1L << handle)) != 0;
+    }
+
+    private ByteBuffer record(int handle) {
+        return records[handle >>> CHUNK_SHIFT];
+    }
+
+    private static int recordOffset(int handle) {
+        return (handle & ((1 << CHUNK_SHIFT) - 1)) * RECORD_BYTES;
+    }
+
+    /**
+     * Lay out a vehicle as a record: type, sidecar flag, year and weight,
+     * then plate, color, brand and model, each as a length byte and UTF-8
+     *
+     * @param vehicle the vehicle
+     * @return the record, or null if its text does not fit
+     */
+    private static byte[] encode(Vehicle vehicle) {
+        byte[] record = new byte[RECORD_BYTES];
+        ByteBuffer out = ByteBuffer.wrap(record);
+        out.put((byte) vehicle.getType().ordinal());
+        out.put((byte) (vehicle instanceof Motorcycle motorcycle && motorcycle.getHasSidecar() ? 1 : 0));
+        out.putShort((short) 0);
+        out.putInt(vehicle.getYear());
+        out.putDouble(vehicle instanceof Truck truck ? truck.getWeightInTon() : 0.0);
+        String[] texts = {vehicle.getLicensePlate(), vehicle.getColor(), vehicle.getBrand(), vehicle.getModel()};
+        for (String text : texts) {
+            if (text == null) {
+                if (!out.hasRemaining()) {
+                    return null;
+                }
+                out.put((byte) NULL_STRING);
+                continue;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= NULL_STRING || out.remaining() < 1 + bytes.length) {
+                return null;
+            }
+            out.put((byte) bytes.length).put(bytes);
+        }
+        return record;
+    }
+
+    private static Vehicle decode(ByteBuffer buffer, int offset) {
+        ByteBuffer in = buffer.slice(offset, RECORD_BYTES);
+        VehicleType type = TYPES[in.get()];
+        boolean hasSidecar = in.get() != 0;
+        in.getShort();
+        int year = in.getInt();
+        double weightInTon = in.getDouble();
+        String plate = readText(in);
+        String color = readText(in);
+        String brand = readText(in);
+        String model = readText(in);
+        return switch (type) {
+            case MOTORCYCLE ->
+                new Motorcycle(plate, color, brand, model, year, hasSidecar);
+            case TRUCK ->
+                new Truck(plate, color, brand, model, year, weightInTon);
+            default ->
+                new Car(plate, color, brand, model, year);
+        };
+    }
+
+    private static String readText(ByteBuffer in) {
+        int length = in.get() & 0xFF;
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,90 @@
+package models;
+
+/**
+ * Helpers for money held as a primitive long number of cents
+ * <p>
+ * Fees, payments and totals are kept in cents so sums are exact and
+ * nothing is allocated doing arithmetic on them. Doubles only appear at
+ * the edges, for callers that still work in dollars.</p>
+ * @author Haryad
+ */
+public final class Money {
+
+    public static final long CENTS_PER_DOLLAR = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Convert a dollar amount to cents, rounding half away from zero
+     * @param dollars the amount in dollars
+     * @return the amount in cents
+     */
+    public static long ofDollars(double dollars) {
+        return Math.round(dollars * CENTS_PER_DOLLAR);
+    }
+
+    /**
+     * Convert cents to dollars, for callers that still use doubles
+     * @param cents the amount in cents
+     * @return the amount in dollars
+     */
+    public static double toDollars(long cents) {
+        return cents / (double) CENTS_PER_DOLLAR;
+    }
+
+    /**
+     * Multiply an amount by a whole quantity, such as a rate by hours
+     * @param cents the amount in cents
+     * @param quantity the multiplier
+     * @return the product in cents
+     * @throws ArithmeticException if the result overflows
+     */
+    public static long times(long cents, long quantity) {
+        return Math.multiplyExact(cents, quantity);
+    }
+
+    /**
+     * Take a percentage of an amount, rounding half away from zero
+     * The percentage is applied in basis points, so 8.5% is exact
+     * @param cents the amount in cents
+     * @param percent the percentage, e.g. 8.5 for 8.5%
+     * @return the share in cents
+     */
+    public static long percentOf(long cents, double percent) {
+        long basisPoints = Math.round(percent * 100);
+        long scaled = Math.multiplyExact(Math.abs(cents), Math.abs(basisPoints));
+        long share = (scaled + 5_000) / 10_000;
+        return ((cents < 0) != (basisPoints < 0)) ? -share : share;
+    }
+
+    /**
+     * Format an amount as dollars with two decimals, such as 12.50
+     * @param cents the amount in cents
+     * @return the formatted amount, without a currency sign
+     */
+    public static String format(long cents) {
+        return appendTo(new StringBuilder(16), cents).toString();
+    }
+
+    /**
+     * Append an amount as dollars with two decimals, without going through
+     * String.format
+     * @param out where to append
+     * @param cents the amount in cents
+     * @return out, for chaining
+     */
+    public static StringBuilder appendTo(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+        }
+        // Long.MIN_VALUE has no positive counterpart, so split before negating
+        long dollars = Math.abs(cents / CENTS_PER_DOLLAR);
+        int remainder = (int) Math.abs(cents % CENTS_PER_DOLLAR);
+        out.append(dollars).append('.');
+        if (remainder < 10) {
+            out.append('0');
+        }
+        return out.append(remainder);
+    }
+}
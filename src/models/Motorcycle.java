@@ -9,26 +9,18 @@ import enums.VehicleType;
  */
 public class Motorcycle extends Vehicle{
     private boolean hasSidecar;
-    private static final double BASE_RATE = 1.0;
-    private static final double SIDECAR_MULTIPLIER = 1.5;
+    private static final long BASE_RATE_CENTS = 100;
+    private static final long SIDECAR_RATE_CENTS = 150;  // 1.5 x base
     
     public Motorcycle(String licensePlate,String color,String brand,String model,int year , boolean hasSidecar ){
         super(licensePlate, VehicleType.MOTORCYCLE, color, brand, model,year);
         this.hasSidecar = hasSidecar;
     }
     @Override
-    public double getParkingRate(){
-        return hasSidecar? BASE_RATE*SIDECAR_MULTIPLIER : BASE_RATE;
+    public long getParkingRateCents(){
+        return hasSidecar? SIDECAR_RATE_CENTS : BASE_RATE_CENTS;
     };
     
-    @Override
-    public double calculateParkingFee(int hours){
-        if (hours < 0) {
-            throw new IllegalArgumentException("Hours cannot be negative");
-        }
-       return hours* getParkingRate();
-    }
-    
     public boolean getHasSidecar(){
         return hasSidecar;
     }
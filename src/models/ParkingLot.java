@@ -2,12 +2,57 @@ package models;
 
 import enums.SpotSize;
 import enums.SpotStatus;
+import enums.SpotStorage;
+import interfaces.AvailabilityListener;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import enums.VehicleType;
 
 /**
  * Represents the entire parking lot with multiple parking spots Manages spot
  * allocation and availability
+ * <p>
+ * Parking and removing vehicles is safe from several gate threads at once
+ * without a global lock: each spot is claimed with a compare-and-set, plates
+ * are claimed in a concurrent index, and free spots come from striped
+ * lock-free pools. The counters are updated right after each spot change,
+ * or once per size for a batch from {@link #parkVehicles(List)}, so a
+ * reader running alongside a change may see them one step or one batch
+ * behind.</p>
+ * <p>
+ * An OBJECTS lot creates each ParkingSpot the first time it is looked up,
+ * handed out or listed, so building a lot only lays out one range of spot
+ * numbers per size. Spots never used are known to be available and are
+ * handed out in number order before spots that were given back.</p>
+ * <p>
+ * Spots are numbered from 1 unless the lot is given a
+ * {@link SpotNumbering}, such as numbers prefixed by floor. Either way
+ * {@link #findSpotByNumber(int)} goes straight to the spot without a
+ * scan.</p>
+ * <p>
+ * With {@link SpotStorage#COMPACT} storage the lot keeps no ParkingSpot
+ * objects. Sizes and states live in primitive arrays, about thirteen bytes
+ * per spot with the free pools against about seventy for OBJECTS, and
+ * ParkingSpot views are created only for the spots a caller asks for.
+ * Scans such as {@link #getSpotsByStatus(SpotStatus)} walk the arrays and
+ * create views for matches only. {@link #getSpots()} has to create a view
+ * for every spot, so avoid it on very large lots.</p>
+ * <p>
+ * {@link SpotStorage#MAPPED} storage keeps the same arrays, and the parked
+ * vehicles, in a memory-mapped state file. A lot opened on a file that
+ * already holds one attaches to its state: the counters, free pools and
+ * plate index are rebuilt with one pass over the mapped states, and no
+ * spot or vehicle objects are created. Spot state then needs no replay
+ * from the write-ahead log on restart. Such lots are built with
+ * {@link #open}, which attaches once the lot is constructed. Call
+ * {@link #closeStorage()} before opening the same file again in one
+ * process.</p>
  *
  * @author haryad
  */
@@ -15,8 +60,27 @@ public class ParkingLot {
 
     private String name;
     private String address;
-    private ArrayList<ParkingSpot> spots;
+    private final SpotTable spots;            // Null unless OBJECTS storage
     private int totalCapacity;
+    private final SpotStorage storage;
+    private final SpotNumbering numbering;
+    // One free pool per SpotSize, indexed by ordinal; OBJECTS storage only
+    private final FreeSpotPool[] freeSpots;
+    // Spot state and free pools for COMPACT and MAPPED storage, otherwise null
+    private SpotStore store;
+    private final CompactFreePool[] compactFreeSpots;
+    // License plate -> spot currently holding that vehicle
+    private final ConcurrentHashMap<String, ParkingSpot> spotsByPlate;
+    // Live spot counts, see countIndex()
+    private final AtomicIntegerArray spotCounts;
+    // Told when a size runs out or frees up, may be null
+    private volatile AvailabilityListener availabilityListener;
+    // Current rate factors, replaced whole by the pricing engine
+    private volatile RateTable rateTable = RateTable.FLAT;
+    // Billing rules for the length of a stay
+    private volatile Tariff tariff = Tariff.HOURLY;
+
+    private static final int STATUS_COUNT = SpotStatus.values().length;
 
     private static int parkingLotCount = 0;
 
@@ -28,12 +92,105 @@ public class ParkingLot {
      * @param totalCapacity total number of parking spots
      */
     public ParkingLot(String name, String address, int totalCapacity) {
+        this(name, address, totalCapacity, SpotStorage.OBJECTS);
+    }
+
+    /**
+     * Constructor for ParkingLot with a choice of spot storage
+     *
+     * @param name the name of the parking lot
+     * @param address the address/location
+     * @param totalCapacity total number of parking spots
+     * @param storage OBJECTS, or COMPACT for very large lots; MAPPED lots
+     * are opened on a state file instead
+     */
+    public ParkingLot(String name, String address, int totalCapacity, SpotStorage storage) {
+        this(name, address, totalCapacity, storage, SpotNumbering.sequential(), null, true);
+    }
+
+    /**
+     * Constructor for ParkingLot with a choice of spot storage and spot
+     * numbering
+     *
+     * @param name the name of the parking lot
+     * @param address the address/location
+     * @param totalCapacity total number of parking spots
+     * @param storage OBJECTS or COMPACT
+     * @param numbering number of each spot, for all totalCapacity spots
+     */
+    public ParkingLot(String name, String address, int totalCapacity, SpotStorage storage,
+            SpotNumbering numbering) {
+        this(name, address, totalCapacity, storage, numbering, null, true);
+    }
+
+    /**
+     * Build a private working copy of a lot, such as the one a snapshot is
+     * rebuilt in. Unlike a lot built with a constructor, it is left out of
+     * getParkingLotCount() and ParkingSpot.getTotalSpotsCreated().
+     *
+     * @param name the name of the parking lot
+     * @param address the address/location
+     * @param totalCapacity total number of parking spots
+     * @param storage OBJECTS or COMPACT
+     * @param numbering number of each spot, for all totalCapacity spots
+     * @return the lot
+     */
+    public static ParkingLot shadow(String name, String address, int totalCapacity, SpotStorage storage,
+            SpotNumbering numbering) {
+        return new ParkingLot(name, address, totalCapacity, storage, numbering, null, false);
+    }
+
+    /**
+     * Open a lot with MAPPED storage. Attaches to the lot already in the
+     * state file, if there is one, or creates the file.
+     *
+     * @param name the name of the parking lot
+     * @param address the address/location
+     * @param totalCapacity total number of parking spots
+     * @param stateFile file holding the spot state
+     * @return the lot
+     * @throws IOException if the file cannot be opened, is in use, or holds
+     * a lot of a different capacity
+     */
+    public static ParkingLot open(String name, String address, int totalCapacity, Path stateFile)
+            throws IOException {
+        MappedSpotStore mapped = MappedSpotStore.open(stateFile, spotLayout(totalCapacity));
+        ParkingLot lot = new ParkingLot(name, address, totalCapacity, SpotStorage.MAPPED,
+                SpotNumbering.sequential(), mapped, true);
+        if (mapped.isAttached()) {
+            // The plate index holds views of this lot, so only once it is built
+            lot.attachSpots(sizeCounts(totalCapacity));
+        }
+        return lot;
+    }
+
+    private ParkingLot(String name, String address, int totalCapacity, SpotStorage storage,
+            SpotNumbering numbering, MappedSpotStore mappedStore, boolean counted) {
+        if (storage == SpotStorage.MAPPED && mappedStore == null) {
+            throw new IllegalArgumentException("MAPPED storage needs a state file");
+        }
+        if (!numbering.fits(totalCapacity)) {
+            throw new IllegalArgumentException("Numbering does not match a lot of " + totalCapacity + " spots");
+        }
         this.name = name;
         this.address = address;
         this.totalCapacity = totalCapacity;
-        this.spots = new ArrayList<>();
+        this.storage = storage;
+        this.numbering = numbering;
+        boolean objects = (storage == SpotStorage.OBJECTS);
+        this.spots = objects ? new SpotTable(sizeCounts(totalCapacity)) : null;
+        this.freeSpots = objects ? new FreeSpotPool[SpotSize.values().length] : null;
+        this.compactFreeSpots = objects ? null : new CompactFreePool[SpotSize.values().length];
+        // Sized for the vehicles already in an attached state file
+        this.spotsByPlate = new ConcurrentHashMap<>((mappedStore != null) ? mappedStore.getVehicleCount() : 16);
+        this.spotCounts = new AtomicIntegerArray(SpotSize.values().length * STATUS_COUNT);
+        this.store = mappedStore;
         initializeSpots();
-        parkingLotCount++;
+        if (counted) {
+            // Every spot of the capacity, whatever the storage
+            ParkingSpot.countCreated(totalCapacity);
+            parkingLotCount++;
+        }
     }
 
     /**
@@ -48,66 +205,182 @@ public class ParkingLot {
 
     /**
      * Initialize parking spots with distribution: 40% COMPACT, 40% REGULAR, 20%
-     * LARGE
+     * LARGE. The spots of an OBJECTS lot are created on first use, so this
+     * only sets up the counters and the empty free pools.
      */
     private void initializeSpots() {
-        int compactCount = (int) (totalCapacity * 0.4);
-        int regularCount = (int) (totalCapacity * 0.4);
-        int largeCount = totalCapacity - compactCount - regularCount;
+        int[] counts = sizeCounts(totalCapacity);
+        if (storage != SpotStorage.OBJECTS) {
+            initializeCompactSpots(counts);
+            return;
+        }
 
-        int spotNumber = 1;
+        for (SpotSize size : SpotSize.values()) {
+            int count = counts[size.ordinal()];
+            freeSpots[size.ordinal()] = new FreeSpotPool(count);
+            spotCounts.set(countIndex(size, SpotStatus.AVAILABLE), count);
+        }
+    }
 
-        spotNumber = addSpots(spotNumber, compactCount, SpotSize.COMPACT);
-        spotNumber = addSpots(spotNumber, regularCount, SpotSize.REGULAR);
-        addSpots(spotNumber, largeCount, SpotSize.LARGE);
+    /**
+     * Number of spots of each size for a capacity, indexed by ordinal
+     *
+     * @param capacity total number of spots
+     * @return spot counts by size
+     */
+    private static int[] sizeCounts(int capacity) {
+        int compactCount = (int) (capacity * 0.4);
+        int regularCount = (int) (capacity * 0.4);
+        return new int[] {compactCount, regularCount, capacity - compactCount - regularCount};
     }
 
     /**
-     * Populates the parking lot with a specific number of spots of a given
-     * size. This method increments the spot numbering sequentially.
+     * Size of every spot by index, smallest sizes first
      *
-     * @param startNumber The starting ID/number for the first spot created.
-     * @param count The total number of spots to be added to the list.
-     * @param size The {@link SpotSize} category (e.g., COMPACT, LARGE).
-     * @return The next available spot number after the last spot is created.
+     * @param capacity total number of spots
+     * @return spot sizes
      */
-    private int addSpots(int startNumber, int count, SpotSize size) {
-        for (int i = 0; i < count; i++) {
-            spots.add(new ParkingSpot(startNumber++, size));
+    private static SpotSize[] spotLayout(int capacity) {
+        int[] counts = sizeCounts(capacity);
+        SpotSize[] sizes = new SpotSize[capacity];
+        int first = 0;
+        for (SpotSize size : SpotSize.values()) {
+            int count = counts[size.ordinal()];
+            Arrays.fill(sizes, first, first + count, size);
+            first += count;
         }
-        return startNumber;
+        return sizes;
     }
 
     /**
-     * Get count of available spots
+     * Set up the arrays of a COMPACT or MAPPED lot, with the same numbering
+     * and layout as initializeSpots() gives an OBJECTS lot
+     */
+    private void initializeCompactSpots(int[] counts) {
+        if (store == null) {
+            store = new ArraySpotStore(spotLayout(totalCapacity));
+        } else if (((MappedSpotStore) store).isAttached()) {
+            // Left to open(), once the lot is built
+            return;
+        }
+
+        int first = 0;
+        for (SpotSize size : SpotSize.values()) {
+            int count = counts[size.ordinal()];
+            CompactFreePool pool = new CompactFreePool(store, first, count);
+            // Lowest numbers on top, so they are handed out first as in OBJECTS lots
+            pool.fill();
+            compactFreeSpots[size.ordinal()] = pool;
+            spotCounts.set(countIndex(size, SpotStatus.AVAILABLE), count);
+            first += count;
+        }
+    }
+
+    /**
+     * Rebuild the counters, free pools and plate index of a MAPPED lot from
+     * the state left in its file, in one pass over the states
+     */
+    private void attachSpots(int[] counts) {
+        MappedSpotStore mapped = (MappedSpotStore) store;
+        int first = 0;
+        for (SpotSize size : SpotSize.values()) {
+            int count = counts[size.ordinal()];
+            int[] statusCounts = new int[STATUS_COUNT];
+            for (int i = first; i < first + count; i++) {
+                long word = store.getState(i);
+                statusCounts[SpotStore.statusOf(word).ordinal()]++;
+                int handle = SpotStore.handleOf(word);
+                if (handle != 0) {
+                    spotsByPlate.put(mapped.readPlate(handle), spotAt(i));
+                }
+            }
+            for (SpotStatus status : SpotStatus.values()) {
+                spotCounts.set(countIndex(size, status), statusCounts[status.ordinal()]);
+            }
+            CompactFreePool pool = new CompactFreePool(store, first, count);
+            pool.fill();
+            compactFreeSpots[size.ordinal()] = pool;
+            first += count;
+        }
+    }
+
+    /**
+     * View of a spot of a COMPACT or MAPPED lot
      *
-     * @return number of available spots
+     * @param index the spot's index, its number minus one
+     * @return a new view
      */
-    public int getAvailableSpotsCount() {
+    private ParkingSpot spotAt(int index) {
+        return new ParkingSpot(this, store, index);
+    }
+
+    /**
+     * Position of a size/status pair in the flat counter array
+     *
+     * @param size the spot size
+     * @param status the spot status
+     * @return index into spotCounts
+     */
+    private static int countIndex(SpotSize size, SpotStatus status) {
+        return size.ordinal() * STATUS_COUNT + status.ordinal();
+    }
+
+    /**
+     * Get count of spots with a given size and status. Read from the live
+     * counters, so it costs the same for any lot size.
+     *
+     * @param size the spot size to count
+     * @param status the spot status to count
+     * @return number of spots of that size in that status
+     */
+    public int getSpotsCount(SpotSize size, SpotStatus status) {
+        return spotCounts.get(countIndex(size, status));
+    }
+
+    /**
+     * Get count of spots with a given status across all sizes
+     *
+     * @param status the spot status to count
+     * @return number of spots in that status
+     */
+    public int getSpotsCount(SpotStatus status) {
         int count = 0;
+        for (SpotSize size : SpotSize.values()) {
+            count += getSpotsCount(size, status);
+        }
+        return count;
+    }
 
-        for (ParkingSpot spot : spots) {
-            if (spot.isAvailable()) {
-                count++;
-            }
+    /**
+     * Get total number of spots of a given size, whatever their status
+     *
+     * @param size the spot size to count
+     * @return number of spots of that size
+     */
+    public int getSpotsCountBySize(SpotSize size) {
+        int count = 0;
+        for (SpotStatus status : SpotStatus.values()) {
+            count += getSpotsCount(size, status);
         }
         return count;
     }
 
+    /**
+     * Get count of available spots
+     *
+     * @return number of available spots
+     */
+    public int getAvailableSpotsCount() {
+        return getSpotsCount(SpotStatus.AVAILABLE);
+    }
+
     /**
      * Get count of occupied spots
      *
      * @return number of occupied spots
      */
     public int getOccupiedSpotsCount() {
-        int count = 0;
-
-        for (ParkingSpot spot : spots) {
-            if (spot.isOccupied()) {
-                count++;
-            }
-        }
-        return count;
+        return getSpotsCount(SpotStatus.OCCUPIED);
     }
 
     /**
@@ -118,42 +391,37 @@ public class ParkingLot {
      * @return number of available spots of that size
      */
     public int getAvailableSpotsCountBySize(SpotSize size) {
-        int count = 0;
-
-        for (ParkingSpot spot : spots) {
-            if (spot.isAvailable() && spot.getSize() == size) {
-                count++;
-            }
-        }
-        return count;
+        return getSpotsCount(size, SpotStatus.AVAILABLE);
     }
 
     /**
-     * Find an available spot of specific size. Returns first available spot
-     * found, or null if none available.
+     * Find an available spot of specific size. Taken from the free pool of
+     * that size, so this does not depend on the size of the lot. The spot is
+     * not reserved; another gate may take it first.
      *
      * @param size the required spot size
      * @return available ParkingSpot or null if none found
      */
     public ParkingSpot findAvailableSpot(SpotSize size) {
-        for (ParkingSpot spot : spots) {
-            if (spot.isAvailable() && spot.getSize() == size) {
-                return spot;
-            }
+        if (store != null) {
+            int index = compactFreeSpots[size.ordinal()].peek();
+            return (index < 0) ? null : spotAt(index);
         }
-        return null;
+        ParkingSpot spot = spots.peekUntouched(this, size);
+        return (spot != null) ? spot : freeSpots[size.ordinal()].peek();
     }
 
     /**
-     * Find ANY available spot regardless of size. Returns first available spot
-     * found.
+     * Find ANY available spot regardless of size. Smaller sizes are checked
+     * first.
      *
      * @overload
-     * @return first available ParkingSpot or null if lot is full
+     * @return an available ParkingSpot or null if lot is full
      */
     public ParkingSpot findAvailableSpot() {
-        for (ParkingSpot spot : spots) {
-            if (spot.isAvailable()) {
+        for (SpotSize size : SpotSize.values()) {
+            ParkingSpot spot = findAvailableSpot(size);
+            if (spot != null) {
                 return spot;
             }
         }
@@ -161,37 +429,227 @@ public class ParkingLot {
     }
 
     /**
-     * Find a spot by its spot number.
+     * Take a free spot of the given size or, failing that, of the next
+     * larger sizes (COMPACT → REGULAR → LARGE) and park the vehicle in it.
+     * Spots lost to another gate are skipped; a spot the vehicle cannot use
+     * is put back and the attempt fails, as it would for a single gate.
+     *
+     * @param vehicle the vehicle to park
+     * @param preferredSize smallest acceptable spot size
+     * @return the ParkingSpot used, or null if parking failed
+     */
+    private ParkingSpot claimSpot(Vehicle vehicle, SpotSize preferredSize) {
+        if (store != null) {
+            return claimCompactSpot(vehicle, preferredSize);
+        }
+        SpotSize[] sizes = SpotSize.values();
+        for (int i = preferredSize.ordinal(); i < freeSpots.length; i++) {
+            FreeSpotPool pool = freeSpots[i];
+            // Spots never handed out first, then spots given back
+            int index;
+            while ((index = spots.takeUntouched(sizes[i])) >= 0) {
+                ParkingSpot spot = spots.get(this, index);
+                ParkingSpot.ParkResult result = spot.occupy(vehicle);
+                if (result == ParkingSpot.ParkResult.PARKED) {
+                    return spot;
+                }
+                if (result != ParkingSpot.ParkResult.NOT_AVAILABLE) {
+                    pool.offer(spot);
+                    return null;
+                }
+            }
+            ParkingSpot spot;
+            while ((spot = pool.poll()) != null) {
+                ParkingSpot.ParkResult result = spot.occupy(vehicle);
+                if (result == ParkingSpot.ParkResult.PARKED) {
+                    return spot;
+                }
+                if (result != ParkingSpot.ParkResult.NOT_AVAILABLE) {
+                    pool.offer(spot);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * claimSpot() for a COMPACT lot
+     */
+    private ParkingSpot claimCompactSpot(Vehicle vehicle, SpotSize preferredSize) {
+        for (int i = preferredSize.ordinal(); i < compactFreeSpots.length; i++) {
+            CompactFreePool pool = compactFreeSpots[i];
+            int index;
+            while ((index = pool.poll()) >= 0) {
+                ParkingSpot spot = spotAt(index);
+                ParkingSpot.ParkResult result = spot.occupy(vehicle);
+                if (result == ParkingSpot.ParkResult.PARKED) {
+                    return spot;
+                }
+                if (result != ParkingSpot.ParkResult.NOT_AVAILABLE) {
+                    pool.offer(index);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claim a license plate for a spot before the spot itself is taken.
+     * Fails if the plate is already parked in this lot.
+     *
+     * @param vehicle the vehicle being parked
+     * @param spot the spot it is going into
+     * @return true if the plate was free and is now held for the spot
+     */
+    boolean claimPlate(Vehicle vehicle, ParkingSpot spot) {
+        return spotsByPlate.putIfAbsent(vehicle.getLicensePlate(), spot) == null;
+    }
+
+    /**
+     * Give back a plate claimed for a spot that could not be taken
+     *
+     * @param vehicle the vehicle that was being parked
+     * @param spot the spot it was claimed for
+     */
+    void releasePlate(Vehicle vehicle, ParkingSpot spot) {
+        spotsByPlate.remove(vehicle.getLicensePlate(), spot);
+    }
+
+    /**
+     * Called by a spot of this lot after each state change. Keeps the free
+     * pools, the counters and the license plate index in step with the
+     * spots. New plates are already in the index, claimed before the change.
+     *
+     * @param spot the spot that changed
+     * @param oldStatus status before the change
+     * @param oldVehicle vehicle in the spot before the change, or null
+     * @param newStatus status after the change
+     * @param newVehicle vehicle in the spot after the change, or null
+     */
+    void spotChanged(ParkingSpot spot, SpotStatus oldStatus, Vehicle oldVehicle,
+            SpotStatus newStatus, Vehicle newVehicle) {
+        if (oldStatus != newStatus) {
+            int oldCount = spotCounts.decrementAndGet(countIndex(spot.getSize(), oldStatus));
+            int newCount = spotCounts.incrementAndGet(countIndex(spot.getSize(), newStatus));
+            // Spots that stop being available are dropped lazily by the pool
+            if (newStatus == SpotStatus.AVAILABLE) {
+                if (store != null) {
+                    compactFreeSpots[spot.getSize().ordinal()].offer(spot.getStoreIndex());
+                } else {
+                    freeSpots[spot.getSize().ordinal()].offer(spot);
+                }
+            }
+
+            AvailabilityListener listener = availabilityListener;
+            if (listener != null) {
+                if (oldStatus == SpotStatus.AVAILABLE && oldCount == 0) {
+                    listener.availabilityChanged(this, spot.getSize(), false);
+                } else if (newStatus == SpotStatus.AVAILABLE && newCount == 1) {
+                    listener.availabilityChanged(this, spot.getSize(), true);
+                }
+            }
+        }
+
+        if (oldVehicle != null && oldVehicle != newVehicle) {
+            spotsByPlate.remove(oldVehicle.getLicensePlate(), spot);
+        }
+    }
+
+    /**
+     * Set the listener told when a spot size runs out or frees up, usually
+     * a LotRouter
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setAvailabilityListener(AvailabilityListener listener) {
+        this.availabilityListener = listener;
+    }
+
+    /**
+     * Get the rate factors fees are worked out with
+     *
+     * @return the current rate table
+     */
+    public RateTable getRateTable() {
+        return rateTable;
+    }
+
+    /**
+     * Replace the rate factors. Fees worked out from now on use the new
+     * table; readers never lock and see either the old table or the new one.
+     *
+     * @param rateTable the new rate table
+     */
+    public void setRateTable(RateTable rateTable) {
+        this.rateTable = (rateTable != null) ? rateTable : RateTable.FLAT;
+    }
+
+    /**
+     * Get the billing rules for the length of a stay
+     *
+     * @return the current tariff
+     */
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    /**
+     * Replace the billing rules for the length of a stay. Fees worked out
+     * from now on use the new tariff.
+     *
+     * @param tariff the new tariff
+     */
+    public void setTariff(Tariff tariff) {
+        this.tariff = (tariff != null) ? tariff : Tariff.HOURLY;
+    }
+
+    /**
+     * Find a spot by its spot number. Goes directly to the spot, through
+     * the lot's numbering.
      *
      * @param spotNumber the spot number to find
      * @return ParkingSpot with that number, or null if not found
      */
     public ParkingSpot findSpotByNumber(int spotNumber) {
-        for (ParkingSpot spot : spots) {
-            if (spotNumber == spot.getSpotNumber()) {
-                return spot;
-            }
+        int index = numbering.indexOf(spotNumber, totalCapacity);
+        if (index < 0) {
+            return null;
         }
-        return null;
+        return (store != null) ? spotAt(index) : spots.get(this, index);
     }
 
     /**
-     * Find the spot where a specific vehicle is parked. Searches by license
-     * plate.
+     * Number of the spot at an index
+     *
+     * @param index the spot index
+     * @return its spot number
+     */
+    int spotNumberAt(int index) {
+        return numbering.numberOf(index);
+    }
+
+    /**
+     * Find the spot where a specific vehicle is parked. Looked up by license
+     * plate in the plate index.
      *
      * @param licensePlate the vehicle's license plate
      * @return ParkingSpot containing the vehicle, or null if not found
      */
     public ParkingSpot findSpotByVehicle(String licensePlate) {
-        for (ParkingSpot spot : spots) {
-            if (!spot.isAvailable()) {
-                Vehicle v = spot.getCurrentVehicle();
-                if (v != null && v.getLicensePlate().equals(licensePlate)) {
-                    return spot;
-                }
+        if (licensePlate == null) {
+            return null;
+        }
+        ParkingSpot spot = spotsByPlate.get(licensePlate);
+        // A plate is indexed just before its spot is taken; skip that window
+        if (spot != null) {
+            Vehicle current = spot.getCurrentVehicle();
+            if (current == null || !current.getLicensePlate().equals(licensePlate)) {
+                return null;
             }
         }
-        return null;
+        return spot;
     }
 
     /**
@@ -218,15 +676,16 @@ public class ParkingLot {
     }
     
     
-    public boolean isVehicleExist(Vehicle vehicle){
-    for (ParkingSpot spot : spots) {
-        Vehicle current = spot.getCurrentVehicle();
-        if(current != null && current.getLicensePlate().equals(vehicle.getLicensePlate())){
-            return true;
-        }  
-    }
-    return false;
-}
+    /**
+     * Check if a vehicle with the same license plate is already parked in
+     * this lot.
+     *
+     * @param vehicle the vehicle to check
+     * @return true if the plate is already parked here
+     */
+    public boolean isVehicleExist(Vehicle vehicle) {
+        return spotsByPlate.containsKey(vehicle.getLicensePlate());
+    }
     
 
     /**
@@ -238,28 +697,12 @@ public class ParkingLot {
      * @return the ParkingSpot used, or null if parking failed
      */
     public ParkingSpot parkVehicle(Vehicle vehicle, SpotSize preferredSize) {
-        // Try to find preferred size first
-        ParkingSpot spot = findAvailableSpot(preferredSize);
-        
-        // If preferred size not available, try larger sizes
-        if (spot == null && preferredSize == SpotSize.COMPACT) {
-            spot = findAvailableSpot(SpotSize.REGULAR);
-            if (spot == null) {
-                spot = findAvailableSpot(SpotSize.LARGE);
-            }
-        } else if (spot == null && preferredSize == SpotSize.REGULAR) {
-            spot = findAvailableSpot(SpotSize.LARGE);
+        if (isVehicleExist(vehicle) || (store != null && !store.canHold(vehicle))) {
+            return null;
         }
 
-        // Attempt to park if spot found
-        if (spot != null && !isVehicleExist(vehicle)) {
-            boolean success = spot.parkVehicle(vehicle);
-            if (success) {
-                return spot;
-            }
-        }
-
-        return null; // No suitable spot available
+        // Try preferred size first, then larger sizes
+        return claimSpot(vehicle, preferredSize);
     }
     
     /**
@@ -286,12 +729,203 @@ public class ParkingLot {
         ParkingSpot spot = findSpotByVehicle(licensePlate);
 
         if (spot != null) {
-            return spot.removeVehicle();
+            // Only removes this plate, even if the spot changed hands since
+            return spot.removeVehicle(licensePlate);
         }
 
         return null;
     }
 
+    /**
+     * Park a batch of vehicles in one pass, each where
+     * {@link #parkVehicle(Vehicle)} would have put it had they arrived one
+     * after another. The batch is checked once up front, and a plate that
+     * appears twice parks only its first time. The free spots of each size
+     * are then taken together, enough for every vehicle wanting that size,
+     * and handed out in arrival order; vehicles left over move on to the
+     * next larger size. Each plate is claimed once, and the counters are
+     * updated once per size rather than once per spot.
+     *
+     * @param vehicles the vehicles, in arrival order
+     * @return the spot of each vehicle in the same order, null where it
+     * could not park
+     */
+    public ArrayList<ParkingSpot> parkVehicles(List<? extends Vehicle> vehicles) {
+        int count = vehicles.size();
+        ParkingSpot[] parked = new ParkingSpot[count];
+        // Smallest size each vehicle can still use by ordinal, -1 once it cannot park
+        int[] wanted = new int[count];
+        HashSet<String> plates = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            Vehicle vehicle = vehicles.get(i);
+            SpotSize size = (vehicle != null) ? determineSpotSize(vehicle) : null;
+            boolean valid = size != null && (store == null || store.canHold(vehicle))
+                    && plates.add(vehicle.getLicensePlate());
+            wanted[i] = valid ? size.ordinal() : -1;
+        }
+
+        SpotSize[] sizes = SpotSize.values();
+        int[] waiting = new int[count];
+        for (SpotSize size : sizes) {
+            // Vehicles wanting this size, and those the smaller sizes had no room for
+            int demand = 0;
+            for (int i = 0; i < count; i++) {
+                if (parked[i] == null && wanted[i] >= 0 && wanted[i] <= size.ordinal()) {
+                    waiting[demand++] = i;
+                }
+            }
+            if (demand == 0) {
+                continue;
+            }
+            ArrayList<ParkingSpot> free = takeFreeSpots(size, demand);
+            int next = 0;
+            int occupied = 0;
+            for (int w = 0; w < demand && next < free.size(); w++) {
+                int i = waiting[w];
+                Vehicle vehicle = vehicles.get(i);
+                ParkingSpot spot = free.get(next);
+                if (!claimPlate(vehicle, spot)) {
+                    // Already parked here before the batch
+                    wanted[i] = -1;
+                    continue;
+                }
+                // A spot reserved or closed since it was taken is skipped
+                while (!spot.occupyClaimed(vehicle)) {
+                    if (++next == free.size()) {
+                        releasePlate(vehicle, spot);
+                        spot = null;
+                        break;
+                    }
+                    ParkingSpot other = free.get(next);
+                    spotsByPlate.replace(vehicle.getLicensePlate(), spot, other);
+                    spot = other;
+                }
+                if (spot != null) {
+                    parked[i] = spot;
+                    next++;
+                    occupied++;
+                }
+            }
+            for (int f = next; f < free.size(); f++) {
+                giveBack(free.get(f));
+            }
+            spotsParked(size, occupied);
+        }
+        return new ArrayList<>(Arrays.asList(parked));
+    }
+
+    /**
+     * Take up to a number of free spots of one size, never handed out ones
+     * first, as claimSpot() would one at a time
+     *
+     * @param size the spot size
+     * @param wanted most spots to take
+     * @return the spots, available when taken
+     */
+    private ArrayList<ParkingSpot> takeFreeSpots(SpotSize size, int wanted) {
+        ArrayList<ParkingSpot> taken = new ArrayList<>(wanted);
+        if (store != null) {
+            int[] indexes = new int[wanted];
+            int polled = compactFreeSpots[size.ordinal()].poll(wanted, indexes);
+            for (int i = 0; i < polled; i++) {
+                taken.add(spotAt(indexes[i]));
+            }
+            return taken;
+        }
+        int untouched = spots.takeUntouched(this, size, wanted, taken);
+        if (untouched < wanted) {
+            freeSpots[size.ordinal()].poll(wanted - untouched, taken);
+        }
+        return taken;
+    }
+
+    /**
+     * Put a spot taken for a batch but not used back in its free pool
+     *
+     * @param spot the spot
+     */
+    private void giveBack(ParkingSpot spot) {
+        // One no longer available is queued again when it frees up
+        if (spot.isAvailable()) {
+            if (store != null) {
+                compactFreeSpots[spot.getSize().ordinal()].offer(spot.getStoreIndex());
+            } else {
+                freeSpots[spot.getSize().ordinal()].offer(spot);
+            }
+        }
+    }
+
+    /**
+     * Count spots of a size a batch has occupied, in one update per counter
+     * instead of the one per spot spotChanged() makes
+     *
+     * @param size the spot size
+     * @param occupied number of its spots that went from AVAILABLE to
+     * OCCUPIED
+     */
+    private void spotsParked(SpotSize size, int occupied) {
+        if (occupied == 0) {
+            return;
+        }
+        int available = spotCounts.addAndGet(countIndex(size, SpotStatus.AVAILABLE), -occupied);
+        spotCounts.addAndGet(countIndex(size, SpotStatus.OCCUPIED), occupied);
+        AvailabilityListener listener = availabilityListener;
+        if (listener != null && available == 0) {
+            listener.availabilityChanged(this, size, false);
+        }
+    }
+
+    /**
+     * Remove a batch of vehicles by license plate in one pass
+     *
+     * @param licensePlates the plates
+     * @return the removed vehicle for each plate in the same order, null
+     * where it was not found
+     */
+    public ArrayList<Vehicle> removeVehicles(List<String> licensePlates) {
+        ArrayList<Vehicle> removed = new ArrayList<>(licensePlates.size());
+        for (String licensePlate : licensePlates) {
+            removed.add(removeVehicle(licensePlate));
+        }
+        return removed;
+    }
+
+    /**
+     * Hold an available spot of a size for a reservation, taking it from
+     * the same free spots parking uses. Only that exact size is held, since
+     * reservations are counted per size.
+     *
+     * @param size the spot size
+     * @return the spot, now RESERVED, or null if none of that size is free
+     */
+    public ParkingSpot reserveSpot(SpotSize size) {
+        int s = size.ordinal();
+        if (store != null) {
+            int index;
+            while ((index = compactFreeSpots[s].poll()) >= 0) {
+                ParkingSpot spot = spotAt(index);
+                if (spot.reserve()) {
+                    return spot;
+                }
+            }
+            return null;
+        }
+        int index;
+        while ((index = spots.takeUntouched(size)) >= 0) {
+            ParkingSpot spot = spots.get(this, index);
+            if (spot.reserve()) {
+                return spot;
+            }
+        }
+        ParkingSpot spot;
+        while ((spot = freeSpots[s].poll()) != null) {
+            if (spot.reserve()) {
+                return spot;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get list of spots by status.
      *
@@ -300,7 +934,19 @@ public class ParkingLot {
      */
     public ArrayList<ParkingSpot> getSpotsByStatus(SpotStatus status) {
         ArrayList<ParkingSpot> filtered = new ArrayList<>();
-        for (ParkingSpot spot : spots) {
+        if (store != null) {
+            for (int i = 0; i < totalCapacity; i++) {
+                if (SpotStore.statusOf(store.getState(i)) == status) {
+                    filtered.add(spotAt(i));
+                }
+            }
+            return filtered;
+        }
+        // Spots not created yet are all available, so other statuses only
+        // need the created ones
+        ArrayList<ParkingSpot> candidates = (status == SpotStatus.AVAILABLE)
+                ? spots.getAll(this) : spots.getCreated();
+        for (ParkingSpot spot : candidates) {
             if (spot.getStatus() == status) {
                 filtered.add(spot);
             }
@@ -351,44 +997,25 @@ public class ParkingLot {
      * Display parking lot statistics.
      */
     public void displayStatistics() {
+        int occupied = getOccupiedSpotsCount();
+        int available = getAvailableSpotsCount();
+
         System.out.println("\n========== Parking Statistics ==========");
         System.out.println("Lot Name: " + name);
         System.out.println("Total Spots: " + totalCapacity);
-        System.out.println("Occupied: " + getOccupiedSpotsCount()
-                + " (" + String.format("%.1f", (getOccupiedSpotsCount() * 100.0 / totalCapacity)) + "%)");
-        System.out.println("Available: " + getAvailableSpotsCount()
-                + " (" + String.format("%.1f", (getAvailableSpotsCount() * 100.0 / totalCapacity)) + "%)");
+        System.out.println("Occupied: " + occupied
+                + " (" + String.format("%.1f", (occupied * 100.0 / totalCapacity)) + "%)");
+        System.out.println("Available: " + available
+                + " (" + String.format("%.1f", (available * 100.0 / totalCapacity)) + "%)");
 
         System.out.println("\nSpot Distribution:");
-        int compactTotal = 0, regularTotal = 0, largeTotal = 0;
-        for (ParkingSpot spot : spots) {
-
-            switch (spot.getSize()) {
-                case COMPACT ->
-                    compactTotal++;
-                case REGULAR ->
-                    regularTotal++;
-                case LARGE ->
-                    largeTotal++;
-                default ->
-                    largeTotal++;
-            }
-        }
-    System.out.println (
-
-    "  COMPACT: " + compactTotal + " total, "
+        System.out.println("  COMPACT: " + getSpotsCountBySize(SpotSize.COMPACT) + " total, "
                 + getAvailableSpotsCountBySize(SpotSize.COMPACT) + " available");
-    System.out.println (
-
-    "  REGULAR: " + regularTotal + " total, "
+        System.out.println("  REGULAR: " + getSpotsCountBySize(SpotSize.REGULAR) + " total, "
                 + getAvailableSpotsCountBySize(SpotSize.REGULAR) + " available");
-    System.out.println (
-
-    "  LARGE:   " + largeTotal + " total, "
+        System.out.println("  LARGE:   " + getSpotsCountBySize(SpotSize.LARGE) + " total, "
                 + getAvailableSpotsCountBySize(SpotSize.LARGE) + " available");
-    System.out.println (
-
-"========================================\n");
+        System.out.println("========================================\n");
     }
     
     /**
@@ -397,7 +1024,7 @@ public class ParkingLot {
      */
     public void displayAllSpots() {
         System.out.println("\n========== All Parking Spots ==========");
-        for (ParkingSpot spot : spots) {
+        for (ParkingSpot spot : getSpots()) {
             System.out.println(spot);
         }
         System.out.println("=======================================\n");
@@ -464,13 +1091,70 @@ public class ParkingLot {
     }
 
     /**
-     * Get all parking spots. Returns the actual list - use with caution
-     * (consider defensive copy for production).
+     * Get all parking spots. An OBJECTS lot returns the list it keeps,
+     * shared by every caller, so it must not be changed; any spots not
+     * used yet are created the first time this is called. COMPACT and
+     * MAPPED lots return a new list of views of every spot on each call.
      *
      * @return ArrayList of all parking spots
      */
     public ArrayList<ParkingSpot> getSpots() {
-        return spots;
+        if (store != null) {
+            ArrayList<ParkingSpot> views = new ArrayList<>(totalCapacity);
+            for (int i = 0; i < totalCapacity; i++) {
+                views.add(spotAt(i));
+            }
+            return views;
+        }
+        return spots.getAll(this);
+    }
+
+    /**
+     * Get how the spots of this lot are numbered
+     *
+     * @return the numbering
+     */
+    public SpotNumbering getNumbering() {
+        return numbering;
+    }
+
+    /**
+     * Get how this lot stores its spots
+     *
+     * @return OBJECTS, COMPACT or MAPPED
+     */
+    public SpotStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Write the state of a MAPPED lot to disk and release its file. The lot
+     * must not be used afterwards. Does nothing for other storage.
+     *
+     * @throws IOException if the file cannot be written or released
+     */
+    public void closeStorage() throws IOException {
+        if (store instanceof MappedSpotStore mapped) {
+            mapped.close();
+        }
+    }
+
+    /**
+     * Estimate the heap used to hold spot state, including the free pools
+     * but not the parked vehicles or the plate index. An OBJECTS lot counts
+     * the spots created so far; the file of a MAPPED lot is outside the heap.
+     *
+     * @return size in bytes
+     */
+    public long getStorageFootprintBytes() {
+        if (store != null) {
+            long bytes = store.getFootprintBytes();
+            for (CompactFreePool pool : compactFreeSpots) {
+                bytes += pool.getFootprintBytes();
+            }
+            return bytes;
+        }
+        return spots.getFootprintBytes();
     }
 
     @Override
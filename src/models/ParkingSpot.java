@@ -1,8 +1,10 @@
 package models;
 
+import enums.EventType;
 import enums.SpotSize;
 import enums.SpotStatus;
 import enums.VehicleType;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Represents a single parking spot in the parking lot Each spot has a size,
@@ -17,6 +19,9 @@ import enums.VehicleType;
  * methods instead to maintain consistency between vehicle and status</li>
  * <li>setStatus() is provided but controlled operations (parkVehicle, reserve,
  * etc.) are preferred to maintain data integrity</li>
+ * <li>In a lot with COMPACT storage a spot is a view onto the lot's arrays.
+ * Several views of the same spot may exist; they share its state and are
+ * equal to each other.</li>
  * </ul>
  *
  * @author Haryad
@@ -24,10 +29,29 @@ import enums.VehicleType;
  */
 public class ParkingSpot {
 
+    /**
+     * Result of an attempt to occupy a spot, used by the owning lot to tell
+     * a lost race apart from a vehicle that can never use this spot
+     */
+    enum ParkResult {
+        PARKED, NOT_AVAILABLE, CANNOT_FIT, ALREADY_PARKED
+    }
+
+    private static final AtomicReferenceFieldUpdater<ParkingSpot, SpotState> STATE
+            = AtomicReferenceFieldUpdater.newUpdater(ParkingSpot.class, SpotState.class, "state");
+
     private final int spotNumber;
     private final SpotSize size;
-    private SpotStatus status;
-    private Vehicle currentVehicle;
+    // Status and vehicle change together through compare-and-set on this field
+    private volatile SpotState state;
+    // Set for views of a compact lot, whose state lives in the store instead
+    private final SpotStore store;
+    private final int index;
+
+    // Owning lot, notified on every state change to keep its indexes current
+    ParkingLot lot;
+    // 1 while this spot is queued in the owning lot's free pool
+    volatile int inFreePool;
 
     private static int totalSpotsCreated = 0;
 
@@ -41,11 +65,61 @@ public class ParkingSpot {
     public ParkingSpot(int spotNumber, SpotSize size) {
         this.spotNumber = spotNumber;
         this.size = size;
-        this.status = SpotStatus.AVAILABLE;
-        this.currentVehicle = null;
+        this.state = SpotState.of(SpotStatus.AVAILABLE);
+        this.store = null;
+        this.index = -1;
         totalSpotsCreated++;
     }
 
+    /**
+     * Build a copy of a spot of a lot held elsewhere, such as one a shard
+     * reported, holding the vehicle parked there. Not counted in
+     * getTotalSpotsCreated(): the spot was counted by the lot that owns it.
+     *
+     * @param spotNumber the spot's number
+     * @param size the spot's size
+     * @param vehicle the vehicle in it
+     * @return the copy, belonging to no lot
+     */
+    public static ParkingSpot copyOf(int spotNumber, SpotSize size, Vehicle vehicle) {
+        ParkingSpot spot = new ParkingSpot(null, spotNumber, size);
+        spot.parkVehicle(vehicle);
+        return spot;
+    }
+
+    /**
+     * Constructor for a spot an OBJECTS lot creates on first use. Not
+     * counted here: the lot counts all of its spots when it is built, as
+     * it does the views of a compact lot.
+     *
+     * @param lot the owning lot
+     * @param spotNumber the unique spot number
+     * @param size the size of the spot
+     */
+    ParkingSpot(ParkingLot lot, int spotNumber, SpotSize size) {
+        this.spotNumber = spotNumber;
+        this.size = size;
+        this.state = SpotState.of(SpotStatus.AVAILABLE);
+        this.store = null;
+        this.index = -1;
+        this.lot = lot;
+    }
+
+    /**
+     * Constructor for a view of a spot in a compact lot
+     *
+     * @param lot the owning lot
+     * @param store the lot's spot store
+     * @param index the spot's index in the store
+     */
+    ParkingSpot(ParkingLot lot, SpotStore store, int index) {
+        this.spotNumber = lot.spotNumberAt(index);
+        this.size = store.getSize(index);
+        this.store = store;
+        this.index = index;
+        this.lot = lot;
+    }
+
     /**
      * Park a vehicle in this spot
      *
@@ -53,22 +127,95 @@ public class ParkingSpot {
      * @return true if successfully parked, false if spot is occupied
      */
     public boolean parkVehicle(Vehicle vehicle) {
+        return report(occupy(vehicle, SpotStatus.AVAILABLE), vehicle);
+    }
 
-        if (status != SpotStatus.AVAILABLE) {
-            System.out.println("ERROR: Spot is not available");
-            return false;
-        }
+    /**
+     * Park the vehicle this spot is held for, ending its reservation
+     *
+     * @param vehicle the vehicle to park
+     * @return true if successfully parked, false if the spot is no longer
+     * reserved or the vehicle cannot use it
+     */
+    public boolean parkReserved(Vehicle vehicle) {
+        return report(occupy(vehicle, SpotStatus.RESERVED), vehicle);
+    }
 
-        if (!canFit(vehicle)) {
-            System.out.println("ERROR: " + vehicle.getType()
-                    + " cannot fit in " + size + " spot!");
-            return false;
+    /**
+     * Print why an attempt to park failed
+     *
+     * @param result outcome of the attempt
+     * @param vehicle the vehicle
+     * @return true if the vehicle was parked
+     */
+    private boolean report(ParkResult result, Vehicle vehicle) {
+        switch (result) {
+            case CANNOT_FIT ->
+                EventLog.logSpot(EventType.SPOT_TOO_SMALL, vehicle, this);
+            case ALREADY_PARKED ->
+                EventLog.logSpot(EventType.ALREADY_PARKED, vehicle, this);
+            case NOT_AVAILABLE ->
+                EventLog.logSpot(EventType.SPOT_NOT_AVAILABLE, vehicle, this);
         }
+        return result == ParkResult.PARKED;
+    }
 
-        this.currentVehicle = vehicle;
-        this.status = SpotStatus.OCCUPIED;
-        return true;
+    /**
+     * Try to park a vehicle without printing anything. Safe to call from
+     * several threads at once: the license plate is claimed in the owning
+     * lot first and the spot is then taken with a compare-and-set, so one
+     * spot never holds two vehicles and one plate is never parked twice.
+     *
+     * @param vehicle the vehicle to park
+     * @return outcome of the attempt
+     */
+    ParkResult occupy(Vehicle vehicle) {
+        return occupy(vehicle, SpotStatus.AVAILABLE);
+    }
 
+    /**
+     * Take this spot for a vehicle of a batch whose plate the owning lot has
+     * already claimed for it. The lot is not called back: it updates its
+     * counters once for the whole batch.
+     *
+     * @param vehicle the vehicle to park, which fits this spot
+     * @return true if the spot was available and now holds the vehicle
+     */
+    boolean occupyClaimed(Vehicle vehicle) {
+        SpotState next = new SpotState(SpotStatus.OCCUPIED, vehicle);
+        while (true) {
+            SpotState current = read();
+            if (current.status != SpotStatus.AVAILABLE) {
+                return false;
+            }
+            boolean changed = (store != null) ? changeStoredState(current, next)
+                    : STATE.compareAndSet(this, current, next);
+            if (changed) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * occupy() from a given status, AVAILABLE or RESERVED
+     */
+    private ParkResult occupy(Vehicle vehicle, SpotStatus from) {
+        if (read().status != from) {
+            return ParkResult.NOT_AVAILABLE;
+        }
+        if (!canFit(vehicle)) {
+            return ParkResult.CANNOT_FIT;
+        }
+        if (lot != null && !lot.claimPlate(vehicle, this)) {
+            return ParkResult.ALREADY_PARKED;
+        }
+        if (transition(from, new SpotState(SpotStatus.OCCUPIED, vehicle)) == null) {
+            if (lot != null) {
+                lot.releasePlate(vehicle, this);
+            }
+            return ParkResult.NOT_AVAILABLE;
+        }
+        return ParkResult.PARKED;
     }
 
     /**
@@ -77,13 +224,35 @@ public class ParkingSpot {
      * @return the vehicle that was removed, or null if spot was empty
      */
     public Vehicle removeVehicle() {
-        if (currentVehicle != null) {
-            Vehicle removedVehicle = this.currentVehicle;
-            this.currentVehicle = null;
-            this.status = SpotStatus.AVAILABLE;
-            return removedVehicle;
+        while (true) {
+            SpotState current = read();
+            if (current.vehicle == null) {
+                return null;
+            }
+            if (changeState(current, SpotState.of(SpotStatus.AVAILABLE))) {
+                return current.vehicle;
+            }
+        }
+    }
+
+    /**
+     * Remove the vehicle only if it is the one with the given plate. Used by
+     * the owning lot so a stale plate lookup can never evict a vehicle that
+     * parked in the same spot a moment later.
+     *
+     * @param licensePlate plate of the vehicle expected in this spot
+     * @return the vehicle that was removed, or null if it was not here
+     */
+    Vehicle removeVehicle(String licensePlate) {
+        while (true) {
+            SpotState current = read();
+            if (current.vehicle == null || !current.vehicle.getLicensePlate().equals(licensePlate)) {
+                return null;
+            }
+            if (changeState(current, SpotState.of(SpotStatus.AVAILABLE))) {
+                return current.vehicle;
+            }
         }
-        return null;
     }
 
     /**
@@ -92,7 +261,38 @@ public class ParkingSpot {
      * @return true if status
      */
     public boolean isAvailable() {
-        return status == SpotStatus.AVAILABLE;
+        return read().status == SpotStatus.AVAILABLE;
+    }
+
+    /**
+     * Hand this spot from the vehicle in it straight to another, without
+     * it ever becoming available, so no other arrival can take it in
+     * between
+     *
+     * @param licensePlate plate of the vehicle leaving
+     * @param next the vehicle taking its place
+     * @return the vehicle that left, or null if it was not here, or the
+     * next vehicle cannot use this spot or is already parked
+     */
+    public Vehicle handOver(String licensePlate, Vehicle next) {
+        if (!canFit(next) || (store != null && !store.canHold(next))) {
+            return null;
+        }
+        if (lot != null && !lot.claimPlate(next, this)) {
+            return null;
+        }
+        while (true) {
+            SpotState current = read();
+            if (current.vehicle == null || !current.vehicle.getLicensePlate().equals(licensePlate)) {
+                if (lot != null) {
+                    lot.releasePlate(next, this);
+                }
+                return null;
+            }
+            if (changeState(current, new SpotState(SpotStatus.OCCUPIED, next))) {
+                return current.vehicle;
+            }
+        }
     }
 
     /**
@@ -101,7 +301,7 @@ public class ParkingSpot {
      * @return true if status is OCCUPIED
      */
     public boolean isOccupied() {
-        return status == SpotStatus.OCCUPIED;
+        return read().status == SpotStatus.OCCUPIED;
     }
 
     /**
@@ -137,11 +337,7 @@ public class ParkingSpot {
      * @return true if successfully reserved
      */
     public boolean reserve() {
-        if (status == SpotStatus.AVAILABLE) {
-            this.status = SpotStatus.RESERVED;
-            return true;
-        }
-        return false;
+        return transition(SpotStatus.AVAILABLE, SpotState.of(SpotStatus.RESERVED)) != null;
     }
 
     /**
@@ -150,28 +346,151 @@ public class ParkingSpot {
      * @return true if successfully cancelled
      */
     public boolean cancelReservation() {
-        if (status == SpotStatus.RESERVED) {
-            this.status = SpotStatus.AVAILABLE;
-            return true;
-        }
-        return false;
+        return transition(SpotStatus.RESERVED, SpotState.of(SpotStatus.AVAILABLE)) != null;
     }
 
     /**
      * Mark spot as out of service
      */
     public void markOutOfService() {
-        this.status = SpotStatus.OUT_OF_SERVICE;
-        this.currentVehicle = null;
+        SpotState current;
+        do {
+            current = read();
+        } while (!changeState(current, SpotState.of(SpotStatus.OUT_OF_SERVICE)));
     }
 
     /**
      * Return spot to service (make available)
      */
     public void returnToService() {
-        if (status == SpotStatus.OUT_OF_SERVICE) {
-            this.status = SpotStatus.AVAILABLE;
+        transition(SpotStatus.OUT_OF_SERVICE, SpotState.of(SpotStatus.AVAILABLE));
+    }
+
+    /**
+     * Move from the expected status to a new state atomically
+     *
+     * @param expected status the spot must currently have
+     * @param next state to move to
+     * @return the state that was replaced, or null if the status did not match
+     */
+    private SpotState transition(SpotStatus expected, SpotState next) {
+        while (true) {
+            SpotState current = read();
+            if (current.status != expected) {
+                return null;
+            }
+            if (changeState(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Single place where status and vehicle change, so the owning lot can
+     * keep its free pool, plate index and counters in step with this spot
+     *
+     * @param current the state this spot is expected to be in
+     * @param next the state to move to
+     * @return true if the change was made, false if another thread got there
+     * first
+     */
+    private boolean changeState(SpotState current, SpotState next) {
+        if (store != null) {
+            if (!changeStoredState(current, next)) {
+                return false;
+            }
+        } else if (!STATE.compareAndSet(this, current, next)) {
+            return false;
+        }
+        if (lot != null) {
+            lot.spotChanged(this, current.status, current.vehicle, next.status, next.vehicle);
+        }
+        return true;
+    }
+
+    /**
+     * Current state, read from the store for views of a compact lot
+     *
+     * @return the state; for views it carries the word it was read from
+     */
+    private SpotState read() {
+        if (store == null) {
+            return state;
+        }
+        while (true) {
+            long word = store.getState(index);
+            int handle = SpotStore.handleOf(word);
+            if (handle == 0) {
+                return new SpotState(SpotStore.statusOf(word), null, word);
+            }
+            Vehicle vehicle = store.getVehicle(handle);
+            // Same word, same version: the handle was not freed meanwhile
+            if (store.getState(index) == word) {
+                return new SpotState(SpotStore.statusOf(word), vehicle, word);
+            }
+        }
+    }
+
+    /**
+     * Compare-and-set of the stored state word of a view
+     *
+     * @param current state read by read(), holding the expected word
+     * @param next the state to move to
+     * @return true if the change was made
+     */
+    private boolean changeStoredState(SpotState current, SpotState next) {
+        int oldHandle = SpotStore.handleOf(current.word);
+        int newHandle;
+        if (next.vehicle == null) {
+            newHandle = 0;
+        } else if (next.vehicle == current.vehicle) {
+            newHandle = oldHandle;
+        } else {
+            newHandle = store.addVehicle(next.vehicle);
+        }
+
+        long nextWord = SpotStore.pack(next.status, newHandle, SpotStore.versionOf(current.word) + 1);
+        if (!store.compareAndSetState(index, current.word, nextWord)) {
+            if (newHandle != oldHandle && newHandle != 0) {
+                store.removeVehicle(newHandle);
+            }
+            return false;
+        }
+        if (oldHandle != newHandle && oldHandle != 0) {
+            store.removeVehicle(oldHandle);
+        }
+        return true;
+    }
+
+    /**
+     * Index of this spot in its compact lot's store
+     *
+     * @return the index, or -1 for a spot that is not a view
+     */
+    int getStoreIndex() {
+        return index;
+    }
+
+    /**
+     * Views of the same stored spot are equal; other spots are equal only to
+     * themselves
+     *
+     * @param other the object to compare with
+     * @return true if both refer to the same spot
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
         }
+        return store != null && other instanceof ParkingSpot spot
+                && spot.store == store && spot.index == index;
+    }
+
+    @Override
+    public int hashCode() {
+        return (store == null) ? System.identityHashCode(this)
+                : System.identityHashCode(store) * 31 + index;
     }
 
     // Getters and setters
@@ -184,21 +503,41 @@ public class ParkingSpot {
     }
 
     public SpotStatus getStatus() {
-        return status;
+        return read().status;
     }
 
     public void setStatus(SpotStatus status) {
-        this.status = status;
+        SpotState current;
+        do {
+            current = read();
+        } while (!changeState(current, new SpotState(status, current.vehicle)));
     }
 
     public Vehicle getCurrentVehicle() {
-        return currentVehicle;
+        return read().vehicle;
     }
 
+    /**
+     * Get the number of spots created: every spot of every lot, whatever
+     * its storage and whether or not it has been used yet, plus spots
+     * built on their own
+     *
+     * @return spots created
+     */
     public static int getTotalSpotsCreated() {
         return totalSpotsCreated;
     }
 
+    /**
+     * Count the spots of a lot, which are created on first use or are
+     * views over its spot store
+     *
+     * @param count number of spots
+     */
+    static void countCreated(int count) {
+        totalSpotsCreated += count;
+    }
+
     /**
      * String representation of parking spot
      *
@@ -206,6 +545,9 @@ public class ParkingSpot {
      */
     @Override
     public String toString() {
+        SpotState current = read();
+        SpotStatus status = current.status;
+        Vehicle currentVehicle = current.vehicle;
         String vehicleInfo = switch (status) {
             case OCCUPIED ->
                 (currentVehicle != null)
@@ -231,11 +573,13 @@ public class ParkingSpot {
      * @return detailed formatted string
      */
     public String toDetailedString() {
+        SpotState current = read();
+        Vehicle currentVehicle = current.vehicle;
         StringBuilder sb = new StringBuilder();
         sb.append("=================================\n");
         sb.append("parking spot #").append(spotNumber).append("\n");
         sb.append("size: ").append(size).append("\n");
-        sb.append("status: ").append(status).append("\n");
+        sb.append("status: ").append(current.status).append("\n");
 
         if (currentVehicle != null) {
             sb.append("Current Vehicle:\n");
@@ -249,4 +593,43 @@ public class ParkingSpot {
         return sb.toString();
     }
 
+    /**
+     * Immutable pair of status and vehicle, swapped as one unit so readers
+     * never see a vehicle without its status or the other way round
+     */
+    private static final class SpotState {
+
+        private static final SpotState[] EMPTY = new SpotState[SpotStatus.values().length];
+
+        static {
+            for (SpotStatus status : SpotStatus.values()) {
+                EMPTY[status.ordinal()] = new SpotState(status, null);
+            }
+        }
+
+        final SpotStatus status;
+        final Vehicle vehicle;
+        final long word;    // Stored word this was read from, views only
+
+        SpotState(SpotStatus status, Vehicle vehicle) {
+            this(status, vehicle, 0);
+        }
+
+        SpotState(SpotStatus status, Vehicle vehicle, long word) {
+            this.status = status;
+            this.vehicle = vehicle;
+            this.word = word;
+        }
+
+        /**
+         * Shared state for a status with no vehicle
+         *
+         * @param status the status
+         * @return cached state instance
+         */
+        static SpotState of(SpotStatus status) {
+            return EMPTY[status.ordinal()];
+        }
+    }
+
 }
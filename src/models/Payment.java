@@ -0,0 +1,68 @@
+package models;
+
+import enums.PaymentStatus;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable payment sent for settlement
+ * A settled or declined payment is a new object with the same transaction
+ * ID, so the original request can be handed around without locking
+ * @author Haryad
+ */
+public final class Payment {
+
+    private static final AtomicLong transactionCounter = new AtomicLong();
+
+    private final long transactionId;
+    private final Ticket ticket;        // May be null for payments without a ticket
+    private final long amountCents;
+    private final PaymentStatus status;
+
+    private Payment(long transactionId, Ticket ticket, long amountCents, PaymentStatus status) {
+        this.transactionId = transactionId;
+        this.ticket = ticket;
+        this.amountCents = amountCents;
+        this.status = status;
+    }
+
+    /**
+     * Constructor for a new pending payment
+     * @param ticket the ticket being paid, or null
+     * @param amountCents the amount in cents
+     */
+    public Payment(Ticket ticket, long amountCents) {
+        this(transactionCounter.incrementAndGet(), ticket, amountCents, PaymentStatus.PENDING);
+    }
+
+    /**
+     * Copy of this payment with a new status
+     * @param newStatus the status
+     * @return the updated payment
+     */
+    public Payment withStatus(PaymentStatus newStatus) {
+        return new Payment(transactionId, ticket, amountCents, newStatus);
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public PaymentStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "Payment [" + transactionId
+                + (ticket != null ? ", " + ticket.getTicketId() : "")
+                + ", $" + Money.format(amountCents) + ", " + status + "]";
+    }
+}
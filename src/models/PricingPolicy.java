@@ -0,0 +1,120 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * Rules for adjusting parking rates, as factors in thousandths of the base
+ * rate of each vehicle
+ * <p>
+ * Three factors are multiplied together: one from how full the spots of a
+ * size are, read off a curve with a point every 10% of occupancy, one for
+ * the hour of the day and one for the day of the week. The result is kept
+ * within a floor and a ceiling. A policy is immutable; the pricing engine
+ * compiles it into a {@link RateTable} for the lot's current occupancy.</p>
+ *
+ * @author Haryad
+ */
+public final class PricingPolicy {
+
+    /** Factor that leaves a rate unchanged */
+    public static final int BASE_PERMILLE = 1000;
+
+    private static final int CURVE_POINTS = 11;   // 0%, 10%, ... 100% occupied
+
+    private final int[] occupancyPermille;
+    private final int[] hourPermille;
+    private final int[] dayPermille;
+    private final int minPermille;
+    private final int maxPermille;
+
+    /**
+     * Constructor for PricingPolicy
+     *
+     * @param occupancyPermille factor at 0%, 10%, ... 100% occupancy; in
+     * between, the factor is interpolated
+     * @param hourPermille factor for each hour of the day, from midnight
+     * @param dayPermille factor for each day of the week, from Monday
+     * @param minPermille lowest combined factor
+     * @param maxPermille highest combined factor
+     */
+    public PricingPolicy(int[] occupancyPermille, int[] hourPermille, int[] dayPermille,
+            int minPermille, int maxPermille) {
+        this.occupancyPermille = checked(occupancyPermille, CURVE_POINTS, "occupancy");
+        this.hourPermille = checked(hourPermille, 24, "hour");
+        this.dayPermille = checked(dayPermille, 7, "day");
+        if (minPermille <= 0 || maxPermille < minPermille) {
+            throw new IllegalArgumentException("Invalid rate bounds: " + minPermille + " to " + maxPermille);
+        }
+        this.minPermille = minPermille;
+        this.maxPermille = maxPermille;
+    }
+
+    /**
+     * Policy that always charges the base rates
+     *
+     * @return the flat policy
+     */
+    public static PricingPolicy flat() {
+        int[] occupancy = new int[CURVE_POINTS];
+        int[] hours = new int[24];
+        int[] days = new int[7];
+        Arrays.fill(occupancy, BASE_PERMILLE);
+        Arrays.fill(hours, BASE_PERMILLE);
+        Arrays.fill(days, BASE_PERMILLE);
+        return new PricingPolicy(occupancy, hours, days, BASE_PERMILLE, BASE_PERMILLE);
+    }
+
+    /**
+     * Typical city policy: base rates until a size is half full, rising to
+     * double when it is full; 25% more from 7:00 to 19:00 on weekdays and
+     * 20% less at weekends; never below 80% or above 250% of the base rate
+     *
+     * @return the policy
+     */
+    public static PricingPolicy standard() {
+        int[] occupancy = {1000, 1000, 1000, 1000, 1000, 1000, 1100, 1250, 1450, 1700, 2000};
+        int[] hours = new int[24];
+        for (int hour = 0; hour < 24; hour++) {
+            hours[hour] = (hour >= 7 && hour < 19) ? 1250 : BASE_PERMILLE;
+        }
+        int[] days = {1000, 1000, 1000, 1000, 1000, 800, 800};
+        return new PricingPolicy(occupancy, hours, days, 800, 2500);
+    }
+
+    /**
+     * Work out the factor for an occupancy, day and hour
+     *
+     * @param occupancy share of spots in use, in thousandths
+     * @param dayOfWeek day from 0 for Monday
+     * @param hour hour of the day
+     * @return the factor in thousandths, within the bounds
+     */
+    int ratePermille(int occupancy, int dayOfWeek, int hour) {
+        long rate = (long) occupancyFactor(occupancy) * dayPermille[dayOfWeek] / BASE_PERMILLE
+                * hourPermille[hour] / BASE_PERMILLE;
+        return (int) Math.max(minPermille, Math.min(maxPermille, rate));
+    }
+
+    private int occupancyFactor(int occupancy) {
+        int clamped = Math.max(0, Math.min(1000, occupancy));
+        int point = clamped / 100;
+        if (point == CURVE_POINTS - 1) {
+            return occupancyPermille[point];
+        }
+        int low = occupancyPermille[point];
+        int high = occupancyPermille[point + 1];
+        return low + (high - low) * (clamped % 100) / 100;
+    }
+
+    private static int[] checked(int[] factors, int length, String name) {
+        if (factors.length != length) {
+            throw new IllegalArgumentException("Need " + length + " " + name + " factors, got " + factors.length);
+        }
+        for (int factor : factors) {
+            if (factor <= 0) {
+                throw new IllegalArgumentException("Rate factors must be positive: " + factor);
+            }
+        }
+        return factors.clone();
+    }
+}
@@ -0,0 +1,89 @@
+package models;
+
+import enums.SpotSize;
+import java.util.Arrays;
+
+/**
+ * Rate factors compiled for one moment of a lot, ready to look up
+ * <p>
+ * Holds the factor for every spot size and every hour of the week, with
+ * the lot's occupancy at compile time already applied, so finding the
+ * rate for a fee is a little arithmetic on the time and one array read.
+ * Tables never change once built; the pricing engine compiles a new one
+ * and the lot swaps it in with a single volatile write, so readers never
+ * lock and never see half a table.</p>
+ *
+ * @author Haryad
+ */
+public final class RateTable {
+
+    private static final int HOURS_PER_WEEK = 7 * 24;
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    // 1970-01-01 was a Thursday, day 3 counting from Monday
+    private static final int EPOCH_DAY_OF_WEEK = 3;
+
+    /** Table charging the base rate for every size at every hour */
+    public static final RateTable FLAT = compile(PricingPolicy.flat(), new int[SpotSize.values().length], 0);
+
+    private final int[] ratePermille;   // By size, then hour of the week from Monday 00:00
+    private final int[] occupancy;      // Thousandths of each size in use when compiled
+    private final long offsetMillis;    // Local time minus UTC when compiled
+
+    private RateTable(int[] ratePermille, int[] occupancy, long offsetMillis) {
+        this.ratePermille = ratePermille;
+        this.occupancy = occupancy;
+        this.offsetMillis = offsetMillis;
+    }
+
+    /**
+     * Compile a policy for the current occupancy of a lot
+     *
+     * @param policy the pricing policy
+     * @param occupancy thousandths of the spots of each size in use, by
+     * ordinal
+     * @param offsetMillis local time minus UTC, in milliseconds
+     * @return the table
+     */
+    public static RateTable compile(PricingPolicy policy, int[] occupancy, long offsetMillis) {
+        SpotSize[] sizes = SpotSize.values();
+        int[] rates = new int[sizes.length * HOURS_PER_WEEK];
+        for (int s = 0; s < sizes.length; s++) {
+            for (int day = 0; day < 7; day++) {
+                for (int hour = 0; hour < 24; hour++) {
+                    rates[s * HOURS_PER_WEEK + day * 24 + hour] = policy.ratePermille(occupancy[s], day, hour);
+                }
+            }
+        }
+        return new RateTable(rates, occupancy.clone(), offsetMillis);
+    }
+
+    /**
+     * Find the rate factor for a spot size at a time
+     *
+     * @param size the spot size
+     * @param timeMillis the time in milliseconds since epoch
+     * @return the factor in thousandths of the base rate
+     */
+    public int getRatePermille(SpotSize size, long timeMillis) {
+        long local = timeMillis + offsetMillis;
+        int dayOfWeek = Math.floorMod(Math.floorDiv(local, MILLIS_PER_DAY) + EPOCH_DAY_OF_WEEK, 7);
+        int hour = (int) (Math.floorMod(local, MILLIS_PER_DAY) / MILLIS_PER_HOUR);
+        return ratePermille[size.ordinal() * HOURS_PER_WEEK + dayOfWeek * 24 + hour];
+    }
+
+    /**
+     * Get the occupancy this table was compiled for
+     *
+     * @param size the spot size
+     * @return thousandths of the spots of that size in use
+     */
+    public int getOccupancyPermille(SpotSize size) {
+        return occupancy[size.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        return "RateTable[occupancy=" + Arrays.toString(occupancy) + "]";
+    }
+}
@@ -0,0 +1,129 @@
+package models;
+
+import enums.ReservationStatus;
+import enums.SpotSize;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A booking of one spot of a given size for a window of time
+ * <p>
+ * No spot is set aside while the booking is in the future; it only counts
+ * against the spots of its size for that window. When the window starts a
+ * free spot is held for it, and the vehicle either parks there or the
+ * reservation expires and the spot is released.</p>
+ * <p>
+ * Status changes are compare-and-set, so a cancellation, an expiry and a
+ * check-in racing each other leave exactly one winner.</p>
+ *
+ * @author Haryad
+ */
+public final class Reservation {
+
+    private static final AtomicReferenceFieldUpdater<Reservation, ReservationStatus> STATUS
+            = AtomicReferenceFieldUpdater.newUpdater(Reservation.class, ReservationStatus.class, "status");
+
+    private final long reservationId;
+    private final String licensePlate;
+    private final SpotSize size;
+    private final long startTime;  // Milliseconds since epoch
+    private final long endTime;
+    private volatile ReservationStatus status;
+    private volatile ParkingSpot spot;  // Set once a spot is held
+
+    /**
+     * Constructor for Reservation
+     *
+     * @param reservationId the unique reservation ID
+     * @param licensePlate plate of the vehicle expected
+     * @param size the spot size booked
+     * @param startTime start of the window in milliseconds
+     * @param endTime end of the window in milliseconds
+     */
+    public Reservation(long reservationId, String licensePlate, SpotSize size, long startTime, long endTime) {
+        this.reservationId = reservationId;
+        this.licensePlate = licensePlate;
+        this.size = size;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.status = ReservationStatus.BOOKED;
+    }
+
+    /**
+     * Record the spot held for this reservation and move it to HELD
+     *
+     * @param heldSpot the spot, already RESERVED
+     * @return true if the reservation was still BOOKED; otherwise the
+     * caller must release the spot
+     */
+    public boolean hold(ParkingSpot heldSpot) {
+        // Set before the status, so whoever sees HELD also sees the spot
+        this.spot = heldSpot;
+        if (STATUS.compareAndSet(this, ReservationStatus.BOOKED, ReservationStatus.HELD)) {
+            return true;
+        }
+        this.spot = null;
+        return false;
+    }
+
+    /**
+     * Move from one status to another atomically
+     *
+     * @param expected status the reservation must currently have
+     * @param next the status to move to
+     * @return true if the status matched and was changed
+     */
+    public boolean changeStatus(ReservationStatus expected, ReservationStatus next) {
+        return STATUS.compareAndSet(this, expected, next);
+    }
+
+    /**
+     * Check whether the reservation is over
+     *
+     * @return true if it expired, was cancelled or completed
+     */
+    public boolean isClosed() {
+        ReservationStatus current = status;
+        return current == ReservationStatus.EXPIRED || current == ReservationStatus.CANCELLED
+                || current == ReservationStatus.COMPLETED;
+    }
+
+    public long getReservationId() {
+        return reservationId;
+    }
+
+    public String getLicensePlate() {
+        return licensePlate;
+    }
+
+    public SpotSize getSize() {
+        return size;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public ReservationStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the spot held for this reservation
+     *
+     * @return the spot, or null if none is held yet
+     */
+    public ParkingSpot getSpot() {
+        return spot;
+    }
+
+    @Override
+    public String toString() {
+        ParkingSpot current = spot;
+        return "Reservation[" + reservationId + ", " + licensePlate + ", " + size + ", " + status
+                + ((current != null) ? ", spot #" + current.getSpotNumber() : "") + "]";
+    }
+}
@@ -0,0 +1,165 @@
+package models;
+
+/**
+ * How the spots of a lot are numbered
+ * <p>
+ * A lot keeps its spots by index, from 0 to capacity - 1, smallest sizes
+ * first. Sequential numbering gives index i the number i + 1 and finds a
+ * spot by number with plain arithmetic. Any other numbering, such as
+ * numbers prefixed by floor, keeps the number of every index in an int
+ * array and finds an index through an open-addressing table of ints, so a
+ * lookup is still a few array reads with no boxing.</p>
+ *
+ * @author Haryad
+ */
+public final class SpotNumbering {
+
+    private static final SpotNumbering SEQUENTIAL = new SpotNumbering(null);
+
+    private final int[] numbers;    // Number of each index, null when sequential
+    // Pairs of spot number and index, so a probe reads one cache line;
+    // number 0 marks an empty slot
+    private final int[] table;
+    private final int mask;
+    private final int shift;
+
+    private SpotNumbering(int[] numbers) {
+        this.numbers = numbers;
+        if (numbers == null) {
+            this.table = null;
+            this.mask = 0;
+            this.shift = 0;
+            return;
+        }
+        // At most half full, so probes stay short
+        int slots = Integer.highestOneBit(Math.max(2, numbers.length) * 2 - 1) << 1;
+        this.table = new int[2 * slots];
+        this.mask = slots - 1;
+        this.shift = Integer.numberOfLeadingZeros(mask);
+        for (int i = 0; i < numbers.length; i++) {
+            int number = numbers[i];
+            if (number <= 0) {
+                throw new IllegalArgumentException("Spot numbers must be positive: " + number);
+            }
+            int slot = slotOf(number);
+            while (table[2 * slot] != 0) {
+                if (table[2 * slot] == number) {
+                    throw new IllegalArgumentException("Spot number used twice: " + number);
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[2 * slot] = number;
+            table[2 * slot + 1] = i;
+        }
+    }
+
+    /**
+     * Numbering from 1 in index order, the default for every lot
+     *
+     * @return the sequential numbering
+     */
+    public static SpotNumbering sequential() {
+        return SEQUENTIAL;
+    }
+
+    /**
+     * Numbering with a given number for each spot
+     *
+     * @param numbers number of each spot by index, all positive and
+     * different
+     * @return the numbering
+     */
+    public static SpotNumbering of(int[] numbers) {
+        return new SpotNumbering(numbers.clone());
+    }
+
+    /**
+     * Numbering by floor: spot k of floor f gets f * floorBase + k, both
+     * counted from 1, so with a base of 1000 the first floor holds 1001,
+     * 1002, ... and the second 2001, 2002, ...
+     *
+     * @param capacity number of spots in the lot
+     * @param spotsPerFloor spots on each floor; the last may hold fewer
+     * @param floorBase step between floors, more than spotsPerFloor
+     * @return the numbering
+     */
+    public static SpotNumbering byFloor(int capacity, int spotsPerFloor, int floorBase) {
+        if (spotsPerFloor <= 0 || floorBase <= spotsPerFloor) {
+            throw new IllegalArgumentException("Floor base must be more than the spots per floor");
+        }
+        long floors = ((long) capacity + spotsPerFloor - 1) / spotsPerFloor;
+        if (floors * floorBase + spotsPerFloor > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many floors for int spot numbers");
+        }
+        int[] numbers = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            numbers[i] = (i / spotsPerFloor + 1) * floorBase + i % spotsPerFloor + 1;
+        }
+        return new SpotNumbering(numbers);
+    }
+
+    /**
+     * Get the number of the spot at an index
+     *
+     * @param index the spot index
+     * @return its spot number
+     */
+    public int numberOf(int index) {
+        return (numbers == null) ? index + 1 : numbers[index];
+    }
+
+    /**
+     * Find the index of a spot number
+     *
+     * @param spotNumber the spot number
+     * @param capacity number of spots in the lot
+     * @return the index, or -1 if no spot has that number
+     */
+    public int indexOf(int spotNumber, int capacity) {
+        if (numbers == null) {
+            return (spotNumber >= 1 && spotNumber <= capacity) ? spotNumber - 1 : -1;
+        }
+        if (spotNumber <= 0) {
+            return -1;
+        }
+        for (int slot = slotOf(spotNumber); table[2 * slot] != 0; slot = (slot + 1) & mask) {
+            if (table[2 * slot] == spotNumber) {
+                return table[2 * slot + 1];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether this numbering fits a lot
+     *
+     * @param capacity number of spots in the lot
+     * @return true if every spot of the lot has a number
+     */
+    public boolean fits(int capacity) {
+        return numbers == null || numbers.length == capacity;
+    }
+
+    /**
+     * Check whether spots are numbered from 1 in index order
+     *
+     * @return true for sequential numbering
+     */
+    public boolean isSequential() {
+        return numbers == null;
+    }
+
+    /**
+     * Estimate the memory held by the numbering
+     *
+     * @return size in bytes
+     */
+    public long getFootprintBytes() {
+        return (numbers == null) ? 0 : 4L * (numbers.length + table.length);
+    }
+
+    private int slotOf(int spotNumber) {
+        // Multiplicative hashing; the top bits are the best mixed
+        return (spotNumber * 0x9E3779B9) >>> shift;
+    }
+}
@@ -0,0 +1,114 @@
+package models;
+
+import enums.SpotSize;
+import enums.SpotStatus;
+
+/**
+ * Primitive storage for the spots of a COMPACT or MAPPED ParkingLot
+ * <p>
+ * Each spot is addressed by its index (spot number minus one) and has a
+ * fixed size and one 64-bit state word. The word packs the status, a
+ * vehicle handle into the store's vehicle table, and a version that
+ * changes on every update: {@code [handle:32][version:24][status:8]}.
+ * Status and vehicle therefore change together in one compare-and-set,
+ * and a reader that sees the same word before and after looking up the
+ * vehicle knows the handle was not reused in between.</p>
+ *
+ * @author Haryad
+ */
+abstract class SpotStore {
+
+    private static final SpotStatus[] STATUSES = SpotStatus.values();
+    private static final long VERSION_MASK = 0xFFFFFFL;
+
+    /**
+     * Build a state word
+     *
+     * @param status the status
+     * @param handle vehicle handle, 0 for no vehicle
+     * @param version version of the word
+     * @return the state word
+     */
+    static long pack(SpotStatus status, int handle, long version) {
+        return ((long) handle << 32) | ((version & VERSION_MASK) << 8) | status.ordinal();
+    }
+
+    static SpotStatus statusOf(long word) {
+        return STATUSES[(int) (word & 0xFF)];
+    }
+
+    static int handleOf(long word) {
+        return (int) (word >>> 32);
+    }
+
+    static long versionOf(long word) {
+        return (word >>> 8) & VERSION_MASK;
+    }
+
+    /**
+     * Get the number of spots
+     *
+     * @return spot count
+     */
+    abstract int capacity();
+
+    abstract SpotSize getSize(int index);
+
+    /**
+     * Read a spot's state word with volatile semantics
+     *
+     * @param index the spot index
+     * @return the state word
+     */
+    abstract long getState(int index);
+
+    /**
+     * Replace a spot's state word if it still holds the expected one
+     *
+     * @param index the spot index
+     * @param expected the word the spot must hold
+     * @param next the new word
+     * @return true if the word was replaced
+     */
+    abstract boolean compareAndSetState(int index, long expected, long next);
+
+    /**
+     * Look up a vehicle by handle
+     *
+     * @param handle a handle from a state word, not 0
+     * @return the vehicle, or whatever now holds the handle if it was freed
+     */
+    abstract Vehicle getVehicle(int handle);
+
+    /**
+     * Check whether the store has room for a vehicle's details
+     *
+     * @param vehicle the vehicle
+     * @return true if addVehicle() will accept it
+     */
+    boolean canHold(Vehicle vehicle) {
+        return true;
+    }
+
+    /**
+     * Store a vehicle before it is published in a state word
+     *
+     * @param vehicle the vehicle
+     * @return its handle, never 0
+     */
+    abstract int addVehicle(Vehicle vehicle);
+
+    /**
+     * Free a handle no state word refers to any more
+     *
+     * @param handle the handle
+     */
+    abstract void removeVehicle(int handle);
+
+    /**
+     * Estimate the memory held by the store
+     *
+     * @return size in bytes
+     */
+    abstract long getFootprintBytes();
+}
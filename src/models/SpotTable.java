@@ -0,0 +1,245 @@
+package models;
+
+import enums.SpotSize;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Spots of an OBJECTS lot, created on first use
+ * <p>
+ * The layout of the lot is one range of indexes per spot size, so a spot
+ * nobody has asked for costs nothing. A spot is created when it is first
+ * looked up, handed out or listed, and kept in pages of 1024 that are only
+ * allocated once one of their spots exists. Threads asking for the same new
+ * spot at once all get the same object.</p>
+ * <p>
+ * Each size also has a cursor over the spots it has never handed out.
+ * Those spots are known to be available without being queued anywhere, so
+ * the lot takes from the cursor first and from its free pools after.</p>
+ * <p>
+ * The table does not keep its lot: the lot builds the table in its
+ * constructor, so it passes itself to each call that may create a spot
+ * rather than handing out a reference to itself before it is built.</p>
+ *
+ * @author Haryad
+ */
+final class SpotTable {
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    // ParkingSpot with compressed references
+    private static final int BYTES_PER_SPOT = 40;
+
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(ParkingSpot[][].class);
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(ParkingSpot[].class);
+    private static final SpotSize[] SIZES = SpotSize.values();
+
+    private final int capacity;
+    private final int[] firstIndex;        // First index of each size by ordinal, then capacity
+    private final ParkingSpot[][] pages;
+    private final AtomicIntegerArray untouched;  // Next never handed out index, by size
+    private final AtomicInteger created;
+    private volatile ArrayList<ParkingSpot> all;
+
+    /**
+     * Constructor for SpotTable
+     *
+     * @param counts number of spots of each size, by ordinal, numbered in
+     * that order from 1
+     */
+    SpotTable(int[] counts) {
+        this.firstIndex = new int[counts.length + 1];
+        this.untouched = new AtomicIntegerArray(counts.length);
+        for (int s = 0; s < counts.length; s++) {
+            firstIndex[s + 1] = firstIndex[s] + counts[s];
+            untouched.set(s, firstIndex[s]);
+        }
+        this.capacity = firstIndex[counts.length];
+        this.pages = new ParkingSpot[(capacity + PAGE_SIZE - 1) >>> PAGE_SHIFT][];
+        this.created = new AtomicInteger();
+    }
+
+    SpotSize sizeOf(int index) {
+        int s = 0;
+        while (index >= firstIndex[s + 1]) {
+            s++;
+        }
+        return SIZES[s];
+    }
+
+    /**
+     * Get a spot only if it has been created
+     *
+     * @param index the spot index, its number minus one
+     * @return the spot, or null if nobody has used it yet
+     */
+    ParkingSpot find(int index) {
+        ParkingSpot[] page = (ParkingSpot[]) PAGES.getAcquire(pages, index >>> PAGE_SHIFT);
+        return (page == null) ? null : (ParkingSpot) SLOTS.getAcquire(page, index & (PAGE_SIZE - 1));
+    }
+
+    /**
+     * Get a spot, creating it on first use
+     *
+     * @param lot the owning lot
+     * @param index the spot index, its number minus one
+     * @return the spot
+     */
+    ParkingSpot get(ParkingLot lot, int index) {
+        ParkingSpot spot = find(index);
+        return (spot != null) ? spot : create(lot, index);
+    }
+
+    private ParkingSpot create(ParkingLot lot, int index) {
+        int pageIndex = index >>> PAGE_SHIFT;
+        ParkingSpot[] page = (ParkingSpot[]) PAGES.getAcquire(pages, pageIndex);
+        if (page == null) {
+            ParkingSpot[] fresh = new ParkingSpot[PAGE_SIZE];
+            page = (ParkingSpot[]) PAGES.compareAndExchangeRelease(pages, pageIndex, null, fresh);
+            if (page == null) {
+                page = fresh;
+            }
+        }
+        ParkingSpot spot = new ParkingSpot(lot, lot.spotNumberAt(index), sizeOf(index));
+        ParkingSpot winner = (ParkingSpot) SLOTS.compareAndExchangeRelease(
+                page, index & (PAGE_SIZE - 1), null, spot);
+        if (winner != null) {
+            return winner;
+        }
+        created.incrementAndGet();
+        return spot;
+    }
+
+    /**
+     * Hand out the next spot of a size that has never been handed out
+     *
+     * @param size the spot size
+     * @return its index, or -1 once every spot of the size has been
+     */
+    int takeUntouched(SpotSize size) {
+        int s = size.ordinal();
+        int end = firstIndex[s + 1];
+        while (true) {
+            int next = untouched.get(s);
+            if (next >= end) {
+                return -1;
+            }
+            if (untouched.compareAndSet(s, next, next + 1)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Hand out a run of spots of a size that have never been handed out,
+     * with one compare-and-set for the whole run
+     *
+     * @param lot the owning lot
+     * @param size the spot size
+     * @param max most spots to take
+     * @param into where the spots are added, in number order
+     * @return number of spots taken, 0 once every spot of the size has been
+     */
+    int takeUntouched(ParkingLot lot, SpotSize size, int max, List<ParkingSpot> into) {
+        int s = size.ordinal();
+        int end = firstIndex[s + 1];
+        while (true) {
+            int next = untouched.get(s);
+            int count = Math.min(max, end - next);
+            if (count <= 0) {
+                return 0;
+            }
+            if (untouched.compareAndSet(s, next, next + count)) {
+                for (int i = next; i < next + count; i++) {
+                    into.add(get(lot, i));
+                }
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Look at the first spot of a size not handed out yet that is still
+     * available, without taking it
+     *
+     * @param lot the owning lot
+     * @param size the spot size
+     * @return the spot, or null if there is none
+     */
+    ParkingSpot peekUntouched(ParkingLot lot, SpotSize size) {
+        int s = size.ordinal();
+        for (int i = untouched.get(s); i < firstIndex[s + 1]; i++) {
+            ParkingSpot spot = find(i);
+            // Spots looked up by number may have been reserved or closed since
+            if (spot == null || spot.isAvailable()) {
+                return get(lot, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Collect the spots created so far, in number order
+     *
+     * @return the created spots
+     */
+    ArrayList<ParkingSpot> getCreated() {
+        ArrayList<ParkingSpot> spots = new ArrayList<>();
+        for (int p = 0; p < pages.length; p++) {
+            ParkingSpot[] page = (ParkingSpot[]) PAGES.getAcquire(pages, p);
+            if (page == null) {
+                continue;
+            }
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                ParkingSpot spot = (ParkingSpot) SLOTS.getAcquire(page, i);
+                if (spot != null) {
+                    spots.add(spot);
+                }
+            }
+        }
+        return spots;
+    }
+
+    /**
+     * Get every spot, creating the ones nobody has used yet. The list is
+     * built once and the same list is returned from then on.
+     *
+     * @param lot the owning lot
+     * @return all spots in number order
+     */
+    ArrayList<ParkingSpot> getAll(ParkingLot lot) {
+        ArrayList<ParkingSpot> spots = all;
+        if (spots == null) {
+            synchronized (this) {
+                spots = all;
+                if (spots == null) {
+                    spots = new ArrayList<>(capacity);
+                    for (int i = 0; i < capacity; i++) {
+                        spots.add(get(lot, i));
+                    }
+                    all = spots;
+                }
+            }
+        }
+        return spots;
+    }
+
+    /**
+     * Estimate the memory held by the spots created so far and their pages
+     *
+     * @return size in bytes
+     */
+    long getFootprintBytes() {
+        long bytes = 4L * pages.length;
+        for (int p = 0; p < pages.length; p++) {
+            if (PAGES.getAcquire(pages, p) != null) {
+                bytes += 4L * PAGE_SIZE;
+            }
+        }
+        return bytes + (long) BYTES_PER_SPOT * created.get();
+    }
+}
@@ -0,0 +1,135 @@
+package models;
+
+/**
+ * Billing rules for the length of a stay: a grace period, the increment
+ * time is billed in and a cap on each day
+ * <p>
+ * The rules are compiled once, when the tariff is built, into a table of
+ * the minutes billed for every length of stay up to a day. A stay is
+ * billed as its whole days plus the table entry for the rest, so the fee
+ * for any stay is one lookup and a multiplication by the vehicle's hourly
+ * rate, whatever the rules are. Minutes are billed at a sixtieth of the
+ * hourly rate, so one table serves every vehicle.</p>
+ *
+ * @author Haryad
+ */
+public final class Tariff {
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    // Billed minutes are multiplied by an hourly rate and a factor in thousandths
+    private static final long RATE_DIVISOR = 60L * PricingPolicy.BASE_PERMILLE;
+
+    /** Whole hours, each started hour billed in full, with no grace or cap */
+    public static final Tariff HOURLY = new Tariff(0, 60, MINUTES_PER_DAY);
+
+    private final int graceMinutes;
+    private final int incrementMinutes;
+    private final int dailyCapMinutes;
+    private final int[] billedMinutes;   // Minutes billed for a stay of 0 to 1440 minutes
+
+    /**
+     * Constructor for Tariff
+     *
+     * @param graceMinutes stays this long or shorter are free
+     * @param incrementMinutes time is billed in steps of this many minutes,
+     * each started step in full; must divide a day, so the steps of a
+     * long stay line up with its days
+     * @param dailyCapMinutes most minutes billed for any one day of a stay,
+     * i.e. the daily cap in hours of the vehicle's rate times 60
+     */
+    public Tariff(int graceMinutes, int incrementMinutes, int dailyCapMinutes) {
+        if (graceMinutes < 0 || incrementMinutes <= 0 || MINUTES_PER_DAY % incrementMinutes != 0
+                || dailyCapMinutes <= 0) {
+            throw new IllegalArgumentException("Invalid tariff: grace " + graceMinutes
+                    + ", increment " + incrementMinutes + ", cap " + dailyCapMinutes);
+        }
+        this.graceMinutes = graceMinutes;
+        this.incrementMinutes = incrementMinutes;
+        this.dailyCapMinutes = dailyCapMinutes;
+        this.billedMinutes = new int[MINUTES_PER_DAY + 1];
+        for (int minute = 1; minute <= MINUTES_PER_DAY; minute++) {
+            int billed = Math.ceilDiv(minute, incrementMinutes) * incrementMinutes;
+            billedMinutes[minute] = Math.min(billed, dailyCapMinutes);
+        }
+    }
+
+    /**
+     * Typical city tariff: the first 15 minutes free, then billed by the
+     * minute, at most 8 hours' worth a day
+     *
+     * @return the tariff
+     */
+    public static Tariff standard() {
+        return new Tariff(15, 1, 8 * 60);
+    }
+
+    /**
+     * Work out the minutes billed for a stay
+     *
+     * @param durationMillis length of the stay in milliseconds
+     * @return minutes billed
+     */
+    public long calculateBilledMinutes(long durationMillis) {
+        long minutes = Math.ceilDiv(Math.max(0, durationMillis), MILLIS_PER_MINUTE);
+        if (minutes <= graceMinutes) {
+            return 0;
+        }
+        return (minutes / MINUTES_PER_DAY) * billedMinutes[MINUTES_PER_DAY]
+                + billedMinutes[(int) (minutes % MINUTES_PER_DAY)];
+    }
+
+    /**
+     * Work out the fee for a stay
+     *
+     * @param rateCents the vehicle's hourly rate in cents
+     * @param ratePermille factor from the lot's rate table, in thousandths
+     * @param durationMillis length of the stay in milliseconds
+     * @return fee in cents
+     */
+    public long calculateFeeCents(long rateCents, int ratePermille, long durationMillis) {
+        long scaled = Math.multiplyExact(rateCents * ratePermille, calculateBilledMinutes(durationMillis));
+        return (scaled + RATE_DIVISOR / 2) / RATE_DIVISOR;
+    }
+
+    /**
+     * Work out the fees of many stays still running, in one pass over flat
+     * arrays, billed as calculateFeeCents() bills each one
+     *
+     * @param entryTimes entry time of each stay in milliseconds
+     * @param rates hourly rate of each stay in cents times its rate factor
+     * in thousandths
+     * @param from index of the first stay
+     * @param to index after the last stay
+     * @param now time the stays are billed up to
+     * @param fees where the fee of each stay in cents is written
+     */
+    public void calculateFeesCents(long[] entryTimes, long[] rates, int from, int to, long now, long[] fees) {
+        int[] billed = billedMinutes;
+        long billedPerDay = billed[MINUTES_PER_DAY];
+        int grace = graceMinutes;
+        for (int i = from; i < to; i++) {
+            long minutes = Math.ceilDiv(Math.max(0, now - entryTimes[i]), MILLIS_PER_MINUTE);
+            long charged = (minutes / MINUTES_PER_DAY) * billedPerDay + billed[(int) (minutes % MINUTES_PER_DAY)];
+            fees[i] = (minutes > grace) ? (rates[i] * charged + RATE_DIVISOR / 2) / RATE_DIVISOR : 0;
+        }
+    }
+
+    public int getGraceMinutes() {
+        return graceMinutes;
+    }
+
+    public int getIncrementMinutes() {
+        return incrementMinutes;
+    }
+
+    public int getDailyCapMinutes() {
+        return dailyCapMinutes;
+    }
+
+    @Override
+    public String toString() {
+        return "Tariff[grace=" + graceMinutes + "m, increment=" + incrementMinutes
+                + "m, dailyCap=" + dailyCapMinutes + "m]";
+    }
+}
@@ -1,5 +1,12 @@
 package models;
 
+import enums.SpotSize;
+import interfaces.TicketListener;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Represents a parking ticket issued to a vehicle
  * Tracks entry time, exit time, and parking fee
@@ -12,11 +19,20 @@ public class Ticket {
     private final Vehicle vehicle;
     private final ParkingSpot parkingSpot;
     private final long entryTime;  // Milliseconds since epoch
-    private long exitTime;         // 0 means still active
-    private double parkingFee;
-    private boolean isPaid;
+    // 0 means still active; written after the fee, so whoever sees the
+    // exit time also sees the fee charged
+    private volatile long exitTime;
+    private long parkingFeeCents;
+    private volatile boolean isPaid;
+    // Set while a queued payment is being settled, and kept once it is
+    private final AtomicBoolean paymentClaimed = new AtomicBoolean();
+    private TicketListener listener;  // Notified on payment, may be null
+    // Not a monitor: the listener may block on the write-ahead log while
+    // this is held, and a virtual thread blocking inside synchronized pins
+    // its carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
     
-    private static int ticketCounter = 0;
+    private static final AtomicInteger ticketCounter = new AtomicInteger();
     
     /**
      * Constructor for Ticket
@@ -29,17 +45,54 @@ public class Ticket {
         this.parkingSpot = parkingSpot;
         this.entryTime = System.currentTimeMillis();
         this.exitTime = 0;
-        this.parkingFee = 0.0;
+        this.parkingFeeCents = 0;
         this.isPaid = false;
-        ticketCounter++;
     }
     
     /**
-     * Generate a unique ticket ID
+     * Constructor for a ticket rebuilt from a log or snapshot
+     * Keeps the original ID and entry time, and moves the ID counter past
+     * the restored ID so new tickets do not reuse it
+     * @param ticketId the original ticket ID
+     * @param vehicle the parked vehicle
+     * @param parkingSpot the spot where vehicle is parked
+     * @param entryTime the original entry time in milliseconds
+     */
+    public Ticket(String ticketId, Vehicle vehicle, ParkingSpot parkingSpot, long entryTime) {
+        this.ticketId = ticketId;
+        this.vehicle = vehicle;
+        this.parkingSpot = parkingSpot;
+        this.entryTime = entryTime;
+        this.exitTime = 0;
+        this.parkingFeeCents = 0;
+        this.isPaid = false;
+        
+        int number = ticketNumber(ticketId);
+        ticketCounter.accumulateAndGet(number, Math::max);
+    }
+    
+    /**
+     * Get the sequence number inside a generated ticket ID
+     * @param ticketId ID of the form TKT-000123
+     * @return the number, or 0 if the ID has another form
+     */
+    private static int ticketNumber(String ticketId) {
+        if (ticketId != null && ticketId.startsWith("TKT-")) {
+            try {
+                return Integer.parseInt(ticketId.substring(4));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * Generate a unique ticket ID, also when gates issue tickets concurrently
      * @return unique ticket ID string
      */
     private String generateTicketId() {
-        return "TKT-" + String.format("%06d", ticketCounter + 1);
+        return "TKT-" + String.format("%06d", ticketCounter.incrementAndGet());
     }
     
     /**
@@ -62,14 +115,85 @@ public class Ticket {
         return (int) hours;
     }
     
+    /**
+     * Get the parking fee: the fee charged when the ticket was completed,
+     * or while it is active, what it would be if it closed now. A quote
+     * changes nothing on the ticket.
+     * @return calculated fee in cents
+     */
+    public long calculateFeeCents() {
+        if (exitTime != 0) {
+            return parkingFeeCents;
+        }
+        return calculateFeeCents(System.currentTimeMillis());
+    }
+    
+    /**
+     * Work out the fee for a stay ending at a time, under the lot's tariff
+     * and the rate of its rate table at that time
+     * @param endTime end of the stay in milliseconds
+     * @return fee in cents
+     */
+    private long calculateFeeCents(long endTime) {
+        ParkingLot lot = parkingSpot.lot;
+        if (lot == null) {
+            return vehicle.calculateParkingFeeCents(Tariff.HOURLY,
+                    PricingPolicy.BASE_PERMILLE, endTime - entryTime);
+        }
+        int ratePermille = lot.getRateTable().getRatePermille(parkingSpot.getSize(), endTime);
+        return vehicle.calculateParkingFeeCents(lot.getTariff(), ratePermille, endTime - entryTime);
+    }
+    
+    /**
+     * Work out what each of a list of active tickets owes at a time,
+     * without changing the tickets
+     * The tickets are copied into flat arrays of entry times and rates,
+     * looking up the rate table once per lot, then each run of tickets in
+     * the same lot is billed in one pass by its tariff.
+     * @param tickets the active tickets
+     * @param now time the tickets are billed up to
+     * @return amount due in cents for each ticket, in the same order
+     */
+    public static long[] calculateAmountsDue(List<Ticket> tickets, long now) {
+        int count = tickets.size();
+        long[] entryTimes = new long[count];
+        long[] rates = new long[count];
+        ParkingLot[] lots = new ParkingLot[count];
+        int[] ratePermille = new int[SpotSize.values().length];
+        ParkingLot lastLot = null;
+        for (int i = 0; i < count; i++) {
+            Ticket ticket = tickets.get(i);
+            ParkingLot lot = ticket.parkingSpot.lot;
+            if (i == 0 || lot != lastLot) {
+                RateTable table = (lot != null) ? lot.getRateTable() : RateTable.FLAT;
+                for (SpotSize size : SpotSize.values()) {
+                    ratePermille[size.ordinal()] = table.getRatePermille(size, now);
+                }
+                lastLot = lot;
+            }
+            lots[i] = lot;
+            entryTimes[i] = ticket.entryTime;
+            rates[i] = ticket.vehicle.getParkingRateCents() * ratePermille[ticket.parkingSpot.getSize().ordinal()];
+        }
+
+        long[] amounts = new long[count];
+        for (int from = 0, to; from < count; from = to) {
+            to = from + 1;
+            while (to < count && lots[to] == lots[from]) {
+                to++;
+            }
+            Tariff tariff = (lots[from] != null) ? lots[from].getTariff() : Tariff.HOURLY;
+            tariff.calculateFeesCents(entryTimes, rates, from, to, now, amounts);
+        }
+        return amounts;
+    }
+    
     /**
      * Calculate the parking fee based on hours parked
-     * @return calculated fee
+     * @return calculated fee in dollars
      */
     public double calculateFee() {
-        int hours = calculateHoursParked();
-        this.parkingFee = vehicle.calculateParkingFee(hours);
-        return parkingFee;
+        return Money.toDollars(calculateFeeCents());
     }
     
     /**
@@ -77,23 +201,96 @@ public class Ticket {
      * @return true if successfully marked as paid
      */
     public boolean markAsPaid() {
-        if (!isPaid) {
-            this.isPaid = true;
-            return true;
+        lock.lock();
+        try {
+            if (!isPaid) {
+                this.isPaid = true;
+                if (listener != null) {
+                    listener.ticketPaid(this);
+                }
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
         }
-        return false;
     }
     
     /**
-     * Complete the ticket by setting exit time
+     * Claim the ticket for a payment about to be queued, so a second
+     * payment of it is refused before it reaches the card processor
+     * @return true if no other payment of the ticket was claimed
+     */
+    public boolean claimPayment() {
+        return paymentClaimed.compareAndSet(false, true);
+    }
+    
+    /**
+     * Give up the claim of a payment that was declined or failed, so the
+     * ticket can be paid again
+     */
+    public void releasePayment() {
+        paymentClaimed.set(false);
+    }
+    
+    /**
+     * Set the listener told about payments, usually the TicketGenerator
+     * that issued this ticket
+     * @param listener the listener, or null for none
+     */
+    public void setListener(TicketListener listener) {
+        lock.lock();
+        try {
+            this.listener = listener;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Complete the ticket by setting exit time and the fee charged
      */
     public void completeTicket() {
-        if (exitTime == 0) {
-            this.exitTime = System.currentTimeMillis();
-            calculateFee();
+        lock.lock();
+        try {
+            if (exitTime == 0) {
+                long now = System.currentTimeMillis();
+                this.parkingFeeCents = calculateFeeCents(now);
+                this.exitTime = now;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Complete the ticket with a recorded exit time and fee, as it was
+     * completed before a restart
+     * @param exitTime the original exit time in milliseconds
+     * @param feeCents the fee charged at that time, in cents
+     */
+    public void restoreCompletion(long exitTime, long feeCents) {
+        lock.lock();
+        try {
+            if (this.exitTime == 0) {
+                this.parkingFeeCents = feeCents;
+                this.exitTime = exitTime;
+            }
+        } finally {
+            lock.unlock();
         }
     }
     
+    /**
+     * Get the lock that guards completion and payment of this ticket
+     * Hold it to make several steps on the ticket look like one to a
+     * payment arriving at the same time
+     * @return the ticket lock
+     */
+    public ReentrantLock getLock() {
+        return lock;
+    }
+    
     /**
      * Check if ticket is active (not completed)
      * @return true if ticket is still active
@@ -134,8 +331,12 @@ public class Ticket {
         return exitTime;
     }
     
+    public long getParkingFeeCents() {
+        return parkingFeeCents;
+    }
+    
     public double getParkingFee() {
-        return parkingFee;
+        return Money.toDollars(parkingFeeCents);
     }
     
     public boolean isPaid() {
@@ -143,7 +344,7 @@ public class Ticket {
     }
     
     public static int getTicketCounter() {
-        return ticketCounter;
+        return ticketCounter.get();
     }
     
     /**
@@ -162,12 +363,12 @@ public class Ticket {
         if (exitTime != 0) {
             System.out.println("Exit Time: " + formatTime(exitTime));
             System.out.println("Hours Parked: " + calculateHoursParked());
-            System.out.println("Parking Fee: $" + String.format("%.2f", parkingFee));
+            System.out.println("Parking Fee: $" + Money.format(parkingFeeCents));
             System.out.println("Payment Status: " + (isPaid ? "PAID" : "UNPAID"));
         } else {
             System.out.println("Status: ACTIVE");
             System.out.println("Current Hours: " + calculateHoursParked());
-            System.out.println("Current Fee: $" + String.format("%.2f", calculateFee()));
+            System.out.println("Current Fee: $" + Money.format(calculateFeeCents()));
         }
         
         System.out.println("====================================\n");
@@ -178,6 +379,6 @@ public class Ticket {
         return "Ticket [" + ticketId + ", " + vehicle.getLicensePlate() + 
                ", Spot #" + parkingSpot.getSpotNumber() + 
                ", " + (isActive() ? "ACTIVE" : "COMPLETED") + 
-               ", Fee: $" + String.format("%.2f", parkingFee) + "]";
+               ", Fee: $" + Money.format(parkingFeeCents) + "]";
     }
 }
\ No newline at end of file
@@ -9,9 +9,9 @@ import enums.VehicleType;
  */
 public class Truck extends Vehicle{
     private double weightInTon;
-    private static final double BASE_RATE = 3.0;
+    private static final long BASE_RATE_CENTS = 300;
     private static final double WEIGHT_THRESHOLD = 2.0;
-    private static final double WEIGHT_SURCHARGE = 5.0;
+    private static final long WEIGHT_SURCHARGE_CENTS = 500;  // per ton over the threshold
     
     public Truck(String licensePlate,String color,String brand,String model,int year, double weightInTon){
         super(licensePlate, VehicleType.TRUCK, color, brand, model,year);
@@ -24,22 +24,14 @@ public class Truck extends Vehicle{
         this.weightInTon = weightInTon;
     }
      @Override
-    public double getParkingRate() {
-        double rate = BASE_RATE;
+    public long getParkingRateCents() {
+        long rate = BASE_RATE_CENTS;
         if (weightInTon > WEIGHT_THRESHOLD) {
-            rate += (weightInTon - WEIGHT_THRESHOLD) * WEIGHT_SURCHARGE;
+            rate += Math.round((weightInTon - WEIGHT_THRESHOLD) * WEIGHT_SURCHARGE_CENTS);
         }
         return rate;
     }
     
-    @Override
-    public double calculateParkingFee(int hours){
-        if (hours < 0) {
-            throw new IllegalArgumentException("Hours cannot be negative");
-        }
-        return hours * getParkingRate();
-    }
-    
     public double getWeightInTon(){
         return weightInTon;
     }
@@ -1,5 +1,6 @@
 package models;
 import enums.VehicleType;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -44,18 +45,56 @@ public abstract class Vehicle{
     }
 
     /**
-      * @return the hourly parking rate for this vehicle type
+      * @return the hourly parking rate for this vehicle type, in cents
      */
     
-    public abstract double getParkingRate();
+    public abstract long getParkingRateCents();
     
     /**
-     * Abstract method for calculating parking fee
+     * Calculate parking fee in cents for whole hours at this vehicle's
+     * base rate, billed by the hourly tariff like a stay of that length
+     * @param hours number of hours parked
+     * @return total parking fee in cents
+     * @throws IllegalArgumentException if hours is negative
+     */
+    
+    public long calculateParkingFeeCents(int hours) {
+        if (hours < 0) {
+            throw new IllegalArgumentException("Hours cannot be negative");
+        }
+        return calculateParkingFeeCents(Tariff.HOURLY, PricingPolicy.BASE_PERMILLE,
+                TimeUnit.HOURS.toMillis(hours));
+    }
+    
+    /**
+     * Calculate parking fee in cents under a lot's tariff
+     * @param tariff the lot's billing rules
+     * @param ratePermille rate as thousandths of this vehicle's own rate
+     * @param durationMillis length of the stay in milliseconds
+     * @return total parking fee in cents
+     */
+    
+    public long calculateParkingFeeCents(Tariff tariff, int ratePermille, long durationMillis) {
+        return tariff.calculateFeeCents(getParkingRateCents(), ratePermille, durationMillis);
+    }
+    
+    /**
+      * @return the hourly parking rate for this vehicle type, in dollars
+     */
+    
+    public double getParkingRate() {
+        return Money.toDollars(getParkingRateCents());
+    }
+    
+    /**
+     * Calculate parking fee in dollars
      * @param hours number of hours parked
      * @return total parking fee
      */
     
-    public abstract double calculateParkingFee(int hours);
+    public double calculateParkingFee(int hours) {
+        return Money.toDollars(calculateParkingFeeCents(hours));
+    }
     
      /**
      * Get the license plate
@@ -0,0 +1,85 @@
+package models;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Table of parked vehicles addressed by integer handle, for compact spot
+ * storage
+ * <p>
+ * Handles are reused once freed. Adding and freeing take a short lock;
+ * lookups take none. A vehicle is added before the state word holding its
+ * handle is published, and that volatile write makes the entry visible to
+ * readers of the word.</p>
+ *
+ * @author Haryad
+ */
+final class VehicleTable {
+
+    private final ReentrantLock lock;
+    private volatile Vehicle[] vehicles;  // Slot 0 is never used
+    private int[] freeHandles;
+    private int freeCount;
+    private int nextHandle;
+
+    /**
+     * Constructor for VehicleTable
+     *
+     * @param initialCapacity handles to allocate up front
+     */
+    VehicleTable(int initialCapacity) {
+        this.lock = new ReentrantLock();
+        this.vehicles = new Vehicle[Math.max(16, initialCapacity + 1)];
+        this.freeHandles = new int[16];
+        this.nextHandle = 1;
+    }
+
+    Vehicle get(int handle) {
+        Vehicle[] current = vehicles;
+        return (handle < current.length) ? current[handle] : null;
+    }
+
+    int add(Vehicle vehicle) {
+        lock.lock();
+        try {
+            int handle;
+            if (freeCount > 0) {
+                handle = freeHandles[--freeCount];
+            } else {
+                handle = nextHandle++;
+                if (handle >= vehicles.length) {
+                    Vehicle[] grown = new Vehicle[vehicles.length * 2];
+                    System.arraycopy(vehicles, 0, grown, 0, vehicles.length);
+                    vehicles = grown;
+                }
+            }
+            vehicles[handle] = vehicle;
+            return handle;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remove(int handle) {
+        lock.lock();
+        try {
+            vehicles[handle] = null;
+            if (freeCount == freeHandles.length) {
+                int[] grown = new int[freeHandles.length * 2];
+                System.arraycopy(freeHandles, 0, grown, 0, freeCount);
+                freeHandles = grown;
+            }
+            freeHandles[freeCount++] = handle;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimate the memory held by the table, not counting the vehicles
+     *
+     * @return size in bytes
+     */
+    long getFootprintBytes() {
+        return 4L * vehicles.length + 4L * freeHandles.length;
+    }
+}
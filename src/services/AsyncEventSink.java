@@ -0,0 +1,178 @@
+package services;
+
+import interfaces.EventSink;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import models.Event;
+
+/**
+ * Event sink that hands events to a background writer through a bounded
+ * lock-free ring buffer
+ * <p>
+ * Gate threads only claim a slot with a compare-and-set and store the
+ * event; formatting and printing happen on the writer thread, so the
+ * console lock never holds up a gate. When the buffer is full the event
+ * is dropped and counted rather than making the gate wait. Each slot
+ * carries a sequence number that says whether it is free for the lap a
+ * producer is on or filled for the lap the writer is on. Sinks are made
+ * with {@link #start}, which starts the writer once the sink is built.</p>
+ * @author Haryad
+ */
+public class AsyncEventSink implements EventSink, AutoCloseable {
+
+    private static final long IDLE_PARK_NANOS = 10_000_000;
+
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private final LongAdder dropped;
+    private final PrintStream out;
+    // Set once by start(), before any producer can see the sink
+    private Thread writer;
+
+    // Read by producers to decide whether the writer needs waking up
+    private volatile boolean writerIdle;
+    private volatile boolean closed;
+    private long head;
+
+    private AsyncEventSink(PrintStream out, int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.out = out;
+    }
+
+    /**
+     * Create a sink and start its writer thread
+     * @param out where the writer prints events, one structured line each
+     * @param capacity buffer size, rounded up to a power of two
+     * @return the running sink
+     */
+    public static AsyncEventSink start(PrintStream out, int capacity) {
+        AsyncEventSink sink = new AsyncEventSink(out, capacity);
+        Thread writer = new Thread(sink::drainLoop, "event-writer");
+        writer.setDaemon(true);
+        sink.writer = writer;
+        writer.start();
+        return sink;
+    }
+
+    /**
+     * Queue an event for the writer, or drop it if the buffer is full
+     * @param event the event
+     */
+    @Override
+    public void publish(Event event) {
+        if (!offer(event)) {
+            dropped.increment();
+            return;
+        }
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private boolean offer(Event event) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = event;
+                    // Publishes the slot write to the writer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Take the next event, writer thread only
+     * @return the event, or null if none is ready
+     */
+    private Event poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        Event event = slots[index];
+        slots[index] = null;
+        sequences.set(index, head + slots.length);
+        head++;
+        return event;
+    }
+
+    private void drainLoop() {
+        while (true) {
+            boolean wrote = false;
+            Event event;
+            while ((event = poll()) != null) {
+                out.println(event);
+                wrote = true;
+            }
+            if (wrote) {
+                out.flush();
+            }
+            if (closed) {
+                // One last pass for anything published before close()
+                while ((event = poll()) != null) {
+                    out.println(event);
+                }
+                out.flush();
+                return;
+            }
+
+            writerIdle = true;
+            if (!hasPending()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            writerIdle = false;
+        }
+    }
+
+    private boolean hasPending() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+
+    /**
+     * Get the number of events dropped because the buffer was full
+     * @return dropped event count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stop the writer after it has printed everything already queued
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package services;
+
+import enums.EventType;
+import enums.SpotStorage;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import models.EventLog;
+import models.ParkingLot;
+import models.SpotNumbering;
+
+/**
+ * Takes periodic snapshots and truncates the write-ahead log behind them
+ * <p>
+ * Snapshots are built from the log, not from the live lot: the previous
+ * snapshot is loaded into a private copy of the lot, the log written since
+ * is replayed on top, and the result is saved. The gates never pause, and
+ * the snapshot matches its sequence number exactly because it is made of
+ * nothing but logged events. Log segments the new snapshot fully covers are
+ * then deleted.</p>
+ * @author Haryad
+ */
+public class Checkpointer implements AutoCloseable {
+    
+    private final WriteAheadLog log;
+    private final SnapshotStore snapshots;
+    private final String lotName;
+    private final String lotAddress;
+    private final int lotCapacity;
+    private final SpotStorage lotStorage;
+    private final SpotNumbering lotNumbering;
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * Constructor for Checkpointer
+     * @param log the write-ahead log to snapshot and truncate
+     * @param snapshots where snapshots are written
+     * @param parkingLot the live lot, used only for its layout
+     */
+    public Checkpointer(WriteAheadLog log, SnapshotStore snapshots, ParkingLot parkingLot) {
+        this.log = log;
+        this.snapshots = snapshots;
+        this.lotName = parkingLot.getName();
+        this.lotAddress = parkingLot.getAddress();
+        this.lotCapacity = parkingLot.getTotalCapacity();
+        // The shadow lot must not open the live lot's state file
+        this.lotStorage = (parkingLot.getStorage() == SpotStorage.MAPPED)
+                ? SpotStorage.COMPACT : parkingLot.getStorage();
+        this.lotNumbering = parkingLot.getNumbering();
+    }
+    
+    /**
+     * Take a snapshot of everything durable in the log, then delete the log
+     * segments it covers
+     * @return sequence number of the newest snapshot
+     * @throws IOException if reading the log or writing the snapshot fails
+     */
+    public synchronized long checkpoint() throws IOException {
+        long previousLsn = snapshots.getLatestLsn();
+        long upToLsn = log.getDurableLsn();
+        if (upToLsn <= previousLsn) {
+            return previousLsn;
+        }
+        
+        ParkingLot shadowLot = ParkingLot.shadow(lotName, lotAddress, lotCapacity, lotStorage, lotNumbering);
+        TicketGenerator shadowTickets = new TicketGenerator();
+        snapshots.loadLatest(shadowLot, shadowTickets);
+        LogRecovery.replay(log, previousLsn + 1, upToLsn, shadowLot, shadowTickets);
+        
+        snapshots.write(upToLsn, shadowLot, shadowTickets);
+        log.deleteSegmentsThrough(upToLsn);
+        return upToLsn;
+    }
+    
+    /**
+     * Take snapshots in the background at a fixed interval
+     * @param interval time between snapshots
+     * @param unit unit of the interval
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException e) {
+                EventLog.logFailure(EventType.SNAPSHOT_FAILED, e);
+            }
+        }, interval, interval, unit);
+    }
+    
+    /**
+     * Stop background snapshots
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+}
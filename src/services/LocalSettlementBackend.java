@@ -0,0 +1,61 @@
+package services;
+
+import interfaces.SettlementBackend;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import models.Payment;
+
+/**
+ * Settlement backend that runs in process, for the demo and for tests
+ * Accepts every positive amount. A fixed delay per call stands in for the
+ * round trip to a remote processor, and a limited number of connections
+ * for the sessions such a processor allows at once.
+ * @author Haryad
+ */
+public class LocalSettlementBackend implements SettlementBackend {
+    
+    private final long roundTripMillis;
+    private final Semaphore connections;
+    
+    /**
+     * Constructor for a backend that answers immediately
+     */
+    public LocalSettlementBackend() {
+        this(0, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Constructor for LocalSettlementBackend
+     * @param roundTripMillis simulated time per call
+     * @param connections calls that can be in progress at once
+     */
+    public LocalSettlementBackend(long roundTripMillis, int connections) {
+        this.roundTripMillis = roundTripMillis;
+        this.connections = new Semaphore(connections);
+    }
+    
+    @Override
+    public boolean[] settle(List<Payment> batch) throws IOException {
+        if (roundTripMillis > 0) {
+            try {
+                connections.acquire();
+                try {
+                    Thread.sleep(roundTripMillis);
+                } finally {
+                    connections.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Settlement interrupted");
+            }
+        }
+        
+        boolean[] accepted = new boolean[batch.size()];
+        for (int i = 0; i < accepted.length; i++) {
+            accepted[i] = batch.get(i).getAmountCents() > 0;
+        }
+        return accepted;
+    }
+}
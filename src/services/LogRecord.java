@@ -0,0 +1,192 @@
+package services;
+
+import enums.LogEventType;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import models.Ticket;
+import models.Vehicle;
+
+/**
+ * One event in the write-ahead log
+ * Only the fields used by the event type are set; the others are null or 0
+ * @author Haryad
+ */
+public final class LogRecord {
+    
+    private final LogEventType type;
+    private final long lsn;             // Log sequence number, 0 until appended
+    private final Vehicle vehicle;      // PARK, TICKET_ISSUED
+    private final String licensePlate;  // PARK, UNPARK, TICKET_ISSUED
+    private final int spotNumber;       // PARK, TICKET_ISSUED
+    private final String ticketId;      // All ticket events
+    private final long time;            // Entry time or exit time
+    private final long feeCents;        // TICKET_COMPLETED
+    
+    private LogRecord(LogEventType type, long lsn, Vehicle vehicle, String licensePlate,
+                      int spotNumber, String ticketId, long time, long feeCents) {
+        this.type = type;
+        this.lsn = lsn;
+        this.vehicle = vehicle;
+        this.licensePlate = licensePlate;
+        this.spotNumber = spotNumber;
+        this.ticketId = ticketId;
+        this.time = time;
+        this.feeCents = feeCents;
+    }
+    
+    /**
+     * Record for a vehicle taking a spot
+     * @param vehicle the parked vehicle
+     * @param spotNumber the spot it took
+     * @return the record
+     */
+    public static LogRecord park(Vehicle vehicle, int spotNumber) {
+        return new LogRecord(LogEventType.PARK, 0, vehicle, vehicle.getLicensePlate(),
+                spotNumber, null, 0, 0);
+    }
+    
+    /**
+     * Record for a vehicle leaving its spot
+     * @param licensePlate plate of the vehicle
+     * @return the record
+     */
+    public static LogRecord unpark(String licensePlate) {
+        return new LogRecord(LogEventType.UNPARK, 0, null, licensePlate, 0, null, 0, 0);
+    }
+    
+    /**
+     * Record for a new ticket
+     * @param ticket the issued ticket
+     * @return the record
+     */
+    public static LogRecord ticketIssued(Ticket ticket) {
+        Vehicle vehicle = ticket.getVehicle();
+        return new LogRecord(LogEventType.TICKET_ISSUED, 0, vehicle, vehicle.getLicensePlate(),
+                ticket.getParkingSpot().getSpotNumber(), ticket.getTicketId(),
+                ticket.getEntryTime(), 0);
+    }
+    
+    /**
+     * Record for a ticket closed at exit
+     * @param ticket the completed ticket
+     * @return the record
+     */
+    public static LogRecord ticketCompleted(Ticket ticket) {
+        return new LogRecord(LogEventType.TICKET_COMPLETED, 0, null, null, 0,
+                ticket.getTicketId(), ticket.getExitTime(), ticket.getParkingFeeCents());
+    }
+    
+    /**
+     * Record for a ticket being paid
+     * @param ticket the paid ticket
+     * @return the record
+     */
+    public static LogRecord ticketPaid(Ticket ticket) {
+        return new LogRecord(LogEventType.TICKET_PAID, 0, null, null, 0,
+                ticket.getTicketId(), 0, 0);
+    }
+    
+    /**
+     * Write the fields of this record's type
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    void writePayload(DataOutput out) throws IOException {
+        switch (type) {
+            case PARK -> {
+                VehicleCodec.write(out, vehicle);
+                out.writeInt(spotNumber);
+            }
+            case UNPARK ->
+                out.writeUTF(licensePlate);
+            case TICKET_ISSUED -> {
+                out.writeUTF(ticketId);
+                VehicleCodec.write(out, vehicle);
+                out.writeInt(spotNumber);
+                out.writeLong(time);
+            }
+            case TICKET_COMPLETED -> {
+                out.writeUTF(ticketId);
+                out.writeLong(time);
+                out.writeLong(feeCents);
+            }
+            case TICKET_PAID ->
+                out.writeUTF(ticketId);
+        }
+    }
+    
+    /**
+     * Read the fields written by {@link #writePayload}
+     * @param type event type from the record header
+     * @param lsn sequence number from the record header
+     * @param in source
+     * @return the record
+     * @throws IOException if reading fails
+     */
+    static LogRecord readPayload(LogEventType type, long lsn, DataInput in) throws IOException {
+        return switch (type) {
+            case PARK -> {
+                Vehicle vehicle = VehicleCodec.read(in);
+                yield new LogRecord(type, lsn, vehicle, vehicle.getLicensePlate(),
+                        in.readInt(), null, 0, 0);
+            }
+            case UNPARK ->
+                new LogRecord(type, lsn, null, in.readUTF(), 0, null, 0, 0);
+            case TICKET_ISSUED -> {
+                String id = in.readUTF();
+                Vehicle vehicle = VehicleCodec.read(in);
+                int spot = in.readInt();
+                yield new LogRecord(type, lsn, vehicle, vehicle.getLicensePlate(),
+                        spot, id, in.readLong(), 0);
+            }
+            case TICKET_COMPLETED -> {
+                String id = in.readUTF();
+                long exitTime = in.readLong();
+                yield new LogRecord(type, lsn, null, null, 0, id, exitTime, in.readLong());
+            }
+            case TICKET_PAID ->
+                new LogRecord(type, lsn, null, null, 0, in.readUTF(), 0, 0);
+        };
+    }
+    
+    // Getters
+    public LogEventType getType() {
+        return type;
+    }
+    
+    public long getLsn() {
+        return lsn;
+    }
+    
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+    
+    public String getLicensePlate() {
+        return licensePlate;
+    }
+    
+    public int getSpotNumber() {
+        return spotNumber;
+    }
+    
+    public String getTicketId() {
+        return ticketId;
+    }
+    
+    public long getTime() {
+        return time;
+    }
+    
+    public long getFeeCents() {
+        return feeCents;
+    }
+    
+    @Override
+    public String toString() {
+        return "LogRecord [" + lsn + ", " + type
+                + (licensePlate != null ? ", " + licensePlate : "")
+                + (ticketId != null ? ", " + ticketId : "") + "]";
+    }
+}
@@ -0,0 +1,162 @@
+package services;
+
+import enums.EventType;
+import java.io.IOException;
+import models.EventLog;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Vehicle;
+
+/**
+ * Rebuilds lot and ticket state from the write-ahead log on startup
+ * Every event is applied as "make it so", so replaying an event whose
+ * effect is already present changes nothing
+ * Once snapshots are taken, older log segments are deleted, so start from
+ * the latest snapshot with {@link #recover(WriteAheadLog, SnapshotStore,
+ * ParkingLot, TicketGenerator)}
+ * @author Haryad
+ */
+public final class LogRecovery {
+
+    private final ParkingLot parkingLot;
+    private final TicketGenerator ticketGenerator;
+    private long skipped;
+
+    private LogRecovery(ParkingLot parkingLot, TicketGenerator ticketGenerator) {
+        this.parkingLot = parkingLot;
+        this.ticketGenerator = ticketGenerator;
+    }
+
+    /**
+     * Replay the whole log into a freshly built lot and ticket generator
+     * Call this before attaching the log to ParkingManager or TicketGenerator
+     * @param log the write-ahead log
+     * @param parkingLot the lot to rebuild, with the same layout as before
+     * @param ticketGenerator the ticket generator to rebuild
+     * @return number of events replayed
+     * @throws IOException if the log cannot be read
+     */
+    public static long recover(WriteAheadLog log, ParkingLot parkingLot,
+                               TicketGenerator ticketGenerator) throws IOException {
+        return recover(log, 1, parkingLot, ticketGenerator);
+    }
+
+    /**
+     * Replay the log from a sequence number onwards
+     * @param log the write-ahead log
+     * @param fromLsn first sequence number to replay
+     * @param parkingLot the lot to rebuild
+     * @param ticketGenerator the ticket generator to rebuild
+     * @return number of events replayed
+     * @throws IOException if the log cannot be read
+     */
+    public static long recover(WriteAheadLog log, long fromLsn, ParkingLot parkingLot,
+                               TicketGenerator ticketGenerator) throws IOException {
+        long start = System.nanoTime();
+        LogRecovery recovery = new LogRecovery(parkingLot, ticketGenerator);
+        long events = log.replay(fromLsn, recovery::apply);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        EventLog.logCount(EventType.LOG_RECOVERED, events, millis);
+        if (recovery.skipped > 0) {
+            EventLog.logCount(EventType.LOG_EVENTS_SKIPPED, recovery.skipped, 0);
+        }
+        return events;
+    }
+
+    /**
+     * Load the latest snapshot, then replay only the log written after it
+     * @param log the write-ahead log
+     * @param snapshots where snapshots are kept
+     * @param parkingLot the lot to rebuild, with the same layout as before
+     * @param ticketGenerator the ticket generator to rebuild
+     * @return number of log events replayed after the snapshot
+     * @throws IOException if the snapshot or the log cannot be read
+     */
+    public static long recover(WriteAheadLog log, SnapshotStore snapshots, ParkingLot parkingLot,
+                               TicketGenerator ticketGenerator) throws IOException {
+        long start = System.nanoTime();
+        long snapshotLsn = snapshots.loadLatest(parkingLot, ticketGenerator);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (snapshotLsn > 0) {
+            EventLog.logCount(EventType.SNAPSHOT_LOADED, snapshotLsn, millis);
+        }
+        return recover(log, snapshotLsn + 1, parkingLot, ticketGenerator);
+    }
+
+    /**
+     * Replay a range of the log without reporting, used to build snapshots
+     * @param log the write-ahead log
+     * @param fromLsn first sequence number to replay
+     * @param toLsn last sequence number to replay
+     * @param parkingLot the lot to update
+     * @param ticketGenerator the ticket generator to update
+     * @return number of events replayed
+     * @throws IOException if the log cannot be read
+     */
+    static long replay(WriteAheadLog log, long fromLsn, long toLsn, ParkingLot parkingLot,
+                       TicketGenerator ticketGenerator) throws IOException {
+        LogRecovery recovery = new LogRecovery(parkingLot, ticketGenerator);
+        return log.replay(fromLsn, toLsn, recovery::apply);
+    }
+
+    /**
+     * Apply one event
+     * @param record the event
+     */
+    private void apply(LogRecord record) {
+        switch (record.getType()) {
+            case PARK ->
+                applyPark(record.getVehicle(), record.getSpotNumber());
+            case UNPARK ->
+                parkingLot.removeVehicle(record.getLicensePlate());
+            case TICKET_ISSUED -> {
+                ParkingSpot spot = parkingLot.findSpotByNumber(record.getSpotNumber());
+                if (spot == null) {
+                    skipped++;
+                    return;
+                }
+                // Share the vehicle object with the lot when it is still parked
+                Vehicle vehicle = record.getVehicle();
+                Vehicle parked = spot.getCurrentVehicle();
+                if (parked != null && parked.getLicensePlate().equals(vehicle.getLicensePlate())) {
+                    vehicle = parked;
+                }
+                ticketGenerator.restoreTicket(record.getTicketId(), vehicle, spot, record.getTime());
+            }
+            case TICKET_COMPLETED ->
+                ticketGenerator.restoreCompletion(record.getTicketId(), record.getTime(), record.getFeeCents());
+            case TICKET_PAID ->
+                ticketGenerator.restorePayment(record.getTicketId());
+        }
+    }
+
+    /**
+     * Put a vehicle in a given spot, moving it or the spot's occupant out
+     * first if the state on hand disagrees with the event
+     * @param vehicle the vehicle
+     * @param spotNumber the spot it took
+     */
+    private void applyPark(Vehicle vehicle, int spotNumber) {
+        ParkingSpot spot = parkingLot.findSpotByNumber(spotNumber);
+        if (spot == null) {
+            skipped++;
+            return;
+        }
+
+        ParkingSpot current = parkingLot.findSpotByVehicle(vehicle.getLicensePlate());
+        if (spot.equals(current)) {
+            return;
+        }
+        if (current != null) {
+            parkingLot.removeVehicle(vehicle.getLicensePlate());
+        }
+        spot.removeVehicle();
+        // A spot held for a reservation is taken by the vehicle it was held for
+        spot.cancelReservation();
+
+        if (!spot.parkVehicle(vehicle)) {
+            skipped++;
+        }
+    }
+}
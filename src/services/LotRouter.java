@@ -0,0 +1,280 @@
+package services;
+
+import enums.EventType;
+import enums.SpotSize;
+import interfaces.Parkable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import models.EventLog;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Vehicle;
+
+/**
+ * Routes vehicles across several lots behind a single Parkable
+ * <p>
+ * For every spot size the router keeps a bitmap of the lots that have
+ * spots of that size available. The lots keep it current themselves through
+ * {@link interfaces.AvailabilityListener}, which fires only when a size runs
+ * out or frees up, so routing reads a few words instead of asking every
+ * lot. Each vehicle starts looking at a random lot, which spreads arrivals
+ * evenly; when no lot has its own size free it takes a larger one, as a
+ * single lot does. Lots share nothing but these bitmaps, so gates working
+ * different lots do not slow each other down.</p>
+ * <p>
+ * A plate index remembers which lot each vehicle is in, for
+ * {@link #findVehicleLocation(String)} and {@link #unpark(String)}. Plates
+ * are claimed there before routing, so the same vehicle cannot park in two
+ * lots at once. Each lot can belong to one router only.</p>
+ * @author Haryad
+ */
+public class LotRouter implements Parkable {
+
+    // Plate index value while the vehicle is still being routed
+    private static final int ROUTING = -1;
+
+    private final ParkingManager[] managers;
+    // One bitmap per SpotSize, bit i set while lot i has that size available
+    private final AtomicLongArray[] availableLots;
+    private final ConcurrentHashMap<String, Integer> lotByPlate;
+
+    /**
+     * Constructor for LotRouter
+     * Registers itself for availability changes with every lot
+     * @param managers one manager per lot
+     */
+    public LotRouter(List<ParkingManager> managers) {
+        if (managers.isEmpty()) {
+            throw new IllegalArgumentException("Router needs at least one lot");
+        }
+        this.managers = managers.toArray(new ParkingManager[0]);
+        this.availableLots = new AtomicLongArray[SpotSize.values().length];
+        this.lotByPlate = new ConcurrentHashMap<>();
+
+        int words = (this.managers.length + 63) / 64;
+        for (int s = 0; s < availableLots.length; s++) {
+            availableLots[s] = new AtomicLongArray(words);
+        }
+        for (int i = 0; i < this.managers.length; i++) {
+            int index = i;
+            ParkingLot lot = this.managers[i].getParkingLot();
+            lot.setAvailabilityListener((changed, size, available) -> {
+                if (available) {
+                    setAvailable(index, size);
+                } else {
+                    clearAvailable(index, size);
+                }
+            });
+            for (SpotSize size : SpotSize.values()) {
+                if (lot.getAvailableSpotsCountBySize(size) > 0) {
+                    setAvailable(index, size);
+                }
+            }
+        }
+    }
+
+    private void setAvailable(int lotIndex, SpotSize size) {
+        AtomicLongArray bits = availableLots[size.ordinal()];
+        long mask = 1L << lotIndex;
+        bits.getAndAccumulate(lotIndex >>> 6, mask, (word, m) -> word | m);
+    }
+
+    private void clearAvailable(int lotIndex, SpotSize size) {
+        AtomicLongArray bits = availableLots[size.ordinal()];
+        long mask = 1L << lotIndex;
+        bits.getAndAccumulate(lotIndex >>> 6, mask, (word, m) -> word & ~m);
+        // A spot freed in between may have set the bit just before this cleared it
+        if (managers[lotIndex].getParkingLot().getAvailableSpotsCountBySize(size) > 0) {
+            setAvailable(lotIndex, size);
+        }
+    }
+
+    /**
+     * Find the first lot at or after a position that has a size available
+     * @param bits the bitmap of the size
+     * @param from first lot to consider
+     * @return lot index, or -1 if there is none
+     */
+    private int nextAvailable(AtomicLongArray bits, int from) {
+        int word = from >>> 6;
+        if (word >= bits.length()) {
+            return -1;
+        }
+        long pending = bits.get(word) & (-1L << from);
+        while (true) {
+            if (pending != 0) {
+                int lot = (word << 6) + Long.numberOfTrailingZeros(pending);
+                return lot < managers.length ? lot : -1;
+            }
+            if (++word >= bits.length()) {
+                return -1;
+            }
+            pending = bits.get(word);
+        }
+    }
+
+    @Override
+    public ParkingSpot park(Vehicle vehicle) {
+        if (vehicle == null) {
+            EventLog.log(EventType.INVALID_VEHICLE);
+            return null;
+        }
+
+        String plate = vehicle.getLicensePlate();
+        if (lotByPlate.putIfAbsent(plate, ROUTING) != null) {
+            EventLog.logVehicle(EventType.ALREADY_PARKED, plate);
+            return null;
+        }
+
+        SpotSize required = managers[0].getParkingLot().determineSpotSize(vehicle);
+        int start = (managers.length == 1) ? 0 : ThreadLocalRandom.current().nextInt(managers.length);
+        for (int s = required.ordinal(); s < availableLots.length; s++) {
+            AtomicLongArray bits = availableLots[s];
+            // From the random start to the end, then from the beginning up to it
+            for (int lot = nextAvailable(bits, start); lot >= 0; lot = nextAvailable(bits, lot + 1)) {
+                ParkingSpot spot = tryLot(lot, vehicle);
+                if (spot != null) {
+                    return spot;
+                }
+            }
+            for (int lot = nextAvailable(bits, 0); lot >= 0 && lot < start; lot = nextAvailable(bits, lot + 1)) {
+                ParkingSpot spot = tryLot(lot, vehicle);
+                if (spot != null) {
+                    return spot;
+                }
+            }
+        }
+
+        lotByPlate.remove(plate, ROUTING);
+        EventLog.log(EventType.LOT_FULL);
+        return null;
+    }
+
+    /**
+     * Park in one lot and record where the vehicle went
+     * Another gate may have taken the last spot since the bitmap was read
+     * @return the spot, or null if the lot turned out to be full
+     */
+    private ParkingSpot tryLot(int lot, Vehicle vehicle) {
+        ParkingSpot spot = managers[lot].park(vehicle);
+        if (spot != null) {
+            lotByPlate.put(vehicle.getLicensePlate(), lot);
+        }
+        return spot;
+    }
+
+    @Override
+    public Vehicle unpark(String licensePlate) {
+        if (licensePlate == null || licensePlate.trim().isEmpty()) {
+            EventLog.log(EventType.INVALID_PLATE);
+            return null;
+        }
+
+        Integer lot = lotByPlate.get(licensePlate);
+        if (lot == null || lot == ROUTING) {
+            EventLog.logVehicle(EventType.VEHICLE_NOT_FOUND, licensePlate);
+            return null;
+        }
+
+        Vehicle vehicle = managers[lot].unpark(licensePlate);
+        if (vehicle != null) {
+            lotByPlate.remove(licensePlate, lot);
+        }
+        return vehicle;
+    }
+
+    @Override
+    public ParkingSpot findVehicleLocation(String licensePlate) {
+        ParkingManager manager = findManager(licensePlate);
+        return (manager == null) ? null : manager.findVehicleLocation(licensePlate);
+    }
+
+    /**
+     * Find the manager of the lot a vehicle is parked in
+     * @param licensePlate the vehicle's license plate
+     * @return the manager, or null if the vehicle is not parked
+     */
+    public ParkingManager findManager(String licensePlate) {
+        if (licensePlate == null) {
+            return null;
+        }
+        Integer lot = lotByPlate.get(licensePlate);
+        return (lot == null || lot == ROUTING) ? null : managers[lot];
+    }
+
+    @Override
+    public boolean hasAvailableSpace() {
+        for (AtomicLongArray bits : availableLots) {
+            if (nextAvailable(bits, 0) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a vehicle of this kind can be routed to any lot right now
+     * @param vehicle the vehicle
+     * @return true if some lot has its size, or a larger one, available
+     */
+    public boolean hasAvailableSpaceFor(Vehicle vehicle) {
+        SpotSize required = managers[0].getParkingLot().determineSpotSize(vehicle);
+        for (int s = required.ordinal(); s < availableLots.length; s++) {
+            if (nextAvailable(availableLots[s], 0) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getCurrentOccupancy() {
+        int occupied = 0;
+        for (ParkingManager manager : managers) {
+            occupied += manager.getCurrentOccupancy();
+        }
+        return occupied;
+    }
+
+    /**
+     * Get the total number of spots across all lots
+     * @return total capacity
+     */
+    public int getTotalCapacity() {
+        int total = 0;
+        for (ParkingManager manager : managers) {
+            total += manager.getParkingLot().getTotalCapacity();
+        }
+        return total;
+    }
+
+    /**
+     * Override to calculate accurate occupancy rate
+     * @return occupancy percentage across all lots
+     */
+    @Override
+    public double getOccupancyRate() {
+        int total = getTotalCapacity();
+        return total > 0 ? (getCurrentOccupancy() * 100.0 / total) : 0.0;
+    }
+
+    /**
+     * Get the managers of the routed lots, in routing order
+     * @return copy of the list of managers
+     */
+    public ArrayList<ParkingManager> getManagers() {
+        return new ArrayList<>(List.of(managers));
+    }
+
+    /**
+     * Display the status of every lot
+     */
+    public void displayStatus() {
+        for (ParkingManager manager : managers) {
+            manager.displayStatus();
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package services;
 
+import enums.EventType;
 import enums.SpotSize;
 import interfaces.Parkable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import models.EventLog;
 import models.ParkingLot;
 import models.ParkingSpot;
 import models.Vehicle;
@@ -10,12 +19,20 @@ import models.Vehicle;
  * Service class for managing parking operations
  * Implements the Parkable interface
  * Acts as a facade for ParkingLot operations
+ * One manager can be shared by several entry and exit gates; the checks in
+ * park() are only early exits, the lot itself makes each claim atomic
+ * With a write-ahead log attached, each change and the append of its
+ * record happen under the plate's lock, so the log has the changes to a
+ * plate in the order they were made, and replay ends in the same state
  * @author Helen
  * @author Haryad
  */
 public class ParkingManager implements Parkable {
     
     private ParkingLot parkingLot;
+    private volatile WriteAheadLog writeAheadLog;
+    private final Waitlist waitlist = new Waitlist();
+    private final PlateLocks plateLocks = new PlateLocks();
     
     /**
      * Constructor
@@ -28,28 +45,27 @@ public class ParkingManager implements Parkable {
     @Override
     public ParkingSpot park(Vehicle vehicle) {
         if (vehicle == null) {
-            System.out.println("ERROR: Cannot park null vehicle");
+            EventLog.log(EventType.INVALID_VEHICLE);
             return null;
         }
         
         if (!hasAvailableSpace()) {
-            System.out.println("ERROR: Parking lot is FULL");
+            EventLog.log(EventType.LOT_FULL);
             return null;
         }
         
         // Check if vehicle is already parked
         if (parkingLot.findSpotByVehicle(vehicle.getLicensePlate()) != null) {
-            System.out.println("ERROR: Vehicle " + vehicle.getLicensePlate() + " is already parked");
+            EventLog.logVehicle(EventType.ALREADY_PARKED, vehicle.getLicensePlate());
             return null;
         }
         
-        ParkingSpot spot = parkingLot.parkVehicle(vehicle);
+        ParkingSpot spot = parkLogged(vehicle, parkingLot::parkVehicle);
         
         if (spot != null) {
-            System.out.println("SUCCESS: " + vehicle.getType() + " (" + vehicle.getLicensePlate() + 
-                             ") parked in spot #" + spot.getSpotNumber());
+            EventLog.logSpot(EventType.VEHICLE_PARKED, vehicle, spot);
         } else {
-            System.out.println("FAILED: Unable to park " + vehicle.getLicensePlate());
+            EventLog.logVehicle(EventType.PARK_FAILED, vehicle.getLicensePlate());
         }
         
         return spot;
@@ -58,21 +74,327 @@ public class ParkingManager implements Parkable {
     @Override
     public Vehicle unpark(String licensePlate) {
         if (licensePlate == null || licensePlate.trim().isEmpty()) {
-            System.out.println("ERROR: Invalid license plate");
+            EventLog.log(EventType.INVALID_PLATE);
             return null;
         }
         
-        Vehicle vehicle = parkingLot.removeVehicle(licensePlate);
+        if (!waitlist.isEmpty()) {
+            Vehicle vehicle = handOver(licensePlate);
+            if (vehicle != null) {
+                return vehicle;
+            }
+        }
+        
+        Vehicle vehicle = removeLogged(licensePlate);
         
         if (vehicle != null) {
-            System.out.println("SUCCESS: Vehicle " + licensePlate + " removed from parking lot");
+            EventLog.logVehicle(EventType.VEHICLE_REMOVED, licensePlate);
+            if (!waitlist.isEmpty()) {
+                serveWaitlist();
+            }
         } else {
-            System.out.println("ERROR: Vehicle " + licensePlate + " not found in parking lot");
+            EventLog.logVehicle(EventType.VEHICLE_NOT_FOUND, licensePlate);
         }
         
         return vehicle;
     }
     
+    /**
+     * Park a vehicle, or wait in line for a spot if none it fits is free
+     * Waiting vehicles are served first come first served as spots are
+     * freed, and a freed spot goes straight to the waiter without ever
+     * being available to anyone else.
+     * @param vehicle the vehicle to park
+     * @param timeout how long to wait for a spot
+     * @param unit unit of the timeout
+     * @return future completed with the spot, or with null if the vehicle
+     * could not park in time; cancel it to stop waiting
+     */
+    public CompletableFuture<ParkingSpot> parkOrWait(Vehicle vehicle, long timeout, TimeUnit unit) {
+        if (vehicle == null) {
+            EventLog.log(EventType.INVALID_VEHICLE);
+            return CompletableFuture.completedFuture(null);
+        }
+        if (parkingLot.findSpotByVehicle(vehicle.getLicensePlate()) != null) {
+            EventLog.logVehicle(EventType.ALREADY_PARKED, vehicle.getLicensePlate());
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        ParkingSpot spot = parkLogged(vehicle, parkingLot::parkVehicle);
+        if (spot != null) {
+            EventLog.logSpot(EventType.VEHICLE_PARKED, vehicle, spot);
+            return CompletableFuture.completedFuture(spot);
+        }
+        if (timeout <= 0) {
+            EventLog.logVehicle(EventType.PARK_FAILED, vehicle.getLicensePlate());
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        CompletableFuture<ParkingSpot> future = waitlist.add(
+                vehicle, parkingLot.determineSpotSize(vehicle), timeout, unit);
+        EventLog.logVehicle(EventType.VEHICLE_WAITLISTED, vehicle.getLicensePlate());
+        // A spot may have been freed between the failed park and joining the line
+        serveWaitlist();
+        return future;
+    }
+    
+    /**
+     * Park a vehicle, blocking until a spot is free or the timeout passes
+     * Meant for virtual threads, which cost no platform thread while they
+     * wait.
+     * @param vehicle the vehicle to park
+     * @param timeout how long to wait for a spot
+     * @param unit unit of the timeout
+     * @return the spot, or null if the vehicle could not park in time
+     * @throws InterruptedException if interrupted while waiting; the
+     * vehicle then leaves the line
+     */
+    public ParkingSpot parkAndWait(Vehicle vehicle, long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<ParkingSpot> future = parkOrWait(vehicle, timeout, unit);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            if (future.cancel(false)) {
+                throw e;
+            }
+            // Handed a spot just as it was interrupted
+            Thread.currentThread().interrupt();
+            return future.join();
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Give free spots to waiting vehicles, oldest first
+     * unpark() hands spots over by itself; this covers spots freed some
+     * other way, such as a reservation released by its manager. Each free
+     * size goes to the oldest waiter it can hold, as a handed over spot
+     * would, so a car that has waited longest gets a free large spot
+     * before a truck.
+     * @return number of waiting vehicles parked
+     */
+    public int serveWaitlist() {
+        int served = 0;
+        for (SpotSize size : SpotSize.values()) {
+            Waitlist.Waiter waiter;
+            while (!waitlist.isEmpty() && parkingLot.getAvailableSpotsCountBySize(size) > 0
+                    && (waiter = waitlist.claim(size)) != null) {
+                Vehicle vehicle = waiter.vehicle;
+                ParkingSpot spot = parkingLot.findSpotByVehicle(vehicle.getLicensePlate());
+                if (spot != null) {
+                    // Parked some other way while waiting
+                    waitlist.finish(waiter, spot);
+                    continue;
+                }
+                spot = parkLogged(vehicle, v -> parkingLot.parkVehicle(v, size));
+                if (spot == null) {
+                    waitlist.putBack(waiter);
+                    break;
+                }
+                if (deliver(waiter, spot)) {
+                    served++;
+                }
+            }
+        }
+        return served;
+    }
+    
+    /**
+     * Number of vehicles waiting for a spot of a size
+     * @param size the smallest spot size they fit
+     * @return vehicles waiting
+     */
+    public int getWaitingCount(SpotSize size) {
+        return waitlist.getWaitingCount(size);
+    }
+    
+    /**
+     * Give the spot of a leaving vehicle straight to the oldest waiting
+     * vehicle it fits
+     * @param licensePlate plate of the leaving vehicle
+     * @return the vehicle that left, or null if nobody waiting took its spot
+     */
+    private Vehicle handOver(String licensePlate) {
+        ParkingSpot spot = parkingLot.findSpotByVehicle(licensePlate);
+        if (spot == null) {
+            return null;
+        }
+        Waitlist.Waiter waiter;
+        while ((waiter = waitlist.claim(spot.getSize())) != null) {
+            Vehicle next = waiter.vehicle;
+            ParkingSpot current = parkingLot.findSpotByVehicle(next.getLicensePlate());
+            if (current != null) {
+                waitlist.finish(waiter, current);
+                continue;
+            }
+            Vehicle left = handOverLogged(spot, licensePlate, next);
+            if (left == null) {
+                waitlist.putBack(waiter);
+                return null;
+            }
+            EventLog.logVehicle(EventType.VEHICLE_REMOVED, licensePlate);
+            deliver(waiter, spot);
+            return left;
+        }
+        return null;
+    }
+    
+    /**
+     * Complete a waiter with the spot it was parked in; if it stopped
+     * waiting just now, take its vehicle back out
+     * @return true if the waiter received the spot
+     */
+    private boolean deliver(Waitlist.Waiter waiter, ParkingSpot spot) {
+        Vehicle vehicle = waiter.vehicle;
+        if (waitlist.finish(waiter, spot)) {
+            EventLog.logSpot(EventType.VEHICLE_PARKED, vehicle, spot);
+            return true;
+        }
+        removeLogged(vehicle.getLicensePlate());
+        serveWaitlist();
+        return false;
+    }
+    
+    /**
+     * Park a vehicle in a spot held for it by a reservation
+     * @param vehicle the vehicle
+     * @param spot the spot, RESERVED for it
+     * @return true if the vehicle parked
+     */
+    public boolean parkReserved(Vehicle vehicle, ParkingSpot spot) {
+        if (vehicle == null) {
+            EventLog.log(EventType.INVALID_VEHICLE);
+            return false;
+        }
+        if (parkingLot.findSpotByVehicle(vehicle.getLicensePlate()) != null) {
+            EventLog.logVehicle(EventType.ALREADY_PARKED, vehicle.getLicensePlate());
+            return false;
+        }
+        if (parkLogged(vehicle, v -> spot.parkReserved(v) ? spot : null) == null) {
+            EventLog.logVehicle(EventType.PARK_FAILED, vehicle.getLicensePlate());
+            return false;
+        }
+        EventLog.logSpot(EventType.VEHICLE_PARKED, vehicle, spot);
+        return true;
+    }
+
+    /**
+     * Park a burst of vehicles, such as the plates a gate camera reports
+     * together
+     * Each vehicle is reported as park() would, but the lot checks the
+     * batch and claims its spots together, and the parks share one
+     * write-ahead log append, so the batch waits for one disk flush instead
+     * of one per vehicle. Only a vehicle that could not park is looked up
+     * again, to tell an already parked plate from a full lot.
+     * @param vehicles the vehicles, in arrival order
+     * @return the spot of each vehicle in the same order, null where it
+     * could not park
+     */
+    public ArrayList<ParkingSpot> parkAll(List<? extends Vehicle> vehicles) {
+        if (!hasAvailableSpace()) {
+            EventLog.log(EventType.LOT_FULL);
+            return new ArrayList<>(Collections.nCopies(vehicles.size(), null));
+        }
+
+        WriteAheadLog log = writeAheadLog;
+        ArrayList<ParkingSpot> spots;
+        long lsn = 0;
+        long held = (log != null) ? plateLocks.lockAll(platesOf(vehicles)) : 0;
+        try {
+            spots = parkingLot.parkVehicles(vehicles);
+            if (log != null) {
+                ArrayList<LogRecord> records = new ArrayList<>(spots.size());
+                for (int i = 0; i < spots.size(); i++) {
+                    if (spots.get(i) != null) {
+                        records.add(LogRecord.park(vehicles.get(i), spots.get(i).getSpotNumber()));
+                    }
+                }
+                lsn = log.write(records);
+            }
+        } finally {
+            plateLocks.unlock(held);
+        }
+        if (log != null) {
+            log.flush(lsn);
+        }
+
+        for (int i = 0; i < spots.size(); i++) {
+            Vehicle vehicle = vehicles.get(i);
+            ParkingSpot spot = spots.get(i);
+            if (spot != null) {
+                EventLog.logSpot(EventType.VEHICLE_PARKED, vehicle, spot);
+            } else if (vehicle == null) {
+                EventLog.log(EventType.INVALID_VEHICLE);
+            } else if (parkingLot.findSpotByVehicle(vehicle.getLicensePlate()) != null) {
+                EventLog.logVehicle(EventType.ALREADY_PARKED, vehicle.getLicensePlate());
+            } else {
+                EventLog.logVehicle(EventType.PARK_FAILED, vehicle.getLicensePlate());
+            }
+        }
+        return spots;
+    }
+
+    /**
+     * Unpark a burst of vehicles by license plate
+     * Each plate is checked and reported as unpark() would, and the
+     * removals share one write-ahead log append
+     * @param licensePlates the plates
+     * @return the removed vehicle for each plate in the same order, null
+     * where it was invalid or not found
+     */
+    public ArrayList<Vehicle> unparkAll(List<String> licensePlates) {
+        // Blank plates are left out as nulls, which the lot never finds
+        List<String> valid = licensePlates;
+        for (int i = 0; i < licensePlates.size(); i++) {
+            String licensePlate = licensePlates.get(i);
+            if (licensePlate == null || licensePlate.trim().isEmpty()) {
+                EventLog.log(EventType.INVALID_PLATE);
+                if (licensePlate != null) {
+                    if (valid == licensePlates) {
+                        valid = new ArrayList<>(licensePlates);
+                    }
+                    valid.set(i, null);
+                }
+            }
+        }
+
+        WriteAheadLog log = writeAheadLog;
+        ArrayList<Vehicle> removed;
+        long lsn = 0;
+        long held = (log != null) ? plateLocks.lockAll(valid) : 0;
+        try {
+            removed = parkingLot.removeVehicles(valid);
+            if (log != null) {
+                ArrayList<LogRecord> records = new ArrayList<>(removed.size());
+                for (Vehicle vehicle : removed) {
+                    if (vehicle != null) {
+                        records.add(LogRecord.unpark(vehicle.getLicensePlate()));
+                    }
+                }
+                lsn = log.write(records);
+            }
+        } finally {
+            plateLocks.unlock(held);
+        }
+        if (log != null) {
+            log.flush(lsn);
+        }
+
+        for (int i = 0; i < removed.size(); i++) {
+            String licensePlate = valid.get(i);
+            if (removed.get(i) != null) {
+                EventLog.logVehicle(EventType.VEHICLE_REMOVED, licensePlate);
+            } else if (licensePlate != null) {
+                EventLog.logVehicle(EventType.VEHICLE_NOT_FOUND, licensePlate);
+            }
+        }
+        if (!waitlist.isEmpty()) {
+            serveWaitlist();
+        }
+        return removed;
+    }
+
     @Override
     public ParkingSpot findVehicleLocation(String licensePlate) {
         return parkingLot.findSpotByVehicle(licensePlate);
@@ -88,6 +410,108 @@ public class ParkingManager implements Parkable {
         return parkingLot.getOccupiedSpotsCount();
     }
     
+    /**
+     * Attach a write-ahead log that receives every park and unpark
+     * Attach it after recovery, so replayed events are not logged twice
+     * @param writeAheadLog the log, or null to stop logging
+     */
+    public void setWriteAheadLog(WriteAheadLog writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+    }
+    
+    /**
+     * Park a vehicle and log it, if a write-ahead log is attached
+     * The plate stays locked from the claim until the record has its place
+     * in the log; the flush is waited for after the lock is released.
+     * @param vehicle the vehicle
+     * @param claim takes a spot for the vehicle, or returns null
+     * @return the spot, or null if the claim failed
+     */
+    private ParkingSpot parkLogged(Vehicle vehicle, Function<Vehicle, ParkingSpot> claim) {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null) {
+            return claim.apply(vehicle);
+        }
+        ParkingSpot spot;
+        long lsn = 0;
+        long held = plateLocks.lock(vehicle.getLicensePlate());
+        try {
+            spot = claim.apply(vehicle);
+            if (spot != null) {
+                lsn = log.write(List.of(LogRecord.park(vehicle, spot.getSpotNumber())));
+            }
+        } finally {
+            plateLocks.unlock(held);
+        }
+        if (spot != null) {
+            log.flush(lsn);
+        }
+        return spot;
+    }
+    
+    /**
+     * Remove a vehicle and log it, if a write-ahead log is attached
+     * @param licensePlate the plate
+     * @return the vehicle removed, or null if it was not parked
+     */
+    private Vehicle removeLogged(String licensePlate) {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null) {
+            return parkingLot.removeVehicle(licensePlate);
+        }
+        Vehicle vehicle;
+        long lsn = 0;
+        long held = plateLocks.lock(licensePlate);
+        try {
+            vehicle = parkingLot.removeVehicle(licensePlate);
+            if (vehicle != null) {
+                lsn = log.write(List.of(LogRecord.unpark(licensePlate)));
+            }
+        } finally {
+            plateLocks.unlock(held);
+        }
+        if (vehicle != null) {
+            log.flush(lsn);
+        }
+        return vehicle;
+    }
+    
+    /**
+     * Move a spot from a leaving vehicle to the next one and log both,
+     * with both plates locked
+     * @return the vehicle that left, or null if the hand-over failed
+     */
+    private Vehicle handOverLogged(ParkingSpot spot, String licensePlate, Vehicle next) {
+        WriteAheadLog log = writeAheadLog;
+        if (log == null) {
+            return spot.handOver(licensePlate, next);
+        }
+        Vehicle left;
+        long lsn = 0;
+        long held = plateLocks.lock(licensePlate, next.getLicensePlate());
+        try {
+            left = spot.handOver(licensePlate, next);
+            if (left != null) {
+                lsn = log.write(List.of(LogRecord.unpark(licensePlate),
+                        LogRecord.park(next, spot.getSpotNumber())));
+            }
+        } finally {
+            plateLocks.unlock(held);
+        }
+        if (left != null) {
+            log.flush(lsn);
+        }
+        return left;
+    }
+    
+    private static List<String> platesOf(List<? extends Vehicle> vehicles) {
+        ArrayList<String> plates = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            plates.add((vehicle != null) ? vehicle.getLicensePlate() : null);
+        }
+        return plates;
+    }
+    
     /**
      * Display comprehensive parking lot status
      */
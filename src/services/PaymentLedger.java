@@ -0,0 +1,359 @@
+package services;
+
+import enums.LedgerEntryType;
+import enums.LedgerResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import models.LedgerEntry;
+
+/**
+ * In-memory, append-only record of charges and refunds
+ * <p>
+ * Every charge and refund carries an idempotency key chosen by the
+ * terminal that sent it. A retry with the same key finds the earlier entry
+ * in one hash lookup and is reported as a duplicate instead of being
+ * charged again, and a ticket that already has a charge standing is not
+ * charged again under a new key either. Refunds name the charge they belong to and are checked
+ * against what is left of that charge. Charges whose payment did not go
+ * through are cancelled with a reversal entry; nothing is ever changed or
+ * removed in place.</p>
+ * <p>
+ * The ledger keeps the newest {@code maxEntries} entries. Older ones roll
+ * out oldest first, together with their indexes, so a retry or refund that
+ * arrives after its charge has rolled out is treated as unknown. Size the
+ * ledger to cover the longest retry and refund window. A charge whose
+ * payment has not yet settled or been reversed stays findable after its
+ * entry rolls out, until {@link #settle} or {@link #reverse} is called
+ * for it.</p>
+ * @author Haryad
+ */
+public class PaymentLedger {
+
+    /** What is known about a charge besides its entry */
+    private static final class ChargeState {
+        final LedgerEntry charge;
+        long refundedCents;
+        boolean reversed;
+        boolean settled;     // Settled or reversed; may be let go once rolled out
+        boolean rolledOut;   // Left the entry queue while still unsettled
+
+        ChargeState(LedgerEntry charge) {
+            this.charge = charge;
+        }
+    }
+
+    private final int maxEntries;
+    private final ReentrantLock lock;
+    private final ArrayDeque<LedgerEntry> entries;                      // Oldest first
+    private final HashMap<String, LedgerEntry> entriesByKey;
+    private final HashMap<Long, ChargeState> chargesBySequence;
+    private final HashMap<String, ArrayList<LedgerEntry>> entriesByTicket;
+    private final HashMap<String, ChargeState> standingChargeByTicket;   // Not reversed
+    private long nextSequence;
+    private long evictedCount;
+
+    /**
+     * Constructor for PaymentLedger
+     * @param maxEntries most entries kept before the oldest roll out
+     */
+    public PaymentLedger(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Ledger must hold at least one entry");
+        }
+        this.maxEntries = maxEntries;
+        this.lock = new ReentrantLock();
+        this.entries = new ArrayDeque<>();
+        this.entriesByKey = new HashMap<>();
+        this.chargesBySequence = new HashMap<>();
+        this.entriesByTicket = new HashMap<>();
+        this.standingChargeByTicket = new HashMap<>();
+        this.nextSequence = 1;
+    }
+
+    /**
+     * Record a charge
+     * A retry with the same key, ticket and amount is a duplicate and
+     * appends nothing; the same key with anything else is a conflict. A
+     * new key for a ticket whose earlier charge was not reversed appends
+     * nothing either. Call {@link #settle} or {@link #reverse} once the
+     * payment has gone through or failed.
+     * @param idempotencyKey key chosen by the terminal for this charge
+     * @param ticketId the ticket being paid
+     * @param amountCents the amount in cents
+     * @return RECORDED if this is a new charge that should now be taken,
+     * CHARGE_REVERSED for a retry of a charge that was reversed,
+     * TICKET_CHARGED if the ticket already has a charge standing
+     */
+    public LedgerResult charge(String idempotencyKey, String ticketId, long amountCents) {
+        if (amountCents <= 0) {
+            return LedgerResult.INVALID_AMOUNT;
+        }
+        lock.lock();
+        try {
+            LedgerEntry existing = entriesByKey.get(idempotencyKey);
+            if (existing != null) {
+                boolean same = existing.getType() == LedgerEntryType.CHARGE
+                        && existing.getTicketId().equals(ticketId)
+                        && existing.getAmountCents() == amountCents;
+                if (!same) {
+                    return LedgerResult.KEY_CONFLICT;
+                }
+                ChargeState state = chargesBySequence.get(existing.getSequence());
+                return (state != null && state.reversed)
+                        ? LedgerResult.CHARGE_REVERSED : LedgerResult.DUPLICATE;
+            }
+            if (standingChargeByTicket.containsKey(ticketId)) {
+                return LedgerResult.TICKET_CHARGED;
+            }
+
+            LedgerEntry entry = new LedgerEntry(nextSequence, LedgerEntryType.CHARGE,
+                    idempotencyKey, ticketId, amountCents, nextSequence);
+            ChargeState state = new ChargeState(entry);
+            chargesBySequence.put(entry.getSequence(), state);
+            standingChargeByTicket.put(ticketId, state);
+            append(entry);
+            return LedgerResult.RECORDED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record a refund against an earlier charge
+     * All refunds of a charge together may not exceed it
+     * @param idempotencyKey key chosen by the terminal for this refund
+     * @param chargeKey key the charge was recorded with
+     * @param amountCents the amount to refund, in cents
+     * @return RECORDED if the refund should now be paid out
+     */
+    public LedgerResult refund(String idempotencyKey, String chargeKey, long amountCents) {
+        if (amountCents <= 0) {
+            return LedgerResult.INVALID_AMOUNT;
+        }
+        lock.lock();
+        try {
+            ChargeState state = findCharge(chargeKey);
+            if (state == null) {
+                return LedgerResult.UNKNOWN_CHARGE;
+            }
+
+            LedgerEntry existing = entriesByKey.get(idempotencyKey);
+            if (existing != null) {
+                boolean same = existing.getType() == LedgerEntryType.REFUND
+                        && existing.getChargeSequence() == state.charge.getSequence()
+                        && existing.getAmountCents() == amountCents;
+                return same ? LedgerResult.DUPLICATE : LedgerResult.KEY_CONFLICT;
+            }
+            if (state.reversed) {
+                return LedgerResult.CHARGE_REVERSED;
+            }
+            if (amountCents > state.charge.getAmountCents() - state.refundedCents) {
+                return LedgerResult.EXCEEDS_CHARGE;
+            }
+
+            state.refundedCents += amountCents;
+            append(new LedgerEntry(nextSequence, LedgerEntryType.REFUND, idempotencyKey,
+                    state.charge.getTicketId(), amountCents, state.charge.getSequence()));
+            return LedgerResult.RECORDED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancel a charge whose payment did not go through
+     * Retries with the charge's key are then reported as CHARGE_REVERSED,
+     * so a declined card is not charged again under the same key
+     * @param chargeKey key the charge was recorded with
+     * @return true if the charge was found and not already reversed or refunded
+     */
+    public boolean reverse(String chargeKey) {
+        lock.lock();
+        try {
+            ChargeState state = findCharge(chargeKey);
+            if (state == null || state.reversed || state.refundedCents > 0) {
+                return false;
+            }
+            state.reversed = true;
+            standingChargeByTicket.remove(state.charge.getTicketId(), state);
+            append(new LedgerEntry(nextSequence, LedgerEntryType.REVERSAL, null,
+                    state.charge.getTicketId(), state.charge.getAmountCents(),
+                    state.charge.getSequence()));
+            markSettled(state);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Note that the payment of a charge went through
+     * A charge that has rolled out while its payment was under way is let
+     * go now; until then it can still be reversed or refunded.
+     * @param chargeKey key the charge was recorded with
+     * @return true if the charge was found and not reversed
+     */
+    public boolean settle(String chargeKey) {
+        lock.lock();
+        try {
+            ChargeState state = findCharge(chargeKey);
+            if (state == null || state.reversed) {
+                return false;
+            }
+            markSettled(state);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called with the lock held
+     * @param state the charge, now settled or reversed
+     */
+    private void markSettled(ChargeState state) {
+        state.settled = true;
+        if (state.rolledOut) {
+            forget(state.charge);
+        }
+    }
+
+    private ChargeState findCharge(String chargeKey) {
+        LedgerEntry charge = entriesByKey.get(chargeKey);
+        if (charge == null || charge.getType() != LedgerEntryType.CHARGE) {
+            return null;
+        }
+        return chargesBySequence.get(charge.getSequence());
+    }
+
+    /**
+     * Append an entry and roll out the oldest one if the ledger is full
+     * Called with the lock held
+     * @param entry the entry, numbered with nextSequence
+     */
+    private void append(LedgerEntry entry) {
+        nextSequence++;
+        entries.addLast(entry);
+        if (entry.getIdempotencyKey() != null) {
+            entriesByKey.put(entry.getIdempotencyKey(), entry);
+        }
+        entriesByTicket.computeIfAbsent(entry.getTicketId(), id -> new ArrayList<>(2)).add(entry);
+
+        if (entries.size() > maxEntries) {
+            evict(entries.removeFirst());
+        }
+    }
+
+    private void evict(LedgerEntry oldest) {
+        evictedCount++;
+        if (oldest.getType() == LedgerEntryType.CHARGE) {
+            ChargeState state = chargesBySequence.get(oldest.getSequence());
+            if (state != null && !state.settled) {
+                // Kept findable so the payment under way can still reverse it
+                state.rolledOut = true;
+                return;
+            }
+        }
+        forget(oldest);
+    }
+
+    /**
+     * Drop an entry that has left the entry queue from every index
+     * Called with the lock held
+     * @param entry the entry
+     */
+    private void forget(LedgerEntry entry) {
+        if (entry.getIdempotencyKey() != null) {
+            entriesByKey.remove(entry.getIdempotencyKey(), entry);
+        }
+        if (entry.getType() == LedgerEntryType.CHARGE) {
+            ChargeState state = chargesBySequence.remove(entry.getSequence());
+            if (state != null) {
+                standingChargeByTicket.remove(entry.getTicketId(), state);
+            }
+        }
+        // Usually the first of its ticket, unless an older charge was kept
+        ArrayList<LedgerEntry> forTicket = entriesByTicket.get(entry.getTicketId());
+        if (forTicket != null) {
+            forTicket.remove(entry);
+            if (forTicket.isEmpty()) {
+                entriesByTicket.remove(entry.getTicketId());
+            }
+        }
+    }
+
+    /**
+     * Find the entry recorded under an idempotency key
+     * @param idempotencyKey the key
+     * @return the entry, or null if unknown or rolled out
+     */
+    public LedgerEntry findByKey(String idempotencyKey) {
+        lock.lock();
+        try {
+            return entriesByKey.get(idempotencyKey);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the entries still held for a ticket, oldest first
+     * @param ticketId the ticket
+     * @return copy of its entries, empty if there are none
+     */
+    public ArrayList<LedgerEntry> getEntriesForTicket(String ticketId) {
+        lock.lock();
+        try {
+            ArrayList<LedgerEntry> forTicket = entriesByTicket.get(ticketId);
+            return (forTicket == null) ? new ArrayList<>() : new ArrayList<>(forTicket);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get how much of a charge can still be refunded
+     * @param chargeKey key the charge was recorded with
+     * @return refundable amount in cents, 0 if unknown or reversed
+     */
+    public long getRefundableCents(String chargeKey) {
+        lock.lock();
+        try {
+            ChargeState state = findCharge(chargeKey);
+            if (state == null || state.reversed) {
+                return 0;
+            }
+            return state.charge.getAmountCents() - state.refundedCents;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of entries held
+     * @return entry count, at most maxEntries
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of entries that have rolled out
+     * @return evicted entry count
+     */
+    public long getEvictedCount() {
+        lock.lock();
+        try {
+            return evictedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
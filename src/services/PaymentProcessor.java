@@ -1,64 +1,313 @@
 package services;
 
+import enums.EventType;
+import enums.LedgerResult;
+import enums.PaymentStatus;
 import interfaces.Payable;
+import java.util.concurrent.CompletableFuture;
+import models.EventLog;
+import models.Money;
+import models.Payment;
+import models.Ticket;
 
 /**
  * Service class for processing parking payments
  * Implements the Payable interface
+ * With a SettlementPipeline attached, ticket payments are settled in
+ * batches in the background instead of one at a time
+ * With a PaymentLedger attached, payments and refunds submitted with an
+ * idempotency key are recorded, so a terminal retrying a request is never
+ * charged or refunded twice
  * @author Helen
  * @author Haryad
  */
 public class PaymentProcessor implements Payable {
     
-    private String paymentStatus;
-    private double lastTransactionAmount;
+    /**
+     * Outcome of the last transaction, replaced as a whole so a reader on
+     * another thread never sees one transaction's label with another's
+     * amount; formatted only when asked for, see getPaymentStatus()
+     */
+    private static final class Status {
+        final String label;
+        final long amountCents;  // NO_AMOUNT when the label stands alone
+
+        Status(String label, long amountCents) {
+            this.label = label;
+            this.amountCents = amountCents;
+        }
+    }
+    
+    // Written by settlement threads as well as the caller's
+    private volatile Status status;
+    private volatile long lastTransactionCents;
+    private final SettlementPipeline settlement;  // May be null
+    private volatile PaymentLedger ledger;        // May be null
+    
+    private static final long NO_AMOUNT = -1;
     
     public PaymentProcessor() {
-        this.paymentStatus = "No transactions yet";
-        this.lastTransactionAmount = 0.0;
+        this(null);
+    }
+    
+    /**
+     * Constructor for a processor that settles ticket payments in batches
+     * @param settlement the pipeline, or null to settle each payment inline
+     */
+    public PaymentProcessor(SettlementPipeline settlement) {
+        this.status = new Status("No transactions yet", NO_AMOUNT);
+        this.lastTransactionCents = 0;
+        this.settlement = settlement;
+    }
+    
+    /**
+     * Pay the fee of a completed ticket
+     * The ticket is marked as paid once the payment settles. Without a
+     * pipeline this happens before the method returns; with one, the
+     * ticket is claimed before it is queued and the claim is given up only
+     * if the payment does not settle. A ticket that is still active is
+     * declined, and one already paid or with a payment queued completes as
+     * a DUPLICATE, neither taking anything.
+     * @param ticket the completed ticket
+     * @return completes with the settled, declined or duplicate payment
+     */
+    public CompletableFuture<Payment> submitPayment(Ticket ticket) {
+        Payment refused = refuse(ticket);
+        if (refused != null) {
+            return CompletableFuture.completedFuture(refused);
+        }
+        if (settlement != null) {
+            return submitQueued(ticket);
+        }
+        
+        // Held so a second payment of the same ticket waits and then sees it paid
+        ticket.getLock().lock();
+        try {
+            refused = refuse(ticket);
+            if (refused != null) {
+                return CompletableFuture.completedFuture(refused);
+            }
+            Payment payment = new Payment(ticket, ticket.getParkingFeeCents());
+            if (!processPaymentCents(payment.getAmountCents())) {
+                return CompletableFuture.completedFuture(payment.withStatus(PaymentStatus.DECLINED));
+            }
+            ticket.markAsPaid();
+            return CompletableFuture.completedFuture(payment.withStatus(PaymentStatus.SETTLED));
+        } finally {
+            ticket.getLock().unlock();
+        }
+    }
+    
+    /**
+     * Queue the payment of a ticket no other payment has claimed
+     * @param ticket the completed ticket
+     * @return completes with the settled, declined or duplicate payment
+     */
+    private CompletableFuture<Payment> submitQueued(Ticket ticket) {
+        if (!ticket.claimPayment()) {
+            EventLog.logTicket(EventType.TICKET_ALREADY_PAID, ticket);
+            return CompletableFuture.completedFuture(
+                    new Payment(ticket, ticket.getParkingFeeCents()).withStatus(PaymentStatus.DUPLICATE));
+        }
+        // Paid some other way between the first check and the claim
+        Payment refused = refuse(ticket);
+        if (refused != null) {
+            return CompletableFuture.completedFuture(refused);
+        }
+        // Released before the lane hears back, so a retry after a decline goes through
+        return settlement.submit(ticket).whenComplete((payment, error) -> {
+            if (error != null || payment.getStatus() != PaymentStatus.SETTLED) {
+                ticket.releasePayment();
+            }
+        });
+    }
+    
+    /**
+     * Check that a ticket can be paid
+     * @param ticket the ticket
+     * @return the refused payment, or null if the ticket can be paid
+     */
+    private Payment refuse(Ticket ticket) {
+        if (ticket.isActive()) {
+            EventLog.logTicket(EventType.TICKET_NOT_COMPLETED, ticket);
+            setStatus("FAILED - Ticket still active", NO_AMOUNT);
+            return new Payment(ticket, 0).withStatus(PaymentStatus.DECLINED);
+        }
+        if (ticket.isPaid()) {
+            EventLog.logTicket(EventType.TICKET_ALREADY_PAID, ticket);
+            return new Payment(ticket, ticket.getParkingFeeCents()).withStatus(PaymentStatus.DUPLICATE);
+        }
+        return null;
+    }
+    
+    /**
+     * Attach a ledger for payments and refunds submitted with a key
+     * @param ledger the ledger, or null to stop recording
+     */
+    public void setLedger(PaymentLedger ledger) {
+        this.ledger = ledger;
+    }
+    
+    /**
+     * Pay the fee of a completed ticket at most once per idempotency key
+     * A retry of a request already recorded completes with a DUPLICATE
+     * payment, or DECLINED if the first attempt was, and takes nothing; so
+     * does a new key for a ticket whose earlier charge was not reversed. A
+     * charge that is declined or cannot be settled is reversed in the
+     * ledger, and one that settles is marked settled there.
+     * @param idempotencyKey key chosen by the terminal for this payment
+     * @param ticket the completed ticket
+     * @return completes with the settled, declined or duplicate payment
+     */
+    public CompletableFuture<Payment> submitPayment(String idempotencyKey, Ticket ticket) {
+        PaymentLedger current = ledger;
+        if (current == null) {
+            return submitPayment(ticket);
+        }
+        Payment refused = refuse(ticket);
+        if (refused != null) {
+            return CompletableFuture.completedFuture(refused);
+        }
+        
+        long amountCents = ticket.getParkingFeeCents();
+        LedgerResult result = current.charge(idempotencyKey, ticket.getTicketId(), amountCents);
+        Payment payment = new Payment(ticket, amountCents);
+        switch (result) {
+            case RECORDED -> {
+                // Taken below
+            }
+            case DUPLICATE, TICKET_CHARGED -> {
+                // The same request again, or the ticket is already being paid under another key
+                EventLog.logAmount(EventType.DUPLICATE_PAYMENT, amountCents);
+                return CompletableFuture.completedFuture(payment.withStatus(PaymentStatus.DUPLICATE));
+            }
+            case CHARGE_REVERSED -> {
+                // A retry of a payment that was declined the first time
+                EventLog.logAmount(EventType.PAYMENT_DECLINED, amountCents);
+                return CompletableFuture.completedFuture(payment.withStatus(PaymentStatus.DECLINED));
+            }
+            default -> {
+                EventLog.log(EventType.INVALID_PAYMENT);
+                setStatus("FAILED - " + result, NO_AMOUNT);
+                return CompletableFuture.completedFuture(payment.withStatus(PaymentStatus.DECLINED));
+            }
+        }
+        
+        return submitPayment(ticket).whenComplete((settled, error) -> {
+            if (error == null && settled.getStatus() == PaymentStatus.SETTLED) {
+                current.settle(idempotencyKey);
+            } else {
+                current.reverse(idempotencyKey);
+            }
+        });
     }
     
     @Override
-    public boolean processPayment(double amount) {
-        if (amount <= 0) {
-            System.out.println("ERROR: Invalid payment amount");
-            paymentStatus = "FAILED - Invalid amount";
+    public boolean processPaymentCents(long amountCents) {
+        if (amountCents <= 0) {
+            EventLog.log(EventType.INVALID_PAYMENT);
+            setStatus("FAILED - Invalid amount", NO_AMOUNT);
             return false;
         }
         
         // Simulate payment processing
-        System.out.println("Processing payment of $" + String.format("%.2f", amount));
-        lastTransactionAmount = amount;
-        paymentStatus = "SUCCESS - Paid $" + String.format("%.2f", amount);
+        EventLog.logAmount(EventType.PAYMENT_PROCESSED, amountCents);
+        lastTransactionCents = amountCents;
+        setStatus("SUCCESS - Paid $", amountCents);
         
         return true;
     }
     
     @Override
-    public double calculateAmount(int hours, double rate) {
-        if (hours <= 0 || rate < 0) {
-            return 0.0;
+    public long calculateAmountCents(int hours, long rateCents) {
+        if (hours <= 0 || rateCents < 0) {
+            return 0;
         }
-        return hours * rate;
+        return Money.times(rateCents, hours);
     }
     
     @Override
-    public boolean issueRefund(double amount) {
-        if (amount <= 0 || amount > lastTransactionAmount) {
-            System.out.println("ERROR: Invalid refund amount");
-            paymentStatus = "REFUND FAILED";
+    public boolean issueRefundCents(long amountCents) {
+        if (amountCents <= 0 || amountCents > lastTransactionCents) {
+            EventLog.log(EventType.INVALID_REFUND);
+            setStatus("REFUND FAILED", NO_AMOUNT);
+            return false;
+        }
+        
+        EventLog.logAmount(EventType.REFUND_ISSUED, amountCents);
+        setStatus("REFUNDED - $", amountCents);
+        
+        return true;
+    }
+    
+    /**
+     * Refund part or all of a settled payment
+     * Checked against that transaction, not just the last one processed
+     * @param payment the settled payment
+     * @param amountCents the amount to refund, in cents
+     * @return true if refund was successful, false otherwise
+     */
+    public boolean issueRefundCents(Payment payment, long amountCents) {
+        if (payment == null || payment.getStatus() != PaymentStatus.SETTLED
+                || amountCents <= 0 || amountCents > payment.getAmountCents()) {
+            EventLog.log(EventType.INVALID_REFUND);
+            setStatus("REFUND FAILED", NO_AMOUNT);
             return false;
         }
         
-        System.out.println("Issuing refund of $" + String.format("%.2f", amount));
-        paymentStatus = "REFUNDED - $" + String.format("%.2f", amount);
+        EventLog.logAmount(EventType.REFUND_ISSUED, amountCents);
+        setStatus("REFUNDED - $", amountCents);
         
         return true;
     }
     
+    /**
+     * Refund part or all of a charge recorded in the ledger
+     * Checked against what is left of that charge after earlier refunds; a
+     * retry of a refund already recorded pays out nothing more
+     * @param idempotencyKey key chosen by the terminal for this refund
+     * @param chargeKey key the charge was submitted with
+     * @param amountCents the amount to refund, in cents
+     * @return RECORDED if the refund was issued, otherwise why not
+     */
+    public LedgerResult issueRefundCents(String idempotencyKey, String chargeKey, long amountCents) {
+        PaymentLedger current = ledger;
+        if (current == null) {
+            throw new IllegalStateException("No payment ledger attached");
+        }
+        
+        LedgerResult result = current.refund(idempotencyKey, chargeKey, amountCents);
+        switch (result) {
+            case RECORDED -> {
+                EventLog.logAmount(EventType.REFUND_ISSUED, amountCents);
+                setStatus("REFUNDED - $", amountCents);
+            }
+            case DUPLICATE ->
+                EventLog.logAmount(EventType.DUPLICATE_PAYMENT, amountCents);
+            default -> {
+                EventLog.log(EventType.INVALID_REFUND);
+                setStatus("REFUND FAILED", NO_AMOUNT);
+            }
+        }
+        return result;
+    }
+    
     @Override
     public String getPaymentStatus() {
-        return paymentStatus;
+        Status current = status;
+        if (current.amountCents == NO_AMOUNT) {
+            return current.label;
+        }
+        return Money.appendTo(new StringBuilder(current.label), current.amountCents).toString();
+    }
+    
+    /**
+     * Record the outcome of the last transaction
+     * @param label status text, followed by the amount if there is one
+     * @param amountCents the amount, or NO_AMOUNT if the label stands alone
+     */
+    private void setStatus(String label, long amountCents) {
+        this.status = new Status(label, amountCents);
     }
     
     /**
@@ -69,15 +318,26 @@ public class PaymentProcessor implements Payable {
      * @return formatted receipt string
      */
     public String generateReceipt(String licensePlate, int hours, double rate) {
-        double amount = calculateAmount(hours, rate);
-        StringBuilder receipt = new StringBuilder();
+        return generateReceiptCents(licensePlate, hours, Money.ofDollars(rate));
+    }
+    
+    /**
+     * Generate a receipt for a payment
+     * @param licensePlate vehicle license plate
+     * @param hours hours parked
+     * @param rateCents hourly rate in cents
+     * @return formatted receipt string
+     */
+    public String generateReceiptCents(String licensePlate, int hours, long rateCents) {
+        long amountCents = calculateAmountCents(hours, rateCents);
+        StringBuilder receipt = new StringBuilder(256);
         
         receipt.append("\n========== PAYMENT RECEIPT ==========\n");
         receipt.append("Vehicle: ").append(licensePlate).append("\n");
         receipt.append("Hours Parked: ").append(hours).append("\n");
-        receipt.append("Hourly Rate: $").append(String.format("%.2f", rate)).append("\n");
-        receipt.append("Total Amount: $").append(String.format("%.2f", amount)).append("\n");
-        receipt.append("Status: ").append(paymentStatus).append("\n");
+        Money.appendTo(receipt.append("Hourly Rate: $"), rateCents).append("\n");
+        Money.appendTo(receipt.append("Total Amount: $"), amountCents).append("\n");
+        receipt.append("Status: ").append(getPaymentStatus()).append("\n");
         receipt.append("=====================================\n");
         
         return receipt.toString();
@@ -90,11 +350,12 @@ public class PaymentProcessor implements Payable {
      * @return true if payment successful
      */
     public boolean processPaymentWithDiscount(double amount, double discountPercent) {
-        double discountedAmount = applyDiscount(amount, discountPercent);
-        System.out.println("Original: $" + String.format("%.2f", amount));
+        long amountCents = Money.ofDollars(amount);
+        long discountedCents = applyDiscountCents(amountCents, discountPercent);
+        System.out.println("Original: $" + Money.format(amountCents));
         System.out.println("Discount: " + discountPercent + "%");
-        System.out.println("Final: $" + String.format("%.2f", discountedAmount));
-        return processPayment(discountedAmount);
+        System.out.println("Final: $" + Money.format(discountedCents));
+        return processPaymentCents(discountedCents);
     }
     
     /**
@@ -104,10 +365,11 @@ public class PaymentProcessor implements Payable {
      * @return true if payment successful
      */
     public boolean processPaymentWithTax(double amount, double taxRate) {
-        double totalWithTax = calculateWithTax(amount, taxRate);
-        System.out.println("Subtotal: $" + String.format("%.2f", amount));
-        System.out.println("Tax (" + taxRate + "%): $" + String.format("%.2f", totalWithTax - amount));
-        System.out.println("Total: $" + String.format("%.2f", totalWithTax));
-        return processPayment(totalWithTax);
+        long amountCents = Money.ofDollars(amount);
+        long totalCents = calculateWithTaxCents(amountCents, taxRate);
+        System.out.println("Subtotal: $" + Money.format(amountCents));
+        System.out.println("Tax (" + taxRate + "%): $" + Money.format(totalCents - amountCents));
+        System.out.println("Total: $" + Money.format(totalCents));
+        return processPaymentCents(totalCents);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package services;
+
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks by license plate, used to keep the write-ahead log in the
+ * order changes to a plate were made
+ * <p>
+ * A change to the lot and the append of its record happen under the
+ * plate's lock, so two gates working on the same plate log in the order
+ * they changed the lot. The stripes a caller holds are returned as a bit
+ * mask, and several are always taken in ascending order, so callers
+ * holding several plates never deadlock. ReentrantLock rather than a
+ * monitor, so a virtual thread waiting here does not pin its carrier.</p>
+ * @author Haryad
+ */
+final class PlateLocks {
+
+    private static final int STRIPES = Long.SIZE;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    PlateLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Lock one plate
+     * @param licensePlate the plate
+     * @return the stripes held, for unlock()
+     */
+    long lock(String licensePlate) {
+        return lockStripes(stripeBit(licensePlate));
+    }
+
+    /**
+     * Lock two plates, such as a leaving vehicle and the one taking its spot
+     * @param first one plate
+     * @param second the other plate
+     * @return the stripes held, for unlock()
+     */
+    long lock(String first, String second) {
+        return lockStripes(stripeBit(first) | stripeBit(second));
+    }
+
+    /**
+     * Lock every plate of a batch; nulls are skipped
+     * @param licensePlates the plates
+     * @return the stripes held, for unlock()
+     */
+    long lockAll(List<String> licensePlates) {
+        long stripes = 0;
+        for (String licensePlate : licensePlates) {
+            if (licensePlate != null) {
+                stripes |= stripeBit(licensePlate);
+            }
+        }
+        return lockStripes(stripes);
+    }
+
+    /**
+     * Release stripes taken by one of the lock methods
+     * @param stripes the stripes held
+     */
+    void unlock(long stripes) {
+        for (long rest = stripes; rest != 0; rest &= rest - 1) {
+            locks[Long.numberOfTrailingZeros(rest)].unlock();
+        }
+    }
+
+    private long lockStripes(long stripes) {
+        for (long rest = stripes; rest != 0; rest &= rest - 1) {
+            locks[Long.numberOfTrailingZeros(rest)].lock();
+        }
+        return stripes;
+    }
+
+    private static long stripeBit(String licensePlate) {
+        int hash = licensePlate.hashCode();
+        return 1L << ((hash ^ (hash >>> 16)) & (STRIPES - 1));
+    }
+}
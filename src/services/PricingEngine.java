@@ -0,0 +1,124 @@
+package services;
+
+import enums.EventType;
+import enums.SpotSize;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import models.EventLog;
+import models.ParkingLot;
+import models.PricingPolicy;
+import models.RateTable;
+
+/**
+ * Keeps a lot's rates in step with how full it is
+ * <p>
+ * Each refresh reads the occupancy of every spot size from the lot's live
+ * counts, compiles the policy into a new {@link RateTable} and hands it to
+ * the lot in one write. Everything costly happens here, off the gates:
+ * working out a fee only looks up the table current at that moment.</p>
+ * @author Haryad
+ */
+public class PricingEngine implements AutoCloseable {
+
+    private final ParkingLot parkingLot;
+    private final ZoneId zone;
+    private volatile PricingPolicy policy;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor for PricingEngine, with hours and days in the system
+     * time zone
+     * @param parkingLot the lot to price
+     * @param policy the pricing policy
+     */
+    public PricingEngine(ParkingLot parkingLot, PricingPolicy policy) {
+        this(parkingLot, policy, ZoneId.systemDefault());
+    }
+
+    /**
+     * Constructor for PricingEngine
+     * @param parkingLot the lot to price
+     * @param policy the pricing policy
+     * @param zone time zone the policy's hours and days are in
+     */
+    public PricingEngine(ParkingLot parkingLot, PricingPolicy policy, ZoneId zone) {
+        this.parkingLot = parkingLot;
+        this.policy = policy;
+        this.zone = zone;
+    }
+
+    /**
+     * Compile the policy for the lot's occupancy now and install it
+     * @return the new rate table
+     */
+    public RateTable refresh() {
+        SpotSize[] sizes = SpotSize.values();
+        int[] occupancy = new int[sizes.length];
+        for (SpotSize size : sizes) {
+            int count = parkingLot.getSpotsCountBySize(size);
+            if (count > 0) {
+                int used = count - parkingLot.getAvailableSpotsCountBySize(size);
+                occupancy[size.ordinal()] = (int) (1000L * used / count);
+            }
+        }
+        long offsetMillis = zone.getRules().getOffset(Instant.now()).getTotalSeconds() * 1000L;
+        RateTable table = RateTable.compile(policy, occupancy, offsetMillis);
+        parkingLot.setRateTable(table);
+        return table;
+    }
+
+    /**
+     * Switch to another policy and install it right away
+     * @param policy the new pricing policy
+     */
+    public void setPolicy(PricingPolicy policy) {
+        this.policy = policy;
+        refresh();
+    }
+
+    /**
+     * Get the policy being applied
+     * @return the pricing policy
+     */
+    public PricingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Refresh the rates in the background at a fixed interval
+     * @param interval time between refreshes
+     * @param unit unit of the interval
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        refresh();
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "pricing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                EventLog.logFailure(EventType.PRICING_REFRESH_FAILED, e);
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Stop background refreshes; the last table stays in place
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package services;
+
+import enums.SpotSize;
+
+/**
+ * Counts of booked reservations over time, one index per spot size
+ * <p>
+ * Time is cut into slots over a horizon that moves forward with the clock.
+ * Each size keeps a segment tree over the slots that can add one to a
+ * range and find the largest count in a range, both in O(log slots), so
+ * checking a window against the spots of a size costs the same however
+ * many reservations there are. The slots form a ring of twice the horizon:
+ * a reservation still running started less than a horizon ago, so the
+ * slots it covers in the past are never the slots of a window that can be
+ * booked, and each reservation is taken back out when it ends.</p>
+ *
+ * @author Haryad
+ */
+final class ReservationIndex {
+
+    /** Range add and range maximum over a power of two slots */
+    private static final class SlotTree {
+        private final int[] max;      // Largest count under each node, pending adds above it excluded
+        private final int[] pending;  // Amount added to a whole node, not yet pushed down
+        private final int leaves;
+        private final int height;
+
+        SlotTree(int leaves) {
+            this.leaves = leaves;
+            this.height = Integer.numberOfTrailingZeros(leaves);
+            this.max = new int[2 * leaves];
+            this.pending = new int[leaves];
+        }
+
+        void add(int from, int to, int amount) {
+            int l = from + leaves;
+            int r = to + leaves;
+            int l0 = l;
+            int r0 = r - 1;
+            for (; l < r; l >>>= 1, r >>>= 1) {
+                if ((l & 1) == 1) {
+                    apply(l++, amount);
+                }
+                if ((r & 1) == 1) {
+                    apply(--r, amount);
+                }
+            }
+            rebuild(l0);
+            rebuild(r0);
+        }
+
+        int max(int from, int to) {
+            int l = from + leaves;
+            int r = to + leaves;
+            push(l);
+            push(r - 1);
+            int result = Integer.MIN_VALUE;
+            for (; l < r; l >>>= 1, r >>>= 1) {
+                if ((l & 1) == 1) {
+                    result = Math.max(result, max[l++]);
+                }
+                if ((r & 1) == 1) {
+                    result = Math.max(result, max[--r]);
+                }
+            }
+            return result;
+        }
+
+        private void apply(int node, int amount) {
+            max[node] += amount;
+            if (node < leaves) {
+                pending[node] += amount;
+            }
+        }
+
+        private void rebuild(int node) {
+            while (node > 1) {
+                node >>>= 1;
+                max[node] = Math.max(max[2 * node], max[2 * node + 1]) + pending[node];
+            }
+        }
+
+        private void push(int node) {
+            for (int s = height; s > 0; s--) {
+                int parent = node >>> s;
+                if (pending[parent] != 0) {
+                    apply(2 * parent, pending[parent]);
+                    apply(2 * parent + 1, pending[parent]);
+                    pending[parent] = 0;
+                }
+            }
+        }
+    }
+
+    private final long slotMillis;
+    private final int slots;
+    private final SlotTree[] trees;
+
+    /**
+     * Constructor for ReservationIndex
+     *
+     * @param slotMillis length of a slot; windows are widened to whole slots
+     * @param slots slots in the ring, a power of two; windows may end up
+     * to half of them ahead
+     */
+    ReservationIndex(long slotMillis, int slots) {
+        if (Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("Slot count must be a power of two: " + slots);
+        }
+        this.slotMillis = slotMillis;
+        this.slots = slots;
+        this.trees = new SlotTree[SpotSize.values().length];
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = new SlotTree(slots);
+        }
+    }
+
+    /**
+     * Check whether a window ends within the horizon
+     *
+     * @param now the current time in milliseconds
+     * @param end end of the window
+     * @return true if the window can be booked
+     */
+    boolean covers(long now, long end) {
+        return endSlot(end) - Math.floorDiv(now, slotMillis) <= slots / 2;
+    }
+
+    /**
+     * Book a window if fewer than a limit of reservations overlap it at
+     * any point
+     *
+     * @param size the spot size
+     * @param start start of the window in milliseconds
+     * @param end end of the window
+     * @param limit spots of that size
+     * @return true if the window was booked
+     */
+    boolean tryAdd(SpotSize size, long start, long end, int limit) {
+        SlotTree tree = trees[size.ordinal()];
+        synchronized (tree) {
+            if (max(tree, start, end) >= limit) {
+                return false;
+            }
+            add(tree, start, end, 1);
+            return true;
+        }
+    }
+
+    /**
+     * Take a booked window back out
+     *
+     * @param size the spot size
+     * @param start start of the window in milliseconds
+     * @param end end of the window
+     */
+    void remove(SpotSize size, long start, long end) {
+        SlotTree tree = trees[size.ordinal()];
+        synchronized (tree) {
+            add(tree, start, end, -1);
+        }
+    }
+
+    /**
+     * Find the most reservations booked at any one time in a window
+     *
+     * @param size the spot size
+     * @param start start of the window in milliseconds
+     * @param end end of the window
+     * @return the largest count
+     */
+    int maxBooked(SpotSize size, long start, long end) {
+        SlotTree tree = trees[size.ordinal()];
+        synchronized (tree) {
+            return max(tree, start, end);
+        }
+    }
+
+    /**
+     * Estimate the memory held by the index
+     *
+     * @return size in bytes
+     */
+    long getFootprintBytes() {
+        return 12L * slots * trees.length;
+    }
+
+    private void add(SlotTree tree, long start, long end, int amount) {
+        long first = Math.floorDiv(start, slotMillis);
+        int from = (int) (first & (slots - 1));
+        int length = length(first, end);
+        if (from + length <= slots) {
+            tree.add(from, from + length, amount);
+        } else {
+            tree.add(from, slots, amount);
+            tree.add(0, from + length - slots, amount);
+        }
+    }
+
+    private int max(SlotTree tree, long start, long end) {
+        long first = Math.floorDiv(start, slotMillis);
+        int from = (int) (first & (slots - 1));
+        int length = length(first, end);
+        if (from + length <= slots) {
+            return tree.max(from, from + length);
+        }
+        return Math.max(tree.max(from, slots), tree.max(0, from + length - slots));
+    }
+
+    /**
+     * Count the slots of a window, refusing one longer than half the ring,
+     * which would wrap onto slots of windows still running
+     */
+    private int length(long first, long end) {
+        long length = endSlot(end) - first;
+        if (length > slots / 2) {
+            throw new IllegalArgumentException("Window of " + length + " slots is longer than the horizon of "
+                    + slots / 2);
+        }
+        return (int) length;
+    }
+
+    private long endSlot(long end) {
+        return Math.ceilDiv(end, slotMillis);
+    }
+}
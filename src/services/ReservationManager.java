@@ -0,0 +1,298 @@
+package services;
+
+import enums.EventType;
+import enums.ReservationStatus;
+import enums.SpotSize;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import models.EventLog;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Reservation;
+import models.Vehicle;
+
+/**
+ * Service class for time-bounded spot reservations
+ * <p>
+ * A booking is checked against an index of the reservations of its spot
+ * size over time, so asking whether a window is free does not depend on
+ * how many bookings exist. Nothing is set aside until the window starts:
+ * a timing wheel then holds a free spot for it, releases the spot if the
+ * vehicle has not arrived within the no-show grace period, and takes the
+ * booking out of the index when the window ends. Each of those is one
+ * timer, so reservations never need a scan of the lot's spots. A released
+ * spot goes to a vehicle waiting in line, if any, or back to the lot's
+ * free spots like any other.</p>
+ * <p>
+ * Walk-in parking does not look at future bookings, so a spot can only be
+ * held if one of the size is free when the window starts; otherwise the
+ * arriving vehicle gets another try at check-in.</p>
+ *
+ * @author Haryad
+ */
+public class ReservationManager implements AutoCloseable {
+
+    /** Time a held spot waits for its vehicle */
+    public static final long DEFAULT_NO_SHOW_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final long TICK_MILLIS = 1000;
+    // One turn of the wheel is about 18 hours, so most timers wait less than a turn
+    private static final int WHEEL_BUCKETS = 1 << 16;
+    private static final long SLOT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // A ring of 16384 one-minute slots takes bookings up to about 5.7 days ahead
+    private static final int INDEX_SLOTS = 1 << 14;
+
+    private final ParkingManager parkingManager;
+    private final ParkingLot parkingLot;
+    private final long noShowGraceMillis;
+    private final LongSupplier clock;
+    private final ReservationIndex index;
+    private final TimingWheel wheel;
+    private final ConcurrentHashMap<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor for ReservationManager
+     * @param parkingManager manager of the lot the reservations are for
+     */
+    public ReservationManager(ParkingManager parkingManager) {
+        this(parkingManager, DEFAULT_NO_SHOW_GRACE_MILLIS, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor for ReservationManager with its own grace period and clock
+     * @param parkingManager manager of the lot the reservations are for
+     * @param noShowGraceMillis time a held spot waits for its vehicle
+     * @param clock current time in milliseconds
+     */
+    public ReservationManager(ParkingManager parkingManager, long noShowGraceMillis, LongSupplier clock) {
+        this.parkingManager = parkingManager;
+        this.parkingLot = parkingManager.getParkingLot();
+        this.noShowGraceMillis = noShowGraceMillis;
+        this.clock = clock;
+        this.index = new ReservationIndex(SLOT_MILLIS, INDEX_SLOTS);
+        this.wheel = new TimingWheel(clock.getAsLong(), TICK_MILLIS, WHEEL_BUCKETS);
+    }
+
+    /**
+     * Book a spot of a size for a window of time
+     * A window that has already started is booked from now.
+     * @param licensePlate plate of the vehicle expected
+     * @param size the spot size
+     * @param startTime start of the window in milliseconds
+     * @param endTime end of the window in milliseconds
+     * @return the reservation, or null if the request was invalid or every
+     * spot of that size is booked at some point of the window
+     */
+    public Reservation reserve(String licensePlate, SpotSize size, long startTime, long endTime) {
+        long now = clock.getAsLong();
+        long start = Math.max(startTime, now);
+        if (licensePlate == null || licensePlate.trim().isEmpty() || size == null
+                || endTime <= start || !index.covers(now, endTime)) {
+            EventLog.log(EventType.INVALID_RESERVATION);
+            return null;
+        }
+
+        Reservation reservation = new Reservation(nextId.incrementAndGet(), licensePlate, size, start, endTime);
+        if (!index.tryAdd(size, start, endTime, parkingLot.getSpotsCountBySize(size))) {
+            EventLog.logReservation(EventType.RESERVATION_REJECTED, reservation);
+            return null;
+        }
+        reservations.put(reservation.getReservationId(), reservation);
+
+        wheel.schedule(start, () -> hold(reservation));
+        wheel.schedule(Math.min(start + noShowGraceMillis, endTime), () -> expire(reservation));
+        wheel.schedule(endTime, () -> finish(reservation));
+        EventLog.logReservation(EventType.RESERVATION_BOOKED, reservation);
+        return reservation;
+    }
+
+    /**
+     * Park the vehicle of a reservation in the spot held for it
+     * A vehicle arriving after the window started but before a spot could
+     * be held gets one now if any is free.
+     * @param reservationId the reservation
+     * @param vehicle the arriving vehicle, with the booked plate
+     * @return the spot it parked in, or null if it could not
+     */
+    public ParkingSpot checkIn(long reservationId, Vehicle vehicle) {
+        Reservation reservation = reservations.get(reservationId);
+        if (reservation == null || vehicle == null
+                || !reservation.getLicensePlate().equals(vehicle.getLicensePlate())) {
+            EventLog.logVehicle(EventType.RESERVATION_NOT_FOUND,
+                    (vehicle != null) ? vehicle.getLicensePlate() : null);
+            return null;
+        }
+        if (reservation.getStatus() == ReservationStatus.BOOKED
+                && clock.getAsLong() >= reservation.getStartTime()) {
+            hold(reservation);
+        }
+
+        // Winning this keeps expiry and cancellation away from the spot
+        if (!reservation.changeStatus(ReservationStatus.HELD, ReservationStatus.CHECKED_IN)) {
+            EventLog.logVehicle(EventType.PARK_FAILED, vehicle.getLicensePlate());
+            return null;
+        }
+        ParkingSpot spot = reservation.getSpot();
+        if (!parkingManager.parkReserved(vehicle, spot)) {
+            // Still held: the same vehicle can try again until it expires
+            reservation.changeStatus(ReservationStatus.CHECKED_IN, ReservationStatus.HELD);
+            return null;
+        }
+        return spot;
+    }
+
+    /**
+     * Cancel a reservation that has not been used yet, releasing its spot
+     * if one is held
+     * @param reservationId the reservation
+     * @return true if it was cancelled
+     */
+    public boolean cancel(long reservationId) {
+        Reservation reservation = reservations.get(reservationId);
+        if (reservation != null && (close(reservation, ReservationStatus.BOOKED, ReservationStatus.CANCELLED)
+                || close(reservation, ReservationStatus.HELD, ReservationStatus.CANCELLED))) {
+            EventLog.logReservation(EventType.RESERVATION_CANCELLED, reservation);
+            return true;
+        }
+        EventLog.logVehicle(EventType.RESERVATION_NOT_FOUND,
+                (reservation != null) ? reservation.getLicensePlate() : null);
+        return false;
+    }
+
+    /**
+     * Count the spots of a size still free to book for a whole window
+     * @param size the spot size
+     * @param startTime start of the window in milliseconds
+     * @param endTime end of the window in milliseconds
+     * @return spots of that size not booked at any point of the window, or
+     * 0 if the window ends past the booking horizon, as it cannot be booked
+     */
+    public int getAvailableSpots(SpotSize size, long startTime, long endTime) {
+        long now = clock.getAsLong();
+        long start = Math.max(startTime, now);
+        if (endTime <= start || !index.covers(now, endTime)) {
+            return 0;
+        }
+        return Math.max(0, parkingLot.getSpotsCountBySize(size) - index.maxBooked(size, start, endTime));
+    }
+
+    /**
+     * Find an open reservation
+     * @param reservationId the reservation
+     * @return the reservation, or null if there is none or it is over
+     */
+    public Reservation findReservation(long reservationId) {
+        return reservations.get(reservationId);
+    }
+
+    /**
+     * Get the number of open reservations
+     * @return reservations not yet expired, cancelled or completed
+     */
+    public int getOpenReservations() {
+        return reservations.size();
+    }
+
+    /**
+     * Run every hold, expiry and end that is due by the clock
+     * start() calls this every tick; call it directly to drive the
+     * reservations from a clock of your own.
+     * @return number of timers run
+     */
+    public int runDue() {
+        return wheel.advance(clock.getAsLong());
+    }
+
+    /**
+     * Run due timers in the background, once a tick
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "reservations");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                runDue();
+            } catch (RuntimeException e) {
+                EventLog.logFailure(EventType.RESERVATION_TIMERS_FAILED, e);
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop running timers in the background
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Hold a free spot for a reservation whose window has started
+     * Synchronized on the reservation so the wheel and an early check-in
+     * never both take a spot for it.
+     */
+    private void hold(Reservation reservation) {
+        synchronized (reservation) {
+            if (reservation.getStatus() != ReservationStatus.BOOKED) {
+                return;
+            }
+            ParkingSpot spot = parkingLot.reserveSpot(reservation.getSize());
+            if (spot != null && !reservation.hold(spot)) {
+                // Cancelled meanwhile
+                spot.cancelReservation();
+            }
+        }
+    }
+
+    /**
+     * Release the spot of a vehicle that has not arrived
+     */
+    private void expire(Reservation reservation) {
+        if (close(reservation, ReservationStatus.HELD, ReservationStatus.EXPIRED)
+                || close(reservation, ReservationStatus.BOOKED, ReservationStatus.EXPIRED)) {
+            EventLog.logReservation(EventType.RESERVATION_EXPIRED, reservation);
+        }
+    }
+
+    /**
+     * End the window of a reservation whose vehicle arrived
+     */
+    private void finish(Reservation reservation) {
+        if (!close(reservation, ReservationStatus.CHECKED_IN, ReservationStatus.COMPLETED)) {
+            // Check-in rolled back at the last moment, or no-show grace past the end
+            expire(reservation);
+        }
+    }
+
+    /**
+     * Move a reservation to a final status, then release what it holds:
+     * its spot if it was only held, and its window in the index
+     * @return true if the status matched and was changed
+     */
+    private boolean close(Reservation reservation, ReservationStatus from, ReservationStatus to) {
+        if (!reservation.changeStatus(from, to)) {
+            return false;
+        }
+        if (from == ReservationStatus.HELD && reservation.getSpot().cancelReservation()) {
+            parkingManager.serveWaitlist();
+        }
+        index.remove(reservation.getSize(), reservation.getStartTime(), reservation.getEndTime());
+        reservations.remove(reservation.getReservationId());
+        return true;
+    }
+}
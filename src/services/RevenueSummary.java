@@ -0,0 +1,188 @@
+package services;
+
+import enums.VehicleType;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import models.Money;
+import models.Ticket;
+
+/**
+ * Immutable snapshot of ticket totals
+ * TicketGenerator replaces its current snapshot on every completion and
+ * payment, so reading totals is constant-time and every value in one
+ * snapshot belongs to the same moment
+ * Amounts are exact, in cents
+ * @author Haryad
+ */
+public final class RevenueSummary {
+    
+    static final RevenueSummary EMPTY = new RevenueSummary(0, 0, 0, 0,
+            new int[VehicleType.values().length], new long[VehicleType.values().length]);
+    
+    private final int completedCount;
+    private final int paidCount;
+    private final long totalRevenueCents;
+    private final long totalUnpaidCents;
+    private final int[] countsByType;
+    private final long[] feesByType;  // Cents
+    
+    private RevenueSummary(int completedCount, int paidCount, long totalRevenueCents,
+                           long totalUnpaidCents, int[] countsByType, long[] feesByType) {
+        this.completedCount = completedCount;
+        this.paidCount = paidCount;
+        this.totalRevenueCents = totalRevenueCents;
+        this.totalUnpaidCents = totalUnpaidCents;
+        this.countsByType = countsByType;
+        this.feesByType = feesByType;
+    }
+    
+    /**
+     * Snapshot with one more completed ticket
+     * @param ticket the ticket that was just completed
+     * @return the new snapshot
+     */
+    RevenueSummary withCompleted(Ticket ticket) {
+        long fee = ticket.getParkingFeeCents();
+        int type = ticket.getVehicle().getType().ordinal();
+        int[] counts = countsByType.clone();
+        long[] fees = feesByType.clone();
+        counts[type]++;
+        fees[type] += fee;
+        
+        if (ticket.isPaid()) {
+            return new RevenueSummary(completedCount + 1, paidCount + 1,
+                    totalRevenueCents + fee, totalUnpaidCents, counts, fees);
+        }
+        return new RevenueSummary(completedCount + 1, paidCount,
+                totalRevenueCents, totalUnpaidCents + fee, counts, fees);
+    }
+    
+    /**
+     * Snapshot with a completed ticket moved from unpaid to paid
+     * @param ticket the completed ticket that was just paid
+     * @return the new snapshot
+     */
+    RevenueSummary withPaid(Ticket ticket) {
+        long fee = ticket.getParkingFeeCents();
+        return new RevenueSummary(completedCount, paidCount + 1,
+                totalRevenueCents + fee, totalUnpaidCents - fee, countsByType, feesByType);
+    }
+    
+    /**
+     * Write this summary to a snapshot
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(completedCount);
+        out.writeInt(paidCount);
+        out.writeLong(totalRevenueCents);
+        out.writeLong(totalUnpaidCents);
+        out.writeByte(countsByType.length);
+        for (int i = 0; i < countsByType.length; i++) {
+            out.writeInt(countsByType[i]);
+            out.writeLong(feesByType[i]);
+        }
+    }
+    
+    /**
+     * Read a summary written by {@link #writeTo}
+     * @param in source
+     * @return the summary
+     * @throws IOException if reading fails
+     */
+    static RevenueSummary readFrom(DataInput in) throws IOException {
+        int completed = in.readInt();
+        int paid = in.readInt();
+        long revenue = in.readLong();
+        long unpaid = in.readLong();
+        int types = in.readUnsignedByte();
+        int[] counts = new int[VehicleType.values().length];
+        long[] fees = new long[VehicleType.values().length];
+        for (int i = 0; i < types; i++) {
+            int count = in.readInt();
+            long fee = in.readLong();
+            if (i < counts.length) {
+                counts[i] = count;
+                fees[i] = fee;
+            }
+        }
+        return new RevenueSummary(completed, paid, revenue, unpaid, counts, fees);
+    }
+    
+    /**
+     * Get number of completed tickets
+     * @return completed ticket count
+     */
+    public int getCompletedCount() {
+        return completedCount;
+    }
+    
+    /**
+     * Get number of completed tickets that are paid
+     * @return paid ticket count
+     */
+    public int getPaidCount() {
+        return paidCount;
+    }
+    
+    /**
+     * Get total fees collected from paid completed tickets
+     * @return total revenue in cents
+     */
+    public long getTotalRevenueCents() {
+        return totalRevenueCents;
+    }
+    
+    /**
+     * Get total fees still owed on completed tickets
+     * @return total unpaid amount in cents
+     */
+    public long getTotalUnpaidCents() {
+        return totalUnpaidCents;
+    }
+    
+    /**
+     * Get total fees collected from paid completed tickets
+     * @return total revenue in dollars
+     */
+    public double getTotalRevenue() {
+        return Money.toDollars(totalRevenueCents);
+    }
+    
+    /**
+     * Get total fees still owed on completed tickets
+     * @return total unpaid amount in dollars
+     */
+    public double getTotalUnpaid() {
+        return Money.toDollars(totalUnpaidCents);
+    }
+    
+    /**
+     * Get number of completed tickets for a vehicle type
+     * @param type the vehicle type
+     * @return completed ticket count for that type
+     */
+    public int getCompletedCount(VehicleType type) {
+        return countsByType[type.ordinal()];
+    }
+    
+    /**
+     * Get sum of fees, paid or not, of completed tickets for a vehicle type
+     * @param type the vehicle type
+     * @return fee sum for that type in cents
+     */
+    public long getTotalFeesCents(VehicleType type) {
+        return feesByType[type.ordinal()];
+    }
+    
+    /**
+     * Get sum of fees, paid or not, of completed tickets for a vehicle type
+     * @param type the vehicle type
+     * @return fee sum for that type in dollars
+     */
+    public double getTotalFees(VehicleType type) {
+        return Money.toDollars(feesByType[type.ordinal()]);
+    }
+}
@@ -0,0 +1,326 @@
+package services;
+
+import enums.EventType;
+import enums.PaymentStatus;
+import interfaces.SettlementBackend;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import models.EventLog;
+import models.Payment;
+import models.Ticket;
+
+/**
+ * Queues payments and settles them in batches on a background thread
+ * <p>
+ * Exit lanes hand a payment over and get a future back straight away. A
+ * dispatcher thread waits for the first queued payment, then keeps
+ * collecting until the batch is full or the time window has passed, and
+ * sends the whole batch to the backend in one call. Several batches can be
+ * with the backend at once; when that limit is reached the dispatcher
+ * waits, and payments keep queueing into the next batch. Accepted payments
+ * are reported back to their ticket with {@link Ticket#markAsPaid()}, each
+ * on its own virtual thread, so tickets that log to the write-ahead log
+ * share its group commits instead of waiting one after another.</p>
+ * @author Haryad
+ */
+public class SettlementPipeline implements AutoCloseable {
+
+    /** A queued payment and the future its lane is waiting on */
+    private static final class PendingPayment {
+        final Payment payment;
+        final CompletableFuture<Payment> result;
+
+        PendingPayment(Payment payment) {
+            this.payment = payment;
+            this.result = new CompletableFuture<>();
+        }
+    }
+
+    // Queued by close() to tell the dispatcher to stop
+    private static final PendingPayment SHUTDOWN = new PendingPayment(null);
+
+    private final SettlementBackend backend;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final LinkedBlockingQueue<PendingPayment> queue;
+    private final Semaphore batchesInFlight;
+    private final ExecutorService workers;       // Batches sent to the backend
+    private final ExecutorService completions;   // Accepted payments reported back
+    private final Thread dispatcher;
+    private final LongAdder settledCount;
+    private final LongAdder declinedCount;
+    private final LongAdder batchCount;
+    private volatile boolean closed;
+
+    /**
+     * Constructor for SettlementPipeline
+     * @param backend where batches are settled
+     * @param maxBatchSize most payments sent in one call
+     * @param maxBatchesInFlight most calls to the backend at once
+     * @param maxDelay longest a payment waits for its batch to fill
+     * @param unit unit of maxDelay
+     */
+    public SettlementPipeline(SettlementBackend backend, int maxBatchSize, int maxBatchesInFlight,
+                              long maxDelay, TimeUnit unit) {
+        if (maxBatchSize < 1 || maxBatchesInFlight < 1) {
+            throw new IllegalArgumentException("Batch size and batches in flight must be at least 1");
+        }
+        this.backend = backend;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.queue = new LinkedBlockingQueue<>();
+        this.batchesInFlight = new Semaphore(maxBatchesInFlight);
+        this.workers = Executors.newVirtualThreadPerTaskExecutor();
+        this.completions = Executors.newVirtualThreadPerTaskExecutor();
+        this.settledCount = new LongAdder();
+        this.declinedCount = new LongAdder();
+        this.batchCount = new LongAdder();
+        this.dispatcher = new Thread(this::dispatchLoop, "settlement-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queue the fee of a completed ticket for settlement
+     * The ticket is marked as paid once the backend accepts the payment
+     * @param ticket the completed ticket
+     * @return completes with the settled or declined payment, or
+     * exceptionally if the backend could not be reached
+     */
+    public CompletableFuture<Payment> submit(Ticket ticket) {
+        return submit(new Payment(ticket, ticket.getParkingFeeCents()));
+    }
+
+    /**
+     * Queue a payment for settlement
+     * @param payment the pending payment
+     * @return completes with the settled or declined payment, or
+     * exceptionally if the backend could not be reached
+     */
+    public CompletableFuture<Payment> submit(Payment payment) {
+        PendingPayment pending = new PendingPayment(payment);
+        if (closed) {
+            pending.result.completeExceptionally(
+                    new IllegalStateException("Settlement pipeline is closed"));
+            return pending.result;
+        }
+        queue.add(pending);
+        if (closed && queue.remove(pending)) {
+            // close() ran in between and the dispatcher may already be gone
+            pending.result.completeExceptionally(
+                    new IllegalStateException("Settlement pipeline is closed"));
+        }
+        return pending.result;
+    }
+
+    private void dispatchLoop() {
+        ArrayList<PendingPayment> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                batchesInFlight.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            PendingPayment first;
+            try {
+                first = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            boolean stopping = (first == SHUTDOWN);
+            if (!stopping) {
+                batch.add(first);
+                stopping = fillBatch(batch);
+            }
+            if (!batch.isEmpty()) {
+                dispatch(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            } else {
+                batchesInFlight.release();
+            }
+            if (stopping) {
+                settleRemaining();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send a batch to the backend on a worker
+     * The caller has already taken a permit from batchesInFlight
+     * @param batch the batch, no longer touched by the caller
+     */
+    private void dispatch(ArrayList<PendingPayment> batch) {
+        workers.execute(() -> {
+            try {
+                settleBatch(batch);
+            } finally {
+                batchesInFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Settle everything queued before close(), in full batches
+     */
+    private void settleRemaining() {
+        ArrayList<PendingPayment> batch = new ArrayList<>(maxBatchSize);
+        PendingPayment pending;
+        while ((pending = queue.poll()) != null) {
+            if (pending == SHUTDOWN) {
+                continue;
+            }
+            batch.add(pending);
+            if (batch.size() == maxBatchSize) {
+                batchesInFlight.acquireUninterruptibly();
+                dispatch(batch);
+                batch = new ArrayList<>(maxBatchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batchesInFlight.acquireUninterruptibly();
+            dispatch(batch);
+        }
+    }
+
+    /**
+     * Keep adding queued payments until the batch is full or the window
+     * that opened with its first payment has passed
+     * @param batch the batch, holding at least its first payment
+     * @return true if close() was called meanwhile
+     */
+    private boolean fillBatch(ArrayList<PendingPayment> batch) {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            PendingPayment next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return true;
+                }
+                if (next == null) {
+                    break;
+                }
+            }
+            if (next == SHUTDOWN) {
+                return true;
+            }
+            batch.add(next);
+        }
+        return false;
+    }
+
+    /**
+     * Settle one batch and report every payment in it
+     * @param batch the batch
+     */
+    private void settleBatch(ArrayList<PendingPayment> batch) {
+        ArrayList<Payment> payments = new ArrayList<>(batch.size());
+        for (PendingPayment pending : batch) {
+            payments.add(pending.payment);
+        }
+        batchCount.increment();
+
+        boolean[] accepted;
+        try {
+            accepted = backend.settle(payments);
+            if (accepted == null || accepted.length != payments.size()) {
+                throw new IllegalStateException("Backend returned "
+                        + (accepted == null ? "no" : accepted.length) + " results for "
+                        + payments.size() + " payments");
+            }
+        } catch (Exception e) {
+            for (PendingPayment pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < accepted.length; i++) {
+            PendingPayment pending = batch.get(i);
+            if (accepted[i]) {
+                settledCount.increment();
+                completions.execute(() -> complete(pending));
+            } else {
+                declinedCount.increment();
+                EventLog.logAmount(EventType.PAYMENT_DECLINED, pending.payment.getAmountCents());
+                pending.result.complete(pending.payment.withStatus(PaymentStatus.DECLINED));
+            }
+        }
+    }
+
+    /**
+     * Report an accepted payment to its ticket and its lane
+     * @param pending the accepted payment
+     */
+    private void complete(PendingPayment pending) {
+        try {
+            Ticket ticket = pending.payment.getTicket();
+            if (ticket != null) {
+                ticket.markAsPaid();
+            }
+            EventLog.logAmount(EventType.PAYMENT_PROCESSED, pending.payment.getAmountCents());
+            pending.result.complete(pending.payment.withStatus(PaymentStatus.SETTLED));
+        } catch (RuntimeException e) {
+            pending.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Get the number of payments the backend accepted
+     * @return settled payment count
+     */
+    public long getSettledCount() {
+        return settledCount.sum();
+    }
+
+    /**
+     * Get the number of payments the backend declined
+     * @return declined payment count
+     */
+    public long getDeclinedCount() {
+        return declinedCount.sum();
+    }
+
+    /**
+     * Get the number of batches sent to the backend
+     * @return batch count
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /**
+     * Stop taking payments, settle everything already queued and wait for
+     * the results to be reported
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(SHUTDOWN);
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Batches first, since they hand work to completions
+        workers.close();
+        completions.close();
+    }
+}
@@ -0,0 +1,453 @@
+package services;
+
+import enums.EventType;
+import enums.SpotSize;
+import interfaces.Parkable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+import models.EventLog;
+import models.ParkingSpot;
+import models.Vehicle;
+
+/**
+ * Parkable front for lots, or zones of a lot, served by ShardWorker
+ * processes
+ * <p>
+ * Requests are routed either by a hash of the license plate, so every
+ * operation on a vehicle goes to the same shard without any lookup, or by
+ * zone, where the caller decides which shard a vehicle parks in and a
+ * plate index remembers it for later lookups. Each shard has a fixed pool
+ * of connections; a gate thread borrows one for the length of a request,
+ * so as many requests as there are connections run at once per shard.
+ * A park whose connection breaks after the request was sent may still
+ * have been carried out, so the shard is asked with a FIND before the
+ * park is reported as failed.</p>
+ * <p>
+ * Spots returned by {@link #park(Vehicle)} and
+ * {@link #findVehicleLocation(String)} are copies describing the remote
+ * spot. Spot numbers are those of the shard's own lot, so use
+ * {@link #getShardIndex(String)} to tell shards apart.</p>
+ * @author Haryad
+ */
+public class ShardCoordinator implements Parkable, AutoCloseable {
+
+    // Plate index value while a zoned vehicle is being parked
+    private static final int ROUTING = -1;
+
+    /** One open connection to a worker */
+    private static final class Connection {
+        final InetSocketAddress address;
+        Socket socket;
+        DataInputStream in;
+        DataOutputStream out;
+
+        Connection(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void ensureOpen() throws IOException {
+            if (socket == null) {
+                socket = new Socket(address.getAddress(), address.getPort());
+                socket.setTcpNoDelay(true);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            }
+        }
+
+        void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already broken
+                }
+                socket = null;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reply<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private final ArrayList<ArrayBlockingQueue<Connection>> pools;
+    private final ToIntFunction<Vehicle> zoneOf;                  // Null routes by plate hash
+    private final ConcurrentHashMap<String, Integer> shardByPlate; // Used when routing by zone
+    private final ArrayList<Process> processes;                    // Workers started by launchLocal
+
+    /**
+     * Constructor for a coordinator that routes by plate hash
+     * @param shards addresses of the workers
+     * @param connectionsPerShard connections kept open to each worker
+     * @throws IOException if a worker cannot be reached
+     */
+    public ShardCoordinator(List<InetSocketAddress> shards, int connectionsPerShard) throws IOException {
+        this(shards, connectionsPerShard, null);
+    }
+
+    /**
+     * Constructor for a coordinator that routes by zone
+     * @param shards addresses of the workers, one per zone
+     * @param connectionsPerShard connections kept open to each worker
+     * @param zoneOf picks the zone a vehicle parks in, or null to route by
+     * plate hash
+     * @throws IOException if a worker cannot be reached
+     */
+    public ShardCoordinator(List<InetSocketAddress> shards, int connectionsPerShard,
+                            ToIntFunction<Vehicle> zoneOf) throws IOException {
+        if (shards.isEmpty() || connectionsPerShard < 1) {
+            throw new IllegalArgumentException("Need at least one shard and one connection");
+        }
+        this.pools = new ArrayList<>(shards.size());
+        this.zoneOf = zoneOf;
+        this.shardByPlate = new ConcurrentHashMap<>();
+        this.processes = new ArrayList<>();
+
+        for (InetSocketAddress address : shards) {
+            ArrayBlockingQueue<Connection> pool = new ArrayBlockingQueue<>(connectionsPerShard);
+            for (int i = 0; i < connectionsPerShard; i++) {
+                Connection connection = new Connection(address);
+                connection.ensureOpen();
+                pool.add(connection);
+            }
+            pools.add(pool);
+        }
+    }
+
+    /**
+     * Start worker processes on this machine, one lot each, and connect to
+     * them
+     * The workers run the same Java and class path as this process, and
+     * stop when it closes the coordinator or exits
+     * @param shardCount number of worker processes
+     * @param capacityPerShard spots in each worker's lot
+     * @param connectionsPerShard connections kept open to each worker
+     * @param zoneOf picks the zone a vehicle parks in, or null to route by
+     * plate hash
+     * @return the coordinator, which owns the processes
+     * @throws IOException if a worker cannot be started or reached
+     */
+    public static ShardCoordinator launchLocal(int shardCount, int capacityPerShard, int connectionsPerShard,
+                                               ToIntFunction<Vehicle> zoneOf) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        String classPath = System.getProperty("java.class.path");
+        ArrayList<Process> started = new ArrayList<>();
+        ArrayList<InetSocketAddress> addresses = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                Process process = new ProcessBuilder(java, "-cp", classPath, ShardWorker.class.getName(),
+                        "Shard " + i, Integer.toString(capacityPerShard))
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                started.add(process);
+            }
+            // Started together above, so the JVMs boot in parallel
+            for (Process process : started) {
+                BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String line = out.readLine();
+                if (line == null || !line.startsWith(ShardWorker.READY)) {
+                    throw new IOException("Shard worker did not start: " + line);
+                }
+                int port = Integer.parseInt(line.substring(ShardWorker.READY.length()).trim());
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            }
+
+            ShardCoordinator coordinator = new ShardCoordinator(addresses, connectionsPerShard, zoneOf);
+            coordinator.processes.addAll(started);
+            return coordinator;
+        } catch (IOException | RuntimeException e) {
+            for (Process process : started) {
+                process.destroyForcibly();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Send one request to a shard and read its reply
+     * A connection that fails is closed and reopened on its next use
+     * @throws UncheckedIOException if the shard cannot be reached
+     */
+    private <T> T call(int shard, byte op, Request request, Reply<T> reply) {
+        ArrayBlockingQueue<Connection> pool = pools.get(shard);
+        Connection connection;
+        try {
+            connection = pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for shard " + shard);
+        }
+        try {
+            connection.ensureOpen();
+            connection.out.writeByte(op);
+            request.write(connection.out);
+            connection.out.flush();
+            return reply.read(connection.in);
+        } catch (IOException e) {
+            connection.close();
+            throw new UncheckedIOException("Shard " + shard + " failed", e);
+        } finally {
+            pool.add(connection);
+        }
+    }
+
+    /**
+     * Get the shard a vehicle is routed to
+     * @param licensePlate the vehicle's license plate
+     * @return shard index, or -1 if routing by zone and the vehicle is not parked
+     */
+    public int getShardIndex(String licensePlate) {
+        if (zoneOf == null) {
+            return Math.floorMod(licensePlate.hashCode(), pools.size());
+        }
+        Integer shard = shardByPlate.get(licensePlate);
+        return (shard == null) ? -1 : shard;
+    }
+
+    /**
+     * Get the number of shards
+     * @return shard count
+     */
+    public int getShardCount() {
+        return pools.size();
+    }
+
+    @Override
+    public ParkingSpot park(Vehicle vehicle) {
+        if (vehicle == null) {
+            EventLog.log(EventType.INVALID_VEHICLE);
+            return null;
+        }
+        String plate = vehicle.getLicensePlate();
+        if (zoneOf == null) {
+            int shard = getShardIndex(plate);
+            ParkingSpot spot;
+            try {
+                spot = parkIn(shard, vehicle);
+            } catch (UncheckedIOException e) {
+                spot = findAfterFailure(shard, plate, e);
+                if (spot == null) {
+                    throw e;
+                }
+            }
+            return reportPark(spot, vehicle);
+        }
+
+        int zone = zoneOf.applyAsInt(vehicle);
+        if (zone < 0 || zone >= pools.size()) {
+            throw new IllegalArgumentException("No shard for zone " + zone);
+        }
+        if (shardByPlate.putIfAbsent(plate, ROUTING) != null) {
+            EventLog.logVehicle(EventType.ALREADY_PARKED, plate);
+            return null;
+        }
+        ParkingSpot spot = null;
+        boolean unknown = false;
+        try {
+            spot = parkIn(zone, vehicle);
+        } catch (UncheckedIOException e) {
+            unknown = true;
+            spot = findAfterFailure(zone, plate, e);
+            unknown = false;
+            if (spot == null) {
+                throw e;
+            }
+        } finally {
+            // If the shard could not be asked the vehicle may be there, and
+            // an unpark or find that sees it is not drops the entry
+            if (spot != null || unknown) {
+                shardByPlate.put(plate, zone);
+            } else {
+                shardByPlate.remove(plate, ROUTING);
+            }
+        }
+        return reportPark(spot, vehicle);
+    }
+
+    /**
+     * Find out whether a park whose reply was lost went through, since the
+     * request may have reached the worker before the connection broke
+     * @param shard the shard the vehicle was sent to
+     * @param licensePlate the vehicle's license plate
+     * @param failure the park's failure
+     * @return the spot the vehicle is parked in, or null if it is not
+     * @throws UncheckedIOException the park's failure, if the shard cannot
+     * be asked either
+     */
+    private ParkingSpot findAfterFailure(int shard, String licensePlate, UncheckedIOException failure) {
+        try {
+            return findIn(shard, licensePlate);
+        } catch (UncheckedIOException again) {
+            failure.addSuppressed(again);
+            throw failure;
+        }
+    }
+
+    private static ParkingSpot reportPark(ParkingSpot spot, Vehicle vehicle) {
+        if (spot != null) {
+            EventLog.logSpot(EventType.VEHICLE_PARKED, vehicle, spot);
+        } else {
+            EventLog.logVehicle(EventType.PARK_FAILED, vehicle.getLicensePlate());
+        }
+        return spot;
+    }
+
+    private ParkingSpot parkIn(int shard, Vehicle vehicle) {
+        return call(shard, ShardWorker.PARK, out -> VehicleCodec.write(out, vehicle), in -> {
+            boolean parked = in.readBoolean();
+            int spotNumber = in.readInt();
+            SpotSize size = SpotSize.values()[in.readUnsignedByte()];
+            return parked ? ParkingSpot.copyOf(spotNumber, size, vehicle) : null;
+        });
+    }
+
+    @Override
+    public Vehicle unpark(String licensePlate) {
+        if (licensePlate == null || licensePlate.trim().isEmpty()) {
+            EventLog.log(EventType.INVALID_PLATE);
+            return null;
+        }
+        int shard = getShardIndex(licensePlate);
+        if (shard < 0) {
+            EventLog.logVehicle(EventType.VEHICLE_NOT_FOUND, licensePlate);
+            return null;
+        }
+
+        Vehicle vehicle = call(shard, ShardWorker.UNPARK, out -> out.writeUTF(licensePlate),
+                in -> in.readBoolean() ? VehicleCodec.read(in) : null);
+        if (zoneOf != null) {
+            // Also when not found there: the entry was left by a lost reply
+            shardByPlate.remove(licensePlate, shard);
+        }
+        if (vehicle != null) {
+            EventLog.logVehicle(EventType.VEHICLE_REMOVED, licensePlate);
+        } else {
+            EventLog.logVehicle(EventType.VEHICLE_NOT_FOUND, licensePlate);
+        }
+        return vehicle;
+    }
+
+    @Override
+    public ParkingSpot findVehicleLocation(String licensePlate) {
+        if (licensePlate == null) {
+            return null;
+        }
+        int shard = getShardIndex(licensePlate);
+        if (shard < 0) {
+            return null;
+        }
+        ParkingSpot spot = findIn(shard, licensePlate);
+        if (spot == null && zoneOf != null) {
+            shardByPlate.remove(licensePlate, shard);
+        }
+        return spot;
+    }
+
+    private ParkingSpot findIn(int shard, String licensePlate) {
+        return call(shard, ShardWorker.FIND, out -> out.writeUTF(licensePlate), in -> {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            int spotNumber = in.readInt();
+            SpotSize size = SpotSize.values()[in.readUnsignedByte()];
+            return ParkingSpot.copyOf(spotNumber, size, VehicleCodec.read(in));
+        });
+    }
+
+    /**
+     * Ask every shard for its counts
+     * @return per shard {occupied, available, capacity}
+     */
+    private int[][] status() {
+        int[][] counts = new int[pools.size()][];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = call(i, ShardWorker.STATUS, out -> { }, in ->
+                    new int[] {in.readInt(), in.readInt(), in.readInt()});
+        }
+        return counts;
+    }
+
+    @Override
+    public boolean hasAvailableSpace() {
+        for (int[] shard : status()) {
+            if (shard[1] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getCurrentOccupancy() {
+        int occupied = 0;
+        for (int[] shard : status()) {
+            occupied += shard[0];
+        }
+        return occupied;
+    }
+
+    /**
+     * Override to calculate accurate occupancy rate
+     * @return occupancy percentage across all shards
+     */
+    @Override
+    public double getOccupancyRate() {
+        int occupied = 0;
+        int total = 0;
+        for (int[] shard : status()) {
+            occupied += shard[0];
+            total += shard[2];
+        }
+        return total > 0 ? (occupied * 100.0 / total) : 0.0;
+    }
+
+    /**
+     * Close every connection and stop the workers started by launchLocal
+     */
+    @Override
+    public void close() {
+        for (ArrayBlockingQueue<Connection> pool : pools) {
+            Connection connection;
+            while ((connection = pool.poll()) != null) {
+                connection.close();
+            }
+        }
+        for (Process process : processes) {
+            try {
+                // Workers exit when their standard input closes
+                process.getOutputStream().close();
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException e) {
+                process.destroyForcibly();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
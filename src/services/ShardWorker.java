@@ -0,0 +1,193 @@
+package services;
+
+import enums.EventLevel;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import models.EventLog;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Vehicle;
+
+/**
+ * Serves one lot, or one zone of a lot, to a ShardCoordinator over loopback
+ * <p>
+ * Each worker normally runs in its own JVM, so every partition has its own
+ * heap and collector. The protocol is a plain request/response exchange on
+ * a TCP connection: a one-byte operation followed by its arguments, with
+ * vehicles in the same encoding as the write-ahead log. The coordinator
+ * keeps several connections open to each worker and the worker serves each
+ * connection on a virtual thread.</p>
+ * <p>
+ * Requests and replies:</p>
+ * <pre>
+ * PARK    [vehicle]        -&gt; [bool parked][int spotNumber][byte size]
+ * UNPARK  [utf plate]      -&gt; [bool found][vehicle]
+ * FIND    [utf plate]      -&gt; [bool found][int spotNumber][byte size][vehicle]
+ * STATUS                   -&gt; [int occupied][int available][int capacity]
+ * </pre>
+ * @author Haryad
+ */
+public class ShardWorker implements AutoCloseable {
+
+    static final byte PARK = 1;
+    static final byte UNPARK = 2;
+    static final byte FIND = 3;
+    static final byte STATUS = 4;
+
+    /** Printed on standard output, followed by the port, once the worker accepts connections */
+    static final String READY = "READY ";
+
+    private final ParkingManager manager;
+    private final ServerSocket server;
+    private final ExecutorService connections;
+
+    private ShardWorker(ParkingManager manager, ServerSocket server) {
+        this.manager = manager;
+        this.server = server;
+        this.connections = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Start a worker accepting connections on the loopback interface
+     * @param manager the lot this worker serves
+     * @param port port to listen on, or 0 for any free port
+     * @return the running worker
+     * @throws IOException if the port cannot be bound
+     */
+    public static ShardWorker start(ParkingManager manager, int port) throws IOException {
+        ShardWorker worker = new ShardWorker(manager,
+                new ServerSocket(port, 128, InetAddress.getLoopbackAddress()));
+        new Thread(worker::acceptLoop, "shard-acceptor-" + worker.getPort()).start();
+        return worker;
+    }
+
+    /**
+     * Run a worker process
+     * Usage: {@code ShardWorker <name> <capacity> [port]}
+     * Reports "READY port" on standard output once it is listening, then
+     * serves until standard input is closed, which happens when the
+     * process that started it exits
+     * @param args name, capacity and optional port
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ShardWorker <name> <capacity> [port]");
+            System.exit(1);
+        }
+        // Standard output carries the READY line, and a shard has no console
+        EventLog.setLevel(EventLevel.OFF);
+
+        ParkingLot lot = new ParkingLot(args[0], Integer.parseInt(args[1]));
+        int port = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+        ShardWorker worker = start(new ParkingManager(lot), port);
+        System.out.println(READY + worker.getPort());
+        System.out.flush();
+
+        while (System.in.read() >= 0) {
+            // Nothing is expected on standard input
+        }
+        worker.close();
+        System.exit(0);
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                // Closed by close(), or a failed accept; keep going until closed
+            }
+        }
+    }
+
+    /**
+     * Answer requests on one connection until the coordinator hangs up
+     * @param socket the connection
+     */
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                handle(op, in, out);
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // Connection reset by the coordinator
+        } catch (IOException e) {
+            System.err.println("Shard connection failed: " + e.getMessage());
+        }
+    }
+
+    private void handle(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case PARK -> {
+                ParkingSpot spot = manager.park(VehicleCodec.read(in));
+                out.writeBoolean(spot != null);
+                out.writeInt(spot != null ? spot.getSpotNumber() : 0);
+                out.writeByte(spot != null ? spot.getSize().ordinal() : 0);
+            }
+            case UNPARK -> {
+                Vehicle vehicle = manager.unpark(in.readUTF());
+                out.writeBoolean(vehicle != null);
+                if (vehicle != null) {
+                    VehicleCodec.write(out, vehicle);
+                }
+            }
+            case FIND -> {
+                ParkingSpot spot = manager.findVehicleLocation(in.readUTF());
+                Vehicle vehicle = (spot != null) ? spot.getCurrentVehicle() : null;
+                out.writeBoolean(vehicle != null);
+                if (vehicle != null) {
+                    out.writeInt(spot.getSpotNumber());
+                    out.writeByte(spot.getSize().ordinal());
+                    VehicleCodec.write(out, vehicle);
+                }
+            }
+            case STATUS -> {
+                ParkingLot lot = manager.getParkingLot();
+                out.writeInt(lot.getOccupiedSpotsCount());
+                out.writeInt(lot.getAvailableSpotsCount());
+                out.writeInt(lot.getTotalCapacity());
+            }
+            default ->
+                throw new IOException("Unknown shard operation " + op);
+        }
+    }
+
+    /**
+     * Get the port the worker listens on
+     * @return the port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Stop accepting connections and close the open ones
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdownNow();
+    }
+}
@@ -0,0 +1,248 @@
+package services;
+
+import enums.SpotSize;
+import enums.SpotStatus;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Ticket;
+import models.Vehicle;
+
+/**
+ * Compact binary snapshots of lot and ticket state
+ * <p>
+ * A snapshot holds every spot (number, size, status and the parked vehicle,
+ * if any), the open tickets (active, or completed and not yet paid) and the
+ * revenue totals. It is named after the last log sequence number it
+ * contains, so startup loads it and replays only the log after that
+ * number. Files are written to a temporary name through a FileChannel,
+ * fsynced and then renamed, so a crash never leaves half a snapshot.</p>
+ * <p>
+ * Layout: {@code [int magic][short version][long lsn][int spotCount]}, then
+ * per spot {@code [int number][byte size][byte status][byte hasVehicle]
+ * [vehicle]}, then {@code [int ticketCount]} and the tickets, then the
+ * revenue totals.</p>
+ * @author Haryad
+ */
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x50534E50;     // "PSNP"
+    private static final short VERSION = 2;          // 2: fees in cents
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    // How the vehicle of a ticket is stored
+    private static final byte VEHICLE_IN_SPOT = 0;
+    private static final byte VEHICLE_FOLLOWS = 1;
+
+    private final Path directory;
+
+    /**
+     * Constructor for SnapshotStore
+     * @param directory directory for snapshot files, created if missing
+     * @throws IOException if the directory cannot be created
+     */
+    public SnapshotStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Write a snapshot and remove the older ones
+     * The lot and tickets must not change while this runs; the Checkpointer
+     * writes from a private copy rebuilt from the log
+     * @param lsn last log sequence number reflected in the state
+     * @param parkingLot the lot to save
+     * @param ticketGenerator the tickets to save
+     * @return the snapshot file
+     * @throws IOException if writing fails
+     */
+    public Path write(long lsn, ParkingLot parkingLot, TicketGenerator ticketGenerator) throws IOException {
+        Path target = snapshotPath(lsn);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(lsn);
+
+            ArrayList<ParkingSpot> spots = parkingLot.getSpots();
+            out.writeInt(spots.size());
+            for (ParkingSpot spot : spots) {
+                Vehicle vehicle = spot.getCurrentVehicle();
+                out.writeInt(spot.getSpotNumber());
+                out.writeByte(spot.getSize().ordinal());
+                out.writeByte(spot.getStatus().ordinal());
+                out.writeBoolean(vehicle != null);
+                if (vehicle != null) {
+                    VehicleCodec.write(out, vehicle);
+                }
+            }
+
+            ArrayList<Ticket> open = ticketGenerator.getActiveTickets();
+            for (Ticket ticket : ticketGenerator.getCompletedTickets()) {
+                if (!ticket.isPaid()) {
+                    open.add(ticket);
+                }
+            }
+            out.writeInt(open.size());
+            for (Ticket ticket : open) {
+                writeTicket(out, ticket);
+            }
+
+            ticketGenerator.getRevenueSummary().writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long older : listSnapshots()) {
+            if (older < lsn) {
+                Files.deleteIfExists(snapshotPath(older));
+            }
+        }
+        return target;
+    }
+
+    private static void writeTicket(DataOutputStream out, Ticket ticket) throws IOException {
+        Vehicle vehicle = ticket.getVehicle();
+        ParkingSpot spot = ticket.getParkingSpot();
+        out.writeUTF(ticket.getTicketId());
+        out.writeInt(spot.getSpotNumber());
+        out.writeLong(ticket.getEntryTime());
+        out.writeLong(ticket.getExitTime());
+        out.writeLong(ticket.getParkingFeeCents());
+        out.writeBoolean(ticket.isPaid());
+        if (spot.getCurrentVehicle() == vehicle) {
+            out.writeByte(VEHICLE_IN_SPOT);
+        } else {
+            out.writeByte(VEHICLE_FOLLOWS);
+            VehicleCodec.write(out, vehicle);
+        }
+    }
+
+    /**
+     * Load the newest snapshot into a freshly built lot and ticket generator
+     * @param parkingLot an empty lot with the same layout as the saved one
+     * @param ticketGenerator an empty ticket generator
+     * @return sequence number of the snapshot, or 0 if there is none
+     * @throws IOException if the snapshot cannot be read
+     */
+    public long loadLatest(ParkingLot parkingLot, TicketGenerator ticketGenerator) throws IOException {
+        long lsn = getLatestLsn();
+        if (lsn == 0) {
+            return 0;
+        }
+
+        SpotSize[] sizes = SpotSize.values();
+        SpotStatus[] statuses = SpotStatus.values();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(snapshotPath(lsn)), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION || in.readLong() != lsn) {
+                throw new IOException("Not a snapshot, or unsupported version: " + snapshotPath(lsn));
+            }
+
+            int spotCount = in.readInt();
+            for (int i = 0; i < spotCount; i++) {
+                ParkingSpot spot = parkingLot.findSpotByNumber(in.readInt());
+                SpotSize size = sizes[in.readUnsignedByte()];
+                SpotStatus status = statuses[in.readUnsignedByte()];
+                Vehicle vehicle = in.readBoolean() ? VehicleCodec.read(in) : null;
+                if (spot == null || spot.getSize() != size) {
+                    throw new IOException("Snapshot does not match the lot layout at spot " + i);
+                }
+                restoreSpot(spot, status, vehicle);
+            }
+
+            int ticketCount = in.readInt();
+            for (int i = 0; i < ticketCount; i++) {
+                String ticketId = in.readUTF();
+                ParkingSpot spot = parkingLot.findSpotByNumber(in.readInt());
+                long entryTime = in.readLong();
+                long exitTime = in.readLong();
+                long feeCents = in.readLong();
+                boolean paid = in.readBoolean();
+                Vehicle vehicle = (in.readByte() == VEHICLE_IN_SPOT)
+                        ? spot.getCurrentVehicle() : VehicleCodec.read(in);
+
+                ticketGenerator.restoreTicket(ticketId, vehicle, spot, entryTime);
+                if (exitTime != 0) {
+                    ticketGenerator.restoreCompletion(ticketId, exitTime, feeCents);
+                }
+                if (paid) {
+                    ticketGenerator.restorePayment(ticketId);
+                }
+            }
+
+            // The saved totals also cover tickets that are no longer open
+            ticketGenerator.restoreSummary(RevenueSummary.readFrom(in));
+        }
+        return lsn;
+    }
+
+    private static void restoreSpot(ParkingSpot spot, SpotStatus status, Vehicle vehicle) {
+        switch (status) {
+            case OCCUPIED -> {
+                if (vehicle != null) {
+                    spot.parkVehicle(vehicle);
+                }
+            }
+            case RESERVED ->
+                spot.reserve();
+            case OUT_OF_SERVICE ->
+                spot.markOutOfService();
+            default -> {
+                // Spots start out available
+            }
+        }
+    }
+
+    /**
+     * Get the sequence number of the newest snapshot
+     * @return its LSN, or 0 if there is no snapshot
+     * @throws IOException if the directory cannot be listed
+     */
+    public long getLatestLsn() throws IOException {
+        ArrayList<Long> snapshots = listSnapshots();
+        return snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+    }
+
+    private ArrayList<Long> listSnapshots() throws IOException {
+        ArrayList<Long> snapshots = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    try {
+                        snapshots.add(Long.parseLong(
+                                name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            });
+        }
+        snapshots.sort(null);
+        return snapshots;
+    }
+
+    private Path snapshotPath(long lsn) {
+        return directory.resolve(PREFIX + String.format("%020d", lsn) + SUFFIX);
+    }
+}
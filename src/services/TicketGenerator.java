@@ -1,24 +1,45 @@
 package services;
 
+import enums.EventType;
+import interfaces.TicketListener;
+import models.EventLog;
+import models.Money;
 import models.Ticket;
 import models.Vehicle;
 import models.ParkingSpot;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Service class for generating and managing parking tickets
- * Maintains a registry of all issued tickets using ArrayList only
+ * Active tickets are indexed by license plate and every ticket by ID, so
+ * lookups and exits stay constant-time however many tickets were issued
+ * Totals are kept as running aggregates in an immutable RevenueSummary
+ * Safe to share between gate threads
  * @author Helen
  * @author Haryad
  */
 public class TicketGenerator {
     
-    private ArrayList<Ticket> activeTickets;
-    private ArrayList<Ticket> completedTickets;
+    // Issue order, used when listing tickets from the hash indexes
+    private static final Comparator<Ticket> ISSUE_ORDER =
+            Comparator.comparingLong(Ticket::getEntryTime).thenComparing(Ticket::getTicketId);
+    
+    private final ConcurrentHashMap<String, Ticket> activeTicketsByPlate;
+    private final ConcurrentHashMap<String, Ticket> ticketsById;
+    private final ArrayList<Ticket> completedTickets;
+    private final AtomicReference<RevenueSummary> revenue;
+    private final TicketListener paymentListener;
+    private volatile WriteAheadLog writeAheadLog;
     
     public TicketGenerator() {
-        this.activeTickets = new ArrayList<>();
+        this.activeTicketsByPlate = new ConcurrentHashMap<>();
+        this.ticketsById = new ConcurrentHashMap<>();
         this.completedTickets = new ArrayList<>();
+        this.revenue = new AtomicReference<>(RevenueSummary.EMPTY);
+        this.paymentListener = this::recordPayment;
     }
     
     /**
@@ -29,22 +50,27 @@ public class TicketGenerator {
      */
     public Ticket generateTicket(Vehicle vehicle, ParkingSpot spot) {
         if (vehicle == null || spot == null) {
-            System.out.println("ERROR: Cannot generate ticket - invalid vehicle or spot");
+            EventLog.log(EventType.INVALID_TICKET);
             return null;
         }
         
         // Check if vehicle already has an active ticket
         if (findActiveTicketByPlate(vehicle.getLicensePlate()) != null) {
-            System.out.println("ERROR: Vehicle " + vehicle.getLicensePlate() + 
-                             " already has an active ticket");
+            EventLog.logVehicle(EventType.DUPLICATE_TICKET, vehicle.getLicensePlate());
             return null;
         }
         
         Ticket ticket = new Ticket(vehicle, spot);
-        activeTickets.add(ticket);
+        if (activeTicketsByPlate.putIfAbsent(vehicle.getLicensePlate(), ticket) != null) {
+            // Another gate issued one for this plate since the check above
+            EventLog.logVehicle(EventType.DUPLICATE_TICKET, vehicle.getLicensePlate());
+            return null;
+        }
+        ticketsById.put(ticket.getTicketId(), ticket);
+        ticket.setListener(paymentListener);
+        logEvent(LogRecord.ticketIssued(ticket));
         
-        System.out.println("Ticket generated: " + ticket.getTicketId() + 
-                         " for vehicle " + vehicle.getLicensePlate());
+        EventLog.logTicket(EventType.TICKET_ISSUED, ticket);
         
         return ticket;
     }
@@ -55,35 +81,151 @@ public class TicketGenerator {
      * @return the completed Ticket, or null if not found
      */
     public Ticket completeTicket(String licensePlate) {
-        Ticket ticket = findActiveTicketByPlate(licensePlate);
+        // Removing from the index makes sure only one exit completes it
+        Ticket ticket = (licensePlate == null) ? null : activeTicketsByPlate.remove(licensePlate);
         
         if (ticket == null) {
-            System.out.println("ERROR: No active ticket found for " + licensePlate);
+            EventLog.logVehicle(EventType.TICKET_NOT_FOUND, licensePlate);
             return null;
         }
         
-        ticket.completeTicket();
-        activeTickets.remove(ticket);
-        completedTickets.add(ticket);
+        // Locked so a payment arriving now is counted exactly once
+        ticket.getLock().lock();
+        try {
+            ticket.completeTicket();
+            revenue.updateAndGet(summary -> summary.withCompleted(ticket));
+            logEvent(LogRecord.ticketCompleted(ticket));
+        } finally {
+            ticket.getLock().unlock();
+        }
+        synchronized (completedTickets) {
+            completedTickets.add(ticket);
+        }
         
-        System.out.println("Ticket completed: " + ticket.getTicketId());
+        EventLog.logTicket(EventType.TICKET_COMPLETED, ticket);
         
         return ticket;
     }
     
+    /**
+     * Move a paid ticket's fee into revenue
+     * Called by the ticket with its lock held; payments made before the
+     * ticket is completed are picked up by completeTicket instead
+     * @param ticket the ticket that was paid
+     */
+    private void recordPayment(Ticket ticket) {
+        logEvent(LogRecord.ticketPaid(ticket));
+        if (!ticket.isActive()) {
+            revenue.updateAndGet(summary -> summary.withPaid(ticket));
+        }
+    }
+    
+    /**
+     * Append an event to the write-ahead log, if one is attached
+     * @param record the event
+     */
+    private void logEvent(LogRecord record) {
+        WriteAheadLog log = writeAheadLog;
+        if (log != null) {
+            log.append(record);
+        }
+    }
+    
+    /**
+     * Attach a write-ahead log that receives every ticket event
+     * Attach it after recovery, so replayed events are not logged twice
+     * @param writeAheadLog the log, or null to stop logging
+     */
+    public void setWriteAheadLog(WriteAheadLog writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+    }
+    
+    /**
+     * Put back a ticket issued before a restart, without printing or logging
+     * Does nothing if a ticket with that ID is already known
+     * @param ticketId the original ticket ID
+     * @param vehicle the vehicle
+     * @param spot the spot the vehicle was parked in
+     * @param entryTime the original entry time
+     * @return the restored (or already known) ticket
+     */
+    public Ticket restoreTicket(String ticketId, Vehicle vehicle, ParkingSpot spot, long entryTime) {
+        checkRestoreAllowed();
+        Ticket known = ticketsById.get(ticketId);
+        if (known != null) {
+            return known;
+        }
+        Ticket ticket = new Ticket(ticketId, vehicle, spot, entryTime);
+        ticket.setListener(paymentListener);
+        ticketsById.put(ticketId, ticket);
+        activeTicketsByPlate.put(vehicle.getLicensePlate(), ticket);
+        return ticket;
+    }
+    
+    /**
+     * Put back the completion of a ticket, without printing or logging
+     * @param ticketId the ticket ID
+     * @param exitTime the original exit time
+     * @param feeCents the fee charged at exit, in cents
+     * @return true if the ticket was active and is now completed
+     */
+    public boolean restoreCompletion(String ticketId, long exitTime, long feeCents) {
+        checkRestoreAllowed();
+        Ticket ticket = ticketsById.get(ticketId);
+        if (ticket == null || !ticket.isActive()) {
+            return false;
+        }
+        activeTicketsByPlate.remove(ticket.getVehicle().getLicensePlate(), ticket);
+        ticket.getLock().lock();
+        try {
+            ticket.restoreCompletion(exitTime, feeCents);
+            revenue.updateAndGet(summary -> summary.withCompleted(ticket));
+        } finally {
+            ticket.getLock().unlock();
+        }
+        synchronized (completedTickets) {
+            completedTickets.add(ticket);
+        }
+        return true;
+    }
+    
+    /**
+     * Put back the payment of a ticket, without printing or logging
+     * @param ticketId the ticket ID
+     * @return true if the ticket was unpaid and is now paid
+     */
+    public boolean restorePayment(String ticketId) {
+        checkRestoreAllowed();
+        Ticket ticket = ticketsById.get(ticketId);
+        return ticket != null && ticket.markAsPaid();
+    }
+    
+    /**
+     * Replace the running totals with ones loaded from a snapshot
+     * @param summary the restored totals
+     */
+    void restoreSummary(RevenueSummary summary) {
+        checkRestoreAllowed();
+        revenue.set(summary);
+    }
+    
+    private void checkRestoreAllowed() {
+        if (writeAheadLog != null) {
+            throw new IllegalStateException("Restore tickets before attaching the write-ahead log");
+        }
+    }
+    
     /**
      * Find an active ticket by license plate
-     * Uses simple loop through ArrayList
+     * Uses the plate index
      * @param licensePlate the vehicle's license plate
      * @return the active Ticket, or null if not found
      */
     private Ticket findActiveTicketByPlate(String licensePlate) {
-        for (Ticket ticket : activeTickets) {
-            if (ticket.getVehicle().getLicensePlate().equals(licensePlate)) {
-                return ticket;
-            }
+        if (licensePlate == null) {
+            return null;
         }
-        return null;
+        return activeTicketsByPlate.get(licensePlate);
     }
     
     /**
@@ -101,37 +243,30 @@ public class TicketGenerator {
      * @return the Ticket, or null if not found
      */
     public Ticket findTicketById(String ticketId) {
-        // Search active tickets
-        for (Ticket ticket : activeTickets) {
-            if (ticket.getTicketId().equals(ticketId)) {
-                return ticket;
-            }
-        }
-        
-        // Search completed tickets
-        for (Ticket ticket : completedTickets) {
-            if (ticket.getTicketId().equals(ticketId)) {
-                return ticket;
-            }
+        if (ticketId == null) {
+            return null;
         }
-        
-        return null;
+        return ticketsById.get(ticketId);
     }
     
     /**
-     * Get all active tickets
+     * Get all active tickets in issue order
      * @return ArrayList of active tickets
      */
     public ArrayList<Ticket> getActiveTickets() {
-        return new ArrayList<>(activeTickets);
+        ArrayList<Ticket> tickets = new ArrayList<>(activeTicketsByPlate.values());
+        tickets.sort(ISSUE_ORDER);
+        return tickets;
     }
     
     /**
-     * Get all completed tickets
-     * @return ArrayList of completed tickets
+     * Get all completed tickets in completion order
+     * @return copy of the completed tickets
      */
     public ArrayList<Ticket> getCompletedTickets() {
-        return completedTickets;
+        synchronized (completedTickets) {
+            return new ArrayList<>(completedTickets);
+        }
     }
     
     /**
@@ -139,7 +274,7 @@ public class TicketGenerator {
      * @return number of active tickets
      */
     public int getActiveTicketCount() {
-        return activeTickets.size();
+        return activeTicketsByPlate.size();
     }
     
     /**
@@ -147,33 +282,59 @@ public class TicketGenerator {
      * @return number of completed tickets
      */
     public int getCompletedTicketCount() {
-        return completedTickets.size();
+        synchronized (completedTickets) {
+            return completedTickets.size();
+        }
+    }
+    
+    /**
+     * Get a consistent snapshot of all running totals
+     * @return the current revenue summary
+     */
+    public RevenueSummary getRevenueSummary() {
+        return revenue.get();
+    }
+    
+    /**
+     * Get total revenue from all paid completed tickets
+     * @return total revenue in cents
+     */
+    public long getTotalRevenueCents() {
+        return revenue.get().getTotalRevenueCents();
+    }
+    
+    /**
+     * Get total unpaid fees from completed tickets
+     * @return total unpaid amount in cents
+     */
+    public long getTotalUnpaidCents() {
+        return revenue.get().getTotalUnpaidCents();
     }
     
     /**
-     * Calculate total revenue from all completed tickets
-     * @return total revenue
+     * Get total revenue from all paid completed tickets
+     * @return total revenue in dollars
      */
     public double getTotalRevenue() {
-        double total = 0.0;
-        for (Ticket ticket : completedTickets) {
-            if (ticket.isPaid()) {
-                total += ticket.getParkingFee();
-            }
-        }
-        return total;
+        return revenue.get().getTotalRevenue();
     }
     
     /**
-     * Calculate total unpaid fees from completed tickets
-     * @return total unpaid amount
+     * Get total unpaid fees from completed tickets
+     * @return total unpaid amount in dollars
      */
     public double getTotalUnpaid() {
-        double total = 0.0;
-        for (Ticket ticket : completedTickets) {
-            if (!ticket.isPaid()) {
-                total += ticket.getParkingFee();
-            }
+        return revenue.get().getTotalUnpaid();
+    }
+    
+    /**
+     * Get what all active tickets owe now, worked out in one pass
+     * @return total amount due in cents
+     */
+    public long getTotalAmountDueCents() {
+        long total = 0;
+        for (long amount : Ticket.calculateAmountsDue(getActiveTickets(), System.currentTimeMillis())) {
+            total += amount;
         }
         return total;
     }
@@ -182,6 +343,7 @@ public class TicketGenerator {
      * Display all active tickets
      */
     public void displayActiveTickets() {
+        ArrayList<Ticket> activeTickets = getActiveTickets();
         System.out.println("\n========== ACTIVE TICKETS ==========");
         if (activeTickets.isEmpty()) {
             System.out.println("No active tickets");
@@ -198,11 +360,13 @@ public class TicketGenerator {
      * Display ticket statistics
      */
     public void displayStatistics() {
+        RevenueSummary summary = getRevenueSummary();
         System.out.println("\n========== TICKET STATISTICS ==========");
         System.out.println("Active Tickets: " + getActiveTicketCount());
-        System.out.println("Completed Tickets: " + getCompletedTicketCount());
-        System.out.println("Total Revenue (Paid): $" + String.format("%.2f", getTotalRevenue()));
-        System.out.println("Total Unpaid: $" + String.format("%.2f", getTotalUnpaid()));
+        System.out.println("Completed Tickets: " + summary.getCompletedCount());
+        System.out.println("Total Revenue (Paid): $" + Money.format(summary.getTotalRevenueCents()));
+        System.out.println("Total Unpaid: $" + Money.format(summary.getTotalUnpaidCents()));
+        System.out.println("Amount Due (Active): $" + Money.format(getTotalAmountDueCents()));
         System.out.println("=======================================\n");
     }
 }
\ No newline at end of file
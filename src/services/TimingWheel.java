@@ -0,0 +1,141 @@
+package services;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel for the reservation deadlines
+ * <p>
+ * Time is cut into ticks and each tick maps to one bucket of a fixed ring,
+ * so scheduling and cancelling are O(1) and a tick only visits the timers
+ * in its own bucket. Timers further out than one turn of the ring carry a
+ * count of turns still to wait. Any thread may schedule; timers are handed
+ * over through a queue and only the thread advancing the wheel touches
+ * the buckets. Cancelled timers are dropped when their bucket comes up.</p>
+ *
+ * @author Haryad
+ */
+final class TimingWheel {
+
+    /** A task due at a given time */
+    static final class Timeout {
+        private final long deadline;
+        private final Runnable task;
+        private long rounds;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Stop the task from running, if it has not run yet
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long origin;
+    private final long tickMillis;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final int shift;
+    private final ConcurrentLinkedQueue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private long tick;   // Next tick to run, guarded by this
+
+    /**
+     * Constructor for TimingWheel
+     *
+     * @param origin time of tick 0 in milliseconds
+     * @param tickMillis length of a tick
+     * @param bucketCount buckets in the ring, a power of two
+     */
+    TimingWheel(long origin, long tickMillis, int bucketCount) {
+        if (Integer.bitCount(bucketCount) != 1) {
+            throw new IllegalArgumentException("Bucket count must be a power of two: " + bucketCount);
+        }
+        this.origin = origin;
+        this.tickMillis = tickMillis;
+        this.buckets = new Timeout[bucketCount];
+        this.mask = bucketCount - 1;
+        this.shift = Integer.numberOfTrailingZeros(bucketCount);
+    }
+
+    /**
+     * Run a task at a given time. A time already past runs on the next
+     * tick.
+     *
+     * @param deadline time in milliseconds
+     * @param task the task, run on the thread that advances the wheel
+     * @return the timer, for cancelling it
+     */
+    Timeout schedule(long deadline, Runnable task) {
+        Timeout timeout = new Timeout(deadline, task);
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Run every tick up to a given time, with the tasks due in them
+     *
+     * @param now the time in milliseconds
+     * @return number of tasks run
+     */
+    synchronized int advance(long now) {
+        int ran = 0;
+        while (origin + tick * tickMillis <= now) {
+            transferIncoming();
+            ran += expire((int) (tick & mask));
+            tick++;
+        }
+        return ran;
+    }
+
+    /**
+     * Place the newly scheduled timers in their buckets
+     */
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long due = Math.max(tick, Math.ceilDiv(timeout.deadline - origin, tickMillis));
+            timeout.rounds = (due - tick) >>> shift;
+            int bucket = (int) (due & mask);
+            timeout.next = buckets[bucket];
+            buckets[bucket] = timeout;
+        }
+    }
+
+    /**
+     * Run the timers of a bucket that are due on this turn of the ring
+     */
+    private int expire(int bucket) {
+        int ran = 0;
+        Timeout previous = null;
+        Timeout timeout = buckets[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.cancelled || timeout.rounds == 0) {
+                if (previous == null) {
+                    buckets[bucket] = next;
+                } else {
+                    previous.next = next;
+                }
+                timeout.next = null;
+                if (!timeout.cancelled) {
+                    timeout.task.run();
+                    ran++;
+                }
+            } else {
+                timeout.rounds--;
+                previous = timeout;
+            }
+            timeout = next;
+        }
+        return ran;
+    }
+}
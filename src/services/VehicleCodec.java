@@ -0,0 +1,89 @@
+package services;
+
+import enums.VehicleType;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import models.Car;
+import models.Motorcycle;
+import models.Truck;
+import models.Vehicle;
+
+/**
+ * Binary encoding of vehicles for the log and other on-disk or on-wire formats
+ * Writes the common fields followed by the fields of the concrete subclass
+ * @author Haryad
+ */
+final class VehicleCodec {
+    
+    private VehicleCodec() {
+    }
+    
+    /**
+     * Write a vehicle
+     * @param out destination
+     * @param vehicle the vehicle to write
+     * @throws IOException if writing fails
+     */
+    static void write(DataOutput out, Vehicle vehicle) throws IOException {
+        out.writeByte(vehicle.getType().ordinal());
+        out.writeUTF(vehicle.getLicensePlate());
+        writeNullable(out, vehicle.getColor());
+        writeNullable(out, vehicle.getBrand());
+        writeNullable(out, vehicle.getModel());
+        out.writeInt(vehicle.getYear());
+        
+        switch (vehicle.getType()) {
+            case MOTORCYCLE ->
+                out.writeBoolean(((Motorcycle) vehicle).getHasSidecar());
+            case TRUCK ->
+                out.writeDouble(((Truck) vehicle).getWeightInTon());
+            default -> {
+                // Cars have no extra fields
+            }
+        }
+    }
+    
+    /**
+     * Read a vehicle written by {@link #write}
+     * @param in source
+     * @return the vehicle
+     * @throws IOException if reading fails or the data is invalid
+     */
+    static Vehicle read(DataInput in) throws IOException {
+        VehicleType type = readType(in.readUnsignedByte());
+        String licensePlate = in.readUTF();
+        String color = readNullable(in);
+        String brand = readNullable(in);
+        String model = readNullable(in);
+        int year = in.readInt();
+        
+        return switch (type) {
+            case MOTORCYCLE ->
+                new Motorcycle(licensePlate, color, brand, model, year, in.readBoolean());
+            case TRUCK ->
+                new Truck(licensePlate, color, brand, model, year, in.readDouble());
+            default ->
+                new Car(licensePlate, color, brand, model, year);
+        };
+    }
+    
+    private static VehicleType readType(int ordinal) throws IOException {
+        VehicleType[] types = VehicleType.values();
+        if (ordinal >= types.length) {
+            throw new IOException("Unknown vehicle type " + ordinal);
+        }
+        return types[ordinal];
+    }
+    
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
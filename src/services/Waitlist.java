@@ -0,0 +1,189 @@
+package services;
+
+import enums.EventType;
+import enums.SpotSize;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import models.EventLog;
+import models.ParkingSpot;
+import models.Vehicle;
+
+/**
+ * Vehicles waiting for a spot of a full lot, first come first served
+ * <p>
+ * There is one queue per spot size. A freed spot goes to the oldest
+ * waiter across the queues of sizes it can hold, so a large spot may serve
+ * a car that has waited longer than any truck. Each waiter is claimed with
+ * a compare-and-set before a spot is given to it, so a timeout, a caller
+ * giving up and a hand-over never all win. Waiters that timed out are
+ * left in their queue and skipped when they reach the front.</p>
+ *
+ * @author Haryad
+ */
+final class Waitlist {
+
+    private static final int WAITING = 0;
+    private static final int SERVING = 1;
+    private static final int DONE = 2;
+
+    /** A vehicle waiting for a spot and the future it is handed over in */
+    static final class Waiter {
+        final Vehicle vehicle;
+        final SpotSize size;
+        final CompletableFuture<ParkingSpot> future = new CompletableFuture<>();
+        private final long sequence;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        // Set when its time runs out, even while it is claimed
+        private volatile boolean timedOut;
+
+        private Waiter(Vehicle vehicle, SpotSize size, long sequence) {
+            this.vehicle = vehicle;
+            this.size = size;
+            this.sequence = sequence;
+        }
+    }
+
+    private final List<ConcurrentLinkedDeque<Waiter>> queues;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    Waitlist() {
+        int sizes = SpotSize.values().length;
+        queues = new ArrayList<>(sizes);
+        for (int i = 0; i < sizes; i++) {
+            queues.add(new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    /**
+     * Put a vehicle at the back of the queue for its size
+     *
+     * @param vehicle the vehicle
+     * @param size the smallest spot size it fits
+     * @param timeout how long it waits
+     * @param unit unit of the timeout
+     * @return future completed with its spot, or with null once it stops
+     * waiting
+     */
+    CompletableFuture<ParkingSpot> add(Vehicle vehicle, SpotSize size, long timeout, TimeUnit unit) {
+        Waiter waiter = new Waiter(vehicle, size, sequence.incrementAndGet());
+        waiting.incrementAndGet();
+        queues.get(size.ordinal()).addLast(waiter);
+        CompletableFuture.delayedExecutor(timeout, unit).execute(() -> {
+            waiter.timedOut = true;
+            if (finish(waiter, null)) {
+                EventLog.logVehicle(EventType.WAIT_TIMED_OUT, vehicle.getLicensePlate());
+            }
+        });
+        // A caller cancelling the future stops waiting too
+        waiter.future.whenComplete((spot, failure) -> {
+            if (waiter.state.compareAndSet(WAITING, DONE)) {
+                waiting.decrementAndGet();
+            }
+        });
+        return waiter.future;
+    }
+
+    /**
+     * Check whether anyone is waiting
+     *
+     * @return true if no vehicle is waiting
+     */
+    boolean isEmpty() {
+        return waiting.get() == 0;
+    }
+
+    /**
+     * Number of vehicles waiting for a size
+     *
+     * @param size the spot size
+     * @return waiters still in that queue
+     */
+    int getWaitingCount(SpotSize size) {
+        int count = 0;
+        for (Waiter waiter : queues.get(size.ordinal())) {
+            if (waiter.state.get() == WAITING) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Take the oldest waiter a spot of a size can hold. The caller must
+     * then either complete it or put it back.
+     *
+     * @param spotSize the spot size
+     * @return the waiter, or null if nobody waiting fits
+     */
+    Waiter claim(SpotSize spotSize) {
+        while (!isEmpty()) {
+            ConcurrentLinkedDeque<Waiter> oldest = null;
+            long oldestSequence = Long.MAX_VALUE;
+            for (int i = 0; i <= spotSize.ordinal(); i++) {
+                Waiter head = firstWaiting(queues.get(i));
+                if (head != null && head.sequence < oldestSequence) {
+                    oldest = queues.get(i);
+                    oldestSequence = head.sequence;
+                }
+            }
+            if (oldest == null) {
+                return null;
+            }
+            Waiter waiter = oldest.pollFirst();
+            if (waiter != null && waiter.state.compareAndSet(WAITING, SERVING)) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Put a claimed waiter back at the front of its queue, or let it go if
+     * its time ran out meanwhile. Nothing is done if its timeout already
+     * finished it, so it is never counted out twice.
+     *
+     * @param waiter the waiter
+     */
+    void putBack(Waiter waiter) {
+        if (!waiter.state.compareAndSet(SERVING, WAITING)) {
+            return;
+        }
+        // A timeout or cancel that came while it was claimed found it taken
+        if (waiter.timedOut || waiter.future.isDone()) {
+            finish(waiter, null);
+            return;
+        }
+        queues.get(waiter.size.ordinal()).addFirst(waiter);
+    }
+
+    /**
+     * Complete a claimed or waiting waiter
+     *
+     * @param waiter the waiter
+     * @param spot its spot, or null if it got none
+     * @return true if the caller received it; false if it had already
+     * stopped waiting
+     */
+    boolean finish(Waiter waiter, ParkingSpot spot) {
+        if (waiter.state.compareAndSet(WAITING, DONE) || waiter.state.compareAndSet(SERVING, DONE)) {
+            waiting.decrementAndGet();
+            return waiter.future.complete(spot);
+        }
+        return false;
+    }
+
+    private static Waiter firstWaiting(ConcurrentLinkedDeque<Waiter> queue) {
+        Waiter head;
+        while ((head = queue.peekFirst()) != null && head.state.get() != WAITING) {
+            // Timed out or given up; drop it on the way
+            queue.remove(head);
+        }
+        return head;
+    }
+}
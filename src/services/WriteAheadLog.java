@@ -0,0 +1,554 @@
+package services;
+
+import enums.LogEventType;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented write-ahead log of parking and ticket events
+ * <p>
+ * {@link #append} returns only once the record is on disk. Appends use group
+ * commit: while one caller writes and fsyncs a batch, callers arriving in the
+ * meantime add their records to the next batch and wait. Whoever finds no
+ * write in progress becomes the leader and flushes everything that has
+ * piled up with a single fsync, so a busy lot pays for far fewer fsyncs than
+ * it has events and no background thread is needed.</p>
+ * <p>
+ * Files are named {@code wal-<first LSN>.log}. Each starts with a short
+ * header, followed by records of the form
+ * {@code [int length][long lsn][byte type][payload][int crc32]}. A torn
+ * record at the end of the last segment, left by a crash, is cut off when
+ * the log is opened.</p>
+ * @author Haryad
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x5057414C;     // "PWAL"
+    private static final short VERSION = 2;          // 2: fees in cents
+    private static final int HEADER_SIZE = 6;
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final CRC32 crc = new CRC32();
+
+    // Guarded by lock
+    private ByteBuffer pending;     // Records waiting for the next flush
+    private ByteBuffer writing;     // Batch being written by the leader
+    private long lastLsn;
+    private long durableLsn;
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;    // Once set, the log refuses new records
+
+    // Only touched by the current leader, or under lock when not flushing
+    private FileChannel channel;
+    private long segmentBytes;
+
+    /**
+     * Open the log in a directory with the default segment size
+     * @param directory directory holding the segments, created if missing
+     * @throws IOException if the log cannot be opened
+     */
+    public WriteAheadLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open the log in a directory
+     * @param directory directory holding the segments, created if missing
+     * @param segmentSize size in bytes after which a new segment is started
+     * @throws IOException if the log cannot be opened
+     */
+    public WriteAheadLog(Path directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.pending = ByteBuffer.allocate(64 * 1024);
+        this.writing = ByteBuffer.allocate(64 * 1024);
+        Files.createDirectories(directory);
+
+        ArrayList<Long> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            openSegment(1);
+            this.lastLsn = 0;
+        } else {
+            long firstLsn = segments.get(segments.size() - 1);
+            Path file = segmentPath(directory, firstLsn);
+            SegmentScan scan = scanSegment(file, firstLsn, Long.MAX_VALUE, Long.MAX_VALUE, null);
+            this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            // Cut off a torn record left by a crash before appending after it
+            channel.truncate(scan.validBytes);
+            channel.position(scan.validBytes);
+            this.segmentBytes = scan.validBytes;
+            this.lastLsn = scan.lastLsn;
+        }
+        this.durableLsn = lastLsn;
+    }
+
+    /**
+     * Append a record and wait until it is on disk
+     * @param record the record to append
+     * @return the sequence number given to the record
+     * @throws UncheckedIOException if the log could not be written
+     */
+    public long append(LogRecord record) {
+        byte[] payload = encode(record);
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            throwIfFailed();
+
+            long lsn = enqueue(record, payload);
+            awaitDurable(lsn);
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append several records and wait until all of them are on disk
+     * The records get consecutive sequence numbers and share one flush
+     * @param records the records to append, in order
+     * @return the sequence number given to the last record, or the last
+     * sequence number so far if there are none
+     * @throws UncheckedIOException if the log could not be written
+     */
+    public long appendAll(List<LogRecord> records) {
+        long lsn = write(records);
+        flush(lsn);
+        return lsn;
+    }
+
+    /**
+     * Give records their sequence numbers without waiting for the disk
+     * Lets a caller fix the order of its records while it still holds its
+     * own locks; it must call flush() before reporting the change as done
+     * @param records the records to append, in order
+     * @return the sequence number given to the last record, or the last
+     * sequence number so far if there are none
+     * @throws UncheckedIOException if the log could not be written
+     */
+    long write(List<LogRecord> records) {
+        byte[][] payloads = new byte[records.size()][];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = encode(records.get(i));
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            throwIfFailed();
+
+            long lsn = lastLsn;
+            for (int i = 0; i < payloads.length; i++) {
+                lsn = enqueue(records.get(i), payloads[i]);
+            }
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until everything up to a sequence number is on disk
+     * @param lsn sequence number that has to be durable
+     * @throws UncheckedIOException if the log could not be written
+     */
+    void flush(long lsn) {
+        lock.lock();
+        try {
+            awaitDurable(lsn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add an encoded record to the pending batch
+     * Must be called with the lock held
+     * @param record the record
+     * @param payload its encoded payload
+     * @return the sequence number given to the record
+     */
+    private long enqueue(LogRecord record, byte[] payload) {
+        long lsn = ++lastLsn;
+        int length = 8 + 1 + payload.length;
+        ensurePendingCapacity(4 + length + 4);
+        int start = pending.position();
+        pending.putInt(length);
+        pending.putLong(lsn);
+        pending.put((byte) record.getType().ordinal());
+        pending.put(payload);
+        crc.reset();
+        crc.update(pending.array(), start + 4, length);
+        pending.putInt((int) crc.getValue());
+        return lsn;
+    }
+
+    /**
+     * Wait until everything up to a sequence number is on disk, flushing the
+     * pending batch ourselves if no other caller is doing it
+     * Must be called with the lock held
+     * @param lsn sequence number that has to be durable
+     */
+    private void awaitDurable(long lsn) {
+        while (durableLsn < lsn) {
+            throwIfFailed();
+            if (flushing) {
+                flushed.awaitUninterruptibly();
+                continue;
+            }
+
+            // Become the leader for everything appended so far
+            flushing = true;
+            ByteBuffer batch = pending;
+            pending = writing;
+            pending.clear();
+            writing = batch;
+            long batchEnd = lastLsn;
+
+            IOException error = null;
+            lock.unlock();
+            try {
+                batch.flip();
+                writeBatch(batch, batchEnd);
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                lock.lock();
+            }
+
+            flushing = false;
+            if (error != null) {
+                failure = error;
+            } else {
+                durableLsn = batchEnd;
+            }
+            flushed.signalAll();
+        }
+    }
+
+    /**
+     * Write and fsync one batch, starting a new segment afterwards if the
+     * current one is full
+     * @param batch encoded records
+     * @param batchEnd sequence number of the last record in the batch
+     * @throws IOException if writing fails
+     */
+    private void writeBatch(ByteBuffer batch, long batchEnd) throws IOException {
+        while (batch.hasRemaining()) {
+            segmentBytes += channel.write(batch);
+        }
+        channel.force(false);
+
+        if (segmentBytes >= segmentSize) {
+            channel.close();
+            openSegment(batchEnd + 1);
+        }
+    }
+
+    /**
+     * Create a new segment and make it the current one
+     * @param firstLsn sequence number of the first record it will hold
+     * @throws IOException if the file cannot be created
+     */
+    private void openSegment(long firstLsn) throws IOException {
+        Path file = segmentPath(directory, firstLsn);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        segmentBytes = HEADER_SIZE;
+    }
+
+    private void ensurePendingCapacity(int extra) {
+        if (pending.remaining() < extra) {
+            int size = Math.max(pending.capacity() * 2, pending.position() + extra);
+            ByteBuffer grown = ByteBuffer.allocate(size);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private void throwIfFailed() {
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+    }
+
+    private static byte[] encode(LogRecord record) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            record.writePayload(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read every record from a sequence number onwards, in order
+     * Records appended while this runs may or may not be seen
+     * @param fromLsn first sequence number wanted
+     * @param consumer receives each record
+     * @return number of records passed to the consumer
+     * @throws IOException if a segment other than the last is damaged
+     */
+    public long replay(long fromLsn, Consumer<LogRecord> consumer) throws IOException {
+        return replay(fromLsn, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Read the records in a range of sequence numbers, in order
+     * @param fromLsn first sequence number wanted
+     * @param toLsn last sequence number wanted
+     * @param consumer receives each record
+     * @return number of records passed to the consumer
+     * @throws IOException if a segment other than the last is damaged
+     */
+    public long replay(long fromLsn, long toLsn, Consumer<LogRecord> consumer) throws IOException {
+        ArrayList<Long> segments = listSegments(directory);
+        long count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            boolean last = (i == segments.size() - 1);
+            // Skip segments that end before the requested start
+            if (!last && segments.get(i + 1) <= fromLsn) {
+                continue;
+            }
+            if (segments.get(i) > toLsn) {
+                break;
+            }
+            Path file = segmentPath(directory, segments.get(i));
+            SegmentScan scan = scanSegment(file, segments.get(i), fromLsn, toLsn, consumer);
+            // Stopping at toLsn leaves the rest of the segment unread on purpose
+            if (!last && scan.lastLsn < toLsn && scan.validBytes < Files.size(file)) {
+                throw new IOException("Damaged log segment " + file);
+            }
+            count += scan.delivered;
+        }
+        return count;
+    }
+
+    /**
+     * Delete segments whose records are all covered by a snapshot
+     * The current segment is never deleted
+     * @param lsn last sequence number contained in the snapshot
+     * @return number of segments deleted
+     * @throws IOException if a segment cannot be deleted
+     */
+    public int deleteSegmentsThrough(long lsn) throws IOException {
+        ArrayList<Long> segments = listSegments(directory);
+        int deleted = 0;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            // Segment i ends right before segment i + 1 starts
+            if (segments.get(i + 1) - 1 > lsn) {
+                break;
+            }
+            Files.deleteIfExists(segmentPath(directory, segments.get(i)));
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Get the sequence number up to which every record is on disk
+     * @return durable LSN, 0 if the log is empty
+     */
+    public long getDurableLsn() {
+        lock.lock();
+        try {
+            return durableLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the sequence number of the last appended record
+     * @return last LSN, 0 if the log is empty
+     */
+    public long getLastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the directory holding the segments
+     * @return log directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Flush anything pending and close the current segment
+     * @throws IOException if the final flush fails
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (failure == null) {
+                awaitDurable(lastLsn);
+            }
+            closed = true;
+            channel.close();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---- Segment files ----
+
+    /** Result of reading one segment */
+    private static final class SegmentScan {
+        long validBytes;    // Length of the file up to the last good record
+        long lastLsn;       // LSN of the last good record
+        long delivered;     // Records passed to the consumer
+    }
+
+    /**
+     * Read the records of one segment until its end or the first damaged one
+     * @param file the segment
+     * @param firstLsn sequence number the segment starts at
+     * @param fromLsn records before this are checked but not decoded
+     * @param toLsn reading stops after this record
+     * @param consumer receives records, or null to only check the segment
+     * @return what was found
+     * @throws IOException if the file cannot be read or is not a log segment
+     */
+    private static SegmentScan scanSegment(Path file, long firstLsn, long fromLsn, long toLsn,
+                                           Consumer<LogRecord> consumer) throws IOException {
+        SegmentScan scan = new SegmentScan();
+        scan.lastLsn = firstLsn - 1;
+        CRC32 checksum = new CRC32();
+        LogEventType[] types = LogEventType.values();
+
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a log segment, or unsupported version: " + file);
+            }
+            scan.validBytes = HEADER_SIZE;
+
+            byte[] body = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                    if (length < 9 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    if (body.length < length) {
+                        body = new byte[Math.max(length, body.length * 2)];
+                    }
+                    in.readFully(body, 0, length);
+                    int storedCrc = in.readInt();
+                    checksum.reset();
+                    checksum.update(body, 0, length);
+                    if ((int) checksum.getValue() != storedCrc) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;  // Torn record at the end of the segment
+                }
+
+                ByteBuffer header = ByteBuffer.wrap(body, 0, 9);
+                long lsn = header.getLong();
+                int type = header.get() & 0xFF;
+                if (type >= types.length) {
+                    break;
+                }
+                if (consumer != null && lsn >= fromLsn) {
+                    DataInputStream payload = new DataInputStream(
+                            new ByteArrayInputStream(body, 9, length - 9));
+                    consumer.accept(LogRecord.readPayload(types[type], lsn, payload));
+                    scan.delivered++;
+                }
+                scan.lastLsn = lsn;
+                scan.validBytes += 4 + length + 4;
+                if (lsn >= toLsn) {
+                    break;
+                }
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * List the first sequence numbers of all segments in a directory, oldest
+     * first
+     * @param directory log directory
+     * @return sorted first LSNs
+     * @throws IOException if the directory cannot be listed
+     */
+    static ArrayList<Long> listSegments(Path directory) throws IOException {
+        ArrayList<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(
+                                name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            });
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    static Path segmentPath(Path directory, long firstLsn) {
+        return directory.resolve(PREFIX + String.format("%020d", firstLsn) + SUFFIX);
+    }
+}
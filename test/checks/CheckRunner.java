@@ -0,0 +1,63 @@
+package checks;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Runs the self-checking tests under test/, with no test library needed:
+ *
+ *     ant check
+ *
+ * Each check is a class with a main method that throws when something is
+ * wrong. Add new checks to CHECKS.
+ * @author Haryad
+ */
+public final class CheckRunner {
+
+    private static final String[] CHECKS = {
+        "models.SpotAllocationStressCheck",
+        "models.TariffCheck",
+        "services.LogOrderCheck",
+        "services.PaymentCheck",
+        "services.ReservationCheck",
+        "services.WaitlistCheck",
+    };
+
+    private CheckRunner() {
+    }
+
+    /**
+     * Fail the running check unless a condition holds
+     * @param condition what must be true
+     * @param message what went wrong otherwise
+     */
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Run every check, or only those named on the command line
+     * @param args class names of the checks to run
+     * @throws Exception if a check cannot be loaded
+     */
+    public static void main(String[] args) throws Exception {
+        String[] names = (args.length > 0) ? args : CHECKS;
+        int failed = 0;
+        for (String name : names) {
+            long start = System.nanoTime();
+            try {
+                Class.forName(name).getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+                System.out.printf("PASS %s (%d ms)%n", name, (System.nanoTime() - start) / 1_000_000);
+            } catch (InvocationTargetException e) {
+                failed++;
+                System.out.println("FAIL " + name + " - " + e.getCause());
+                e.getCause().printStackTrace(System.out);
+            }
+        }
+        System.out.println((names.length - failed) + " of " + names.length + " checks passed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package models;
+
+import static checks.CheckRunner.check;
+
+import enums.EventLevel;
+import enums.SpotStorage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gates on many threads park and remove vehicles of every type at random,
+ * twice as many plates as spots, and no spot may ever hold two vehicles
+ * <p>
+ * Every successful park claims its spot in a shared map, and a vehicle
+ * gives the claim up before it leaves, so a second park into a spot that
+ * is still taken shows up as a clash. Some parks go through in batches,
+ * so bulk claims race single ones. At the end the lot's spots, plate
+ * index and counts must all agree. Runs for each kind of spot storage.</p>
+ * @author Haryad
+ */
+public class SpotAllocationStressCheck {
+
+    private static final int SPOTS = 2000;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 50_000;
+    private static final int BATCH = 4;
+
+    public static void main(String[] args) throws Exception {
+        EventLevel level = EventLog.getLevel();
+        EventLog.setLevel(EventLevel.OFF);
+        try {
+            run(new ParkingLot("Stress", "Objects", SPOTS, SpotStorage.OBJECTS));
+            run(new ParkingLot("Stress", "Compact", SPOTS, SpotStorage.COMPACT));
+            Path dir = Files.createTempDirectory("spot-stress");
+            ParkingLot mapped = ParkingLot.open("Stress", "Mapped", SPOTS, dir.resolve("spots.dat"));
+            try {
+                run(mapped);
+            } finally {
+                mapped.closeStorage();
+                Files.deleteIfExists(dir.resolve("spots.dat"));
+                Files.deleteIfExists(dir);
+            }
+        } finally {
+            EventLog.setLevel(level);
+        }
+    }
+
+    private static void run(ParkingLot lot) throws Exception {
+        Vehicle[] vehicles = new Vehicle[SPOTS * 2];
+        for (int i = 0; i < vehicles.length; i++) {
+            vehicles[i] = switch (i % 3) {
+                case 0 -> new Car("C" + i, "Red", "Ford", "Focus", 2020);
+                case 1 -> new Motorcycle("M" + i, "Red", "Honda", "CB", 2020, i % 2 == 0);
+                default -> new Truck("T" + i, "Red", "Volvo", "FH", 2020, 1 + i % 5);
+            };
+        }
+        ConcurrentHashMap<Integer, String> holders = new ConcurrentHashMap<>();
+        AtomicInteger clashes = new AtomicInteger();
+        AtomicInteger parks = new AtomicInteger();
+
+        ExecutorService gates = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            done.add(gates.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int k = 0; k < OPERATIONS; k++) {
+                    Vehicle vehicle = vehicles[random.nextInt(vehicles.length)];
+                    String plate = vehicle.getLicensePlate();
+                    int operation = random.nextInt(8);
+                    if (operation < 3) {
+                        ParkingSpot spot = lot.parkVehicle(vehicle);
+                        if (spot != null) {
+                            parks.incrementAndGet();
+                            if (holders.putIfAbsent(spot.getSpotNumber(), plate) != null) {
+                                clashes.incrementAndGet();
+                            }
+                        }
+                    } else if (operation == 3) {
+                        List<Vehicle> batch = new ArrayList<>(BATCH);
+                        batch.add(vehicle);
+                        for (int b = 1; b < BATCH; b++) {
+                            batch.add(vehicles[random.nextInt(vehicles.length)]);
+                        }
+                        List<ParkingSpot> spots = lot.parkVehicles(batch);
+                        for (int b = 0; b < BATCH; b++) {
+                            ParkingSpot spot = spots.get(b);
+                            if (spot != null) {
+                                parks.incrementAndGet();
+                                if (holders.putIfAbsent(spot.getSpotNumber(),
+                                        batch.get(b).getLicensePlate()) != null) {
+                                    clashes.incrementAndGet();
+                                }
+                            }
+                        }
+                    } else {
+                        ParkingSpot spot = lot.findSpotByVehicle(plate);
+                        // Give up the claim first, so a gate that parks
+                        // into the freed spot never sees it still held
+                        if (spot != null && holders.remove(spot.getSpotNumber(), plate)
+                                && lot.removeVehicle(plate) == null) {
+                            holders.put(spot.getSpotNumber(), plate);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        gates.shutdown();
+
+        check(clashes.get() == 0, lot.getStorage() + ": " + clashes + " spots assigned twice");
+        check(parks.get() > SPOTS, lot.getStorage() + ": too few parks to mean anything: " + parks);
+        Set<String> plates = new HashSet<>();
+        int occupied = 0;
+        int available = 0;
+        for (ParkingSpot spot : lot.getSpots()) {
+            if (spot.isOccupied()) {
+                occupied++;
+                String plate = spot.getCurrentVehicle().getLicensePlate();
+                check(plates.add(plate), lot.getStorage() + ": " + plate + " parked twice");
+                check(lot.findSpotByVehicle(plate).getSpotNumber() == spot.getSpotNumber(),
+                        lot.getStorage() + ": plate index out of step for " + plate);
+                check(plate.equals(holders.get(spot.getSpotNumber())),
+                        lot.getStorage() + ": spot " + spot.getSpotNumber() + " holds an unclaimed vehicle");
+            } else if (spot.isAvailable()) {
+                available++;
+            }
+        }
+        check(occupied == holders.size(), lot.getStorage() + ": " + holders.size() + " claims, " + occupied + " occupied");
+        check(occupied == lot.getOccupiedSpotsCount(), lot.getStorage() + ": occupied count out of step");
+        check(available == lot.getAvailableSpotsCount(), lot.getStorage() + ": available count out of step");
+    }
+}
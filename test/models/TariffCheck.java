@@ -0,0 +1,90 @@
+package models;
+
+import static checks.CheckRunner.check;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fees at the edges of a tariff's rules: a stay exactly as long as the
+ * grace period, one just past it, stays at and past the daily cap, and
+ * stays running over midnight
+ * <p>
+ * The cap is per day of the stay, counted from entry, not per calendar
+ * day, so a stay over midnight is billed as one stretch. Every fee is
+ * worked out one stay at a time and in one bulk pass, and both must
+ * agree.</p>
+ * @author Haryad
+ */
+public class TariffCheck {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // 2023-11-14 00:00 UTC
+    private static final long MIDNIGHT = 1_699_920_000_000L;
+    private static final long RATE_CENTS = 600;  // 10 cents a minute
+
+    public static void main(String[] args) {
+        Tariff tariff = Tariff.standard();  // 15 minutes free, by the minute, 8 hours a day at most
+        long cap = 8 * 60 * 10;
+
+        // Grace period
+        checkFee(tariff, 0, 0, "no stay");
+        checkFee(tariff, 15 * MINUTE, 0, "exactly the grace period");
+        checkFee(tariff, 15 * MINUTE + 1, 16 * 10, "just past the grace period");
+        checkFee(tariff, 16 * MINUTE, 16 * 10, "a minute past the grace period");
+
+        // Daily cap
+        checkFee(tariff, 8 * HOUR - MINUTE, cap - 10, "just under the cap");
+        checkFee(tariff, 8 * HOUR, cap, "exactly the cap");
+        checkFee(tariff, 8 * HOUR + 1, cap, "just past the cap");
+        checkFee(tariff, DAY, cap, "a whole day");
+        checkFee(tariff, DAY + MINUTE, cap + 10, "a minute into the second day");
+        checkFee(tariff, DAY + 8 * HOUR, 2 * cap, "the cap on two days");
+        checkFee(tariff, 3 * DAY + 5 * MINUTE, 3 * cap + 5 * 10, "short last day after whole days");
+
+        // Over midnight
+        checkStay(tariff, MIDNIGHT - 10 * MINUTE, MIDNIGHT + 20 * MINUTE, 30 * 10, "half an hour over midnight");
+        checkStay(tariff, MIDNIGHT - 4 * HOUR, MIDNIGHT + 5 * HOUR, cap, "capped once, not per calendar day");
+        checkStay(tariff, MIDNIGHT - 5 * MINUTE, MIDNIGHT + 5 * MINUTE, 0, "within grace over midnight");
+        checkStay(tariff, MIDNIGHT + 22 * HOUR, MIDNIGHT + DAY + 22 * HOUR + MINUTE, cap + 10,
+                "a day and a minute over midnight");
+
+        // Whole hours, each started hour in full
+        checkFee(Tariff.HOURLY, HOUR, RATE_CENTS, "exactly an hour");
+        checkFee(Tariff.HOURLY, HOUR + 1, 2 * RATE_CENTS, "just past an hour");
+        checkFee(Tariff.HOURLY, DAY + 1, 25 * RATE_CENTS, "just past a day");
+
+        // Steps that divide a day bill a long stay as if it were not split into days
+        Tariff quarters = new Tariff(0, 15, 2 * 24 * 60);
+        checkFee(quarters, DAY + MINUTE, (24 * 60 + 15) * 10, "a minute into the second day, by the quarter");
+        boolean refused;
+        try {
+            new Tariff(0, 7, 2 * 24 * 60);
+            refused = false;
+        } catch (IllegalArgumentException e) {
+            refused = true;
+        }
+        check(refused, "increment that does not divide a day accepted");
+
+        // The rate factor scales the fee, rounded to the nearest cent
+        check(tariff.calculateFeeCents(RATE_CENTS, 1500, 16 * MINUTE) == 16 * 15,
+                "rate factor not applied");
+        check(tariff.calculateFeeCents(100, PricingPolicy.BASE_PERMILLE, 16 * MINUTE) == 27,
+                "fee not rounded to the nearest cent");
+    }
+
+    private static void checkFee(Tariff tariff, long durationMillis, long expectedCents, String what) {
+        checkStay(tariff, MIDNIGHT, MIDNIGHT + durationMillis, expectedCents, what);
+    }
+
+    private static void checkStay(Tariff tariff, long entry, long exit, long expectedCents, String what) {
+        long single = tariff.calculateFeeCents(RATE_CENTS, PricingPolicy.BASE_PERMILLE, exit - entry);
+        check(single == expectedCents, what + ": charged " + single + " cents, expected " + expectedCents);
+
+        long[] fees = new long[1];
+        tariff.calculateFeesCents(new long[] {entry}, new long[] {RATE_CENTS * PricingPolicy.BASE_PERMILLE},
+                0, 1, exit, fees);
+        check(fees[0] == single, what + ": bulk charged " + fees[0] + " cents, single " + single);
+    }
+}
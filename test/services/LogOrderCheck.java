@@ -0,0 +1,147 @@
+package services;
+
+import static checks.CheckRunner.check;
+
+import enums.EventLevel;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import models.Car;
+import models.EventLog;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Vehicle;
+
+/**
+ * Gates park and unpark the same few plates at once, one at a time and
+ * in batches, with a write-ahead log attached; replaying the log into an
+ * empty lot must end with every vehicle in the spot it is really in
+ * <p>
+ * The cars are slow to encode, which holds a gate between changing the
+ * lot and appending the record long enough for another gate to change
+ * the same plate in between, if nothing stops it. Besides the random
+ * mix, each plate in turn is parked by one gate and unparked by another
+ * the moment it shows up in the lot.</p>
+ * @author Haryad
+ */
+public class LogOrderCheck {
+
+    private static final int SPOTS = 40;
+    private static final int PLATES = 48;
+    private static final int THREADS = 6;
+    private static final int OPERATIONS = 300;
+
+    /** Car that takes a moment to write into the log */
+    private static final class SlowCar extends Car {
+        SlowCar(String licensePlate) {
+            super(licensePlate, "Red", "Ford", "Focus", 2020);
+        }
+
+        @Override
+        public String getBrand() {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getBrand();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        EventLevel level = EventLog.getLevel();
+        EventLog.setLevel(EventLevel.OFF);
+        Path dir = Files.createTempDirectory("log-order");
+        try {
+            run(dir);
+        } finally {
+            EventLog.setLevel(level);
+            delete(dir);
+        }
+    }
+
+    private static void run(Path dir) throws Exception {
+        ParkingLot lot = new ParkingLot("Order", SPOTS);
+        ParkingManager manager = new ParkingManager(lot);
+        WriteAheadLog log = new WriteAheadLog(dir);
+        manager.setWriteAheadLog(log);
+
+        Vehicle[] cars = new Vehicle[PLATES];
+        for (int i = 0; i < PLATES; i++) {
+            cars[i] = new SlowCar("P" + i);
+        }
+        ExecutorService gates = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            done.add(gates.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int k = 0; k < OPERATIONS; k++) {
+                    Vehicle car = cars[random.nextInt(PLATES)];
+                    switch (random.nextInt(6)) {
+                        case 0, 1 -> manager.park(car);
+                        case 2, 3 -> manager.unpark(car.getLicensePlate());
+                        case 4 -> manager.parkAll(List.of(car, cars[random.nextInt(PLATES)]));
+                        default -> manager.unparkAll(List.of(car.getLicensePlate(),
+                                cars[random.nextInt(PLATES)].getLicensePlate()));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        manager.unparkAll(platesOf(cars));
+
+        for (Vehicle car : cars) {
+            Future<?> leave = gates.submit(() -> {
+                while (lot.findSpotByVehicle(car.getLicensePlate()) == null) {
+                    Thread.onSpinWait();
+                }
+                manager.unpark(car.getLicensePlate());
+            });
+            manager.park(car);
+            leave.get();
+        }
+        gates.shutdown();
+        log.close();
+
+        ParkingLot recovered = new ParkingLot("Order", SPOTS);
+        try (WriteAheadLog reopened = new WriteAheadLog(dir)) {
+            LogRecovery.recover(reopened, recovered, new TicketGenerator());
+        }
+        for (ParkingSpot spot : lot.getSpots()) {
+            Vehicle live = spot.getCurrentVehicle();
+            Vehicle replayed = recovered.findSpotByNumber(spot.getSpotNumber()).getCurrentVehicle();
+            String expected = (live != null) ? live.getLicensePlate() : null;
+            String actual = (replayed != null) ? replayed.getLicensePlate() : null;
+            check((expected == null) ? actual == null : expected.equals(actual),
+                    "spot " + spot.getSpotNumber() + " holds " + expected + " but replays as " + actual);
+        }
+        check(recovered.getOccupiedSpotsCount() == lot.getOccupiedSpotsCount(), "occupied counts differ");
+    }
+
+    private static List<String> platesOf(Vehicle[] vehicles) {
+        List<String> plates = new ArrayList<>();
+        for (Vehicle vehicle : vehicles) {
+            plates.add(vehicle.getLicensePlate());
+        }
+        return plates;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package services;
+
+import static checks.CheckRunner.check;
+
+import enums.EventLevel;
+import enums.PaymentStatus;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.Car;
+import models.EventLog;
+import models.ParkingLot;
+import models.Payment;
+import models.Ticket;
+
+/**
+ * Paying one ticket several times through a settlement pipeline charges
+ * the card processor once
+ * <p>
+ * The backend counts what it is asked to charge and can be told to
+ * decline. A ticket paid twice in a row, paid from many lanes at once,
+ * and paid again after a decline must each end with exactly one settled
+ * charge.</p>
+ * @author Haryad
+ */
+public class PaymentCheck {
+
+    private static final int LANES = 16;
+
+    private static final AtomicInteger charged = new AtomicInteger();
+    private static final AtomicBoolean declining = new AtomicBoolean();
+
+    public static void main(String[] args) throws Exception {
+        EventLevel level = EventLog.getLevel();
+        EventLog.setLevel(EventLevel.OFF);
+        SettlementPipeline pipeline = new SettlementPipeline(batch -> {
+            boolean[] accepted = new boolean[batch.size()];
+            for (int i = 0; i < accepted.length; i++) {
+                accepted[i] = !declining.get();
+                if (accepted[i]) {
+                    charged.incrementAndGet();
+                }
+            }
+            return accepted;
+        }, 8, 2, 5, TimeUnit.MILLISECONDS);
+        try {
+            PaymentProcessor processor = new PaymentProcessor(pipeline);
+            TicketGenerator tickets = new TicketGenerator();
+            ParkingLot lot = new ParkingLot("Payments", 40);
+            twiceInARow(processor, completedTicket(lot, tickets, "TWICE"));
+            fromManyLanes(processor, completedTicket(lot, tickets, "LANES"));
+            againAfterDecline(processor, completedTicket(lot, tickets, "DECLINED"));
+        } finally {
+            pipeline.close();
+            EventLog.setLevel(level);
+        }
+    }
+
+    /** The second payment is queued while the first is still with the backend */
+    private static void twiceInARow(PaymentProcessor processor, Ticket ticket) {
+        charged.set(0);
+        CompletableFuture<Payment> first = processor.submitPayment(ticket);
+        CompletableFuture<Payment> second = processor.submitPayment(ticket);
+        check(first.join().getStatus() == PaymentStatus.SETTLED, "first payment not settled");
+        check(second.join().getStatus() == PaymentStatus.DUPLICATE,
+                "second payment " + second.join().getStatus());
+        check(charged.get() == 1, "charged " + charged.get() + " times");
+        check(ticket.isPaid(), "ticket not marked paid");
+        check(processor.submitPayment(ticket).join().getStatus() == PaymentStatus.DUPLICATE,
+                "paid ticket paid again");
+        check(charged.get() == 1, "paid ticket charged again");
+    }
+
+    /** Lanes racing to pay the same ticket */
+    private static void fromManyLanes(PaymentProcessor processor, Ticket ticket) throws Exception {
+        charged.set(0);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Payment>> results = new ArrayList<>();
+        List<Thread> lanes = new ArrayList<>();
+        for (int i = 0; i < LANES; i++) {
+            CompletableFuture<Payment> result = new CompletableFuture<>();
+            results.add(result);
+            lanes.add(Thread.ofVirtual().start(() -> {
+                try {
+                    start.await();
+                    processor.submitPayment(ticket).whenComplete((payment, error) -> {
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        } else {
+                            result.complete(payment);
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    result.completeExceptionally(e);
+                }
+            }));
+        }
+        start.countDown();
+        int settled = 0;
+        for (CompletableFuture<Payment> result : results) {
+            PaymentStatus status = result.get(5, TimeUnit.SECONDS).getStatus();
+            check(status == PaymentStatus.SETTLED || status == PaymentStatus.DUPLICATE,
+                    "lane payment " + status);
+            if (status == PaymentStatus.SETTLED) {
+                settled++;
+            }
+        }
+        for (Thread lane : lanes) {
+            lane.join();
+        }
+        check(settled == 1, settled + " lanes settled the same ticket");
+        check(charged.get() == 1, "charged " + charged.get() + " times");
+    }
+
+    /** A declined payment gives the ticket up, so paying it again goes through */
+    private static void againAfterDecline(PaymentProcessor processor, Ticket ticket) {
+        charged.set(0);
+        declining.set(true);
+        check(processor.submitPayment(ticket).join().getStatus() == PaymentStatus.DECLINED,
+                "payment not declined");
+        check(!ticket.isPaid(), "declined ticket marked paid");
+        declining.set(false);
+        check(processor.submitPayment(ticket).join().getStatus() == PaymentStatus.SETTLED,
+                "payment after a decline not settled");
+        check(charged.get() == 1, "charged " + charged.get() + " times");
+    }
+
+    private static Ticket completedTicket(ParkingLot lot, TicketGenerator tickets, String licensePlate) {
+        Car car = new Car(licensePlate, "Red", "Ford", "Focus", 2020);
+        tickets.generateTicket(car, lot.parkVehicle(car));
+        return tickets.completeTicket(licensePlate);
+    }
+}
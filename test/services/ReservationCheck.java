@@ -0,0 +1,138 @@
+package services;
+
+import static checks.CheckRunner.check;
+
+import enums.EventLevel;
+import enums.ReservationStatus;
+import enums.SpotSize;
+import enums.SpotStatus;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import models.Car;
+import models.EventLog;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Reservation;
+
+/**
+ * Reservations on a clock the check moves by hand: the index takes as
+ * many bookings of a size as there are spots and no more, windows past
+ * its horizon are neither booked nor counted, and a held spot whose
+ * vehicle never comes is given back to the lot
+ * <p>
+ * Nothing runs in the background; each step sets the clock and runs the
+ * timers that are due, so every hold and expiry happens at a known
+ * moment.</p>
+ * @author Haryad
+ */
+public class ReservationCheck {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long GRACE = 15 * MINUTE;
+    // On a minute, as the index books whole minutes
+    private static final long START = 1_699_999_980_000L;
+
+    public static void main(String[] args) {
+        EventLevel level = EventLog.getLevel();
+        EventLog.setLevel(EventLevel.OFF);
+        try {
+            capacity();
+            noShow();
+        } finally {
+            EventLog.setLevel(level);
+        }
+    }
+
+    /** Bookings count against the spots of their size, per moment of the window */
+    private static void capacity() {
+        AtomicLong now = new AtomicLong(START);
+        ParkingLot lot = new ParkingLot("Reservations", 20);
+        ReservationManager reservations = new ReservationManager(new ParkingManager(lot), GRACE, now::get);
+        int regular = lot.getSpotsCountBySize(SpotSize.REGULAR);
+
+        for (int i = 0; i < regular; i++) {
+            check(reservations.reserve("R" + i, SpotSize.REGULAR, START + HOUR, START + 3 * HOUR) != null,
+                    "booking " + i + " of " + regular + " rejected");
+        }
+        check(reservations.reserve("OVER", SpotSize.REGULAR, START + 2 * HOUR, START + 4 * HOUR) == null,
+                "overlapping booking past capacity accepted");
+        check(reservations.getAvailableSpots(SpotSize.REGULAR, START + HOUR, START + 2 * HOUR) == 0,
+                "full window still shows free spots");
+        check(reservations.getAvailableSpots(SpotSize.REGULAR, START, START + HOUR) == regular,
+                "window before the bookings is not free");
+        check(reservations.reserve("AFTER", SpotSize.REGULAR, START + 3 * HOUR, START + 4 * HOUR) != null,
+                "booking starting as the others end rejected");
+        check(reservations.reserve("SMALL", SpotSize.COMPACT, START + HOUR, START + 3 * HOUR) != null,
+                "other sizes affected by a full size");
+
+        Reservation cancelled = reservations.reserve("LATE", SpotSize.REGULAR, START + 4 * HOUR, START + 5 * HOUR);
+        check(cancelled != null, "free window rejected");
+        check(reservations.getAvailableSpots(SpotSize.REGULAR, START + 4 * HOUR, START + 5 * HOUR) == regular - 1,
+                "booking not counted");
+        check(reservations.cancel(cancelled.getReservationId()), "cancel failed");
+        check(reservations.getAvailableSpots(SpotSize.REGULAR, START + 4 * HOUR, START + 5 * HOUR) == regular,
+                "cancelled booking still counted");
+
+        check(reservations.reserve("FAR", SpotSize.REGULAR, START + 30 * 24 * HOUR, START + 30 * 24 * HOUR + HOUR)
+                == null, "booking past the horizon accepted");
+        check(reservations.getAvailableSpots(SpotSize.REGULAR, START, START + 30 * 24 * HOUR) == 0,
+                "free spots shown for a month-long window");
+        check(reservations.getAvailableSpots(SpotSize.REGULAR, START + 7 * 24 * HOUR, START + 7 * 24 * HOUR + HOUR)
+                == 0, "free spots shown past the horizon");
+        check(reservations.getAvailableSpots(SpotSize.REGULAR, START + 5 * 24 * HOUR, START + 5 * 24 * HOUR + HOUR)
+                == regular, "window inside the horizon not free");
+    }
+
+    /** A held spot is released after the grace period and can be parked in again */
+    private static void noShow() {
+        AtomicLong now = new AtomicLong(START);
+        ParkingLot lot = new ParkingLot("Reservations", 20);
+        ParkingManager manager = new ParkingManager(lot);
+        ReservationManager reservations = new ReservationManager(manager, GRACE, now::get);
+        int regular = lot.getSpotsCountBySize(SpotSize.REGULAR);
+
+        Reservation shows = reservations.reserve("SHOWS", SpotSize.REGULAR, START + HOUR, START + 2 * HOUR);
+        Reservation absent = reservations.reserve("ABSENT", SpotSize.REGULAR, START + HOUR, START + 2 * HOUR);
+
+        now.set(START + HOUR - 1);
+        reservations.runDue();
+        check(absent.getStatus() == ReservationStatus.BOOKED, "spot held before the window");
+        check(lot.getAvailableSpotsCountBySize(SpotSize.REGULAR) == regular, "spot taken before the window");
+
+        now.set(START + HOUR);
+        reservations.runDue();
+        check(absent.getStatus() == ReservationStatus.HELD && shows.getStatus() == ReservationStatus.HELD,
+                "no spot held at the start of the window");
+        ParkingSpot held = absent.getSpot();
+        check(held.getStatus() == SpotStatus.RESERVED, "held spot is not reserved");
+        check(lot.getSpotsCount(SpotSize.REGULAR, SpotStatus.RESERVED) == 2, "reserved count wrong");
+        check(reservations.checkIn(shows.getReservationId(),
+                new Car("SHOWS", "Red", "Ford", "Focus", 2020)) != null, "check-in failed");
+
+        now.set(START + HOUR + GRACE - 1);
+        reservations.runDue();
+        check(absent.getStatus() == ReservationStatus.HELD, "expired before the grace period ended");
+
+        now.set(START + HOUR + GRACE);
+        reservations.runDue();
+        check(absent.getStatus() == ReservationStatus.EXPIRED, "no-show not expired");
+        check(held.isAvailable(), "expired spot not released");
+        check(lot.getSpotsCount(SpotSize.REGULAR, SpotStatus.RESERVED) == 0, "reserved count not released");
+        check(lot.getAvailableSpotsCountBySize(SpotSize.REGULAR) == regular - 1, "released spot not counted free");
+        check(reservations.findReservation(absent.getReservationId()) == null, "expired reservation still open");
+        check(reservations.getAvailableSpots(SpotSize.REGULAR, START + HOUR + GRACE, START + 2 * HOUR)
+                == regular - 1, "expired booking still counted");
+
+        int parked = 0;
+        while (manager.park(new Car("WALK" + parked, "Red", "Ford", "Focus", 2020)) != null) {
+            parked++;
+        }
+        check(held.isOccupied(), "released spot never parked in");
+
+        now.set(START + 2 * HOUR);
+        reservations.runDue();
+        check(shows.getStatus() == ReservationStatus.COMPLETED, "checked-in reservation not completed");
+        check(reservations.getOpenReservations() == 0, "reservations left open");
+    }
+}
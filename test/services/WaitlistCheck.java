@@ -0,0 +1,128 @@
+package services;
+
+import static checks.CheckRunner.check;
+
+import enums.EventLevel;
+import enums.EventType;
+import enums.SpotSize;
+import interfaces.EventSink;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.Car;
+import models.EventLog;
+import models.Motorcycle;
+import models.ParkingLot;
+import models.ParkingSpot;
+import models.Truck;
+
+/**
+ * A waiter whose time runs out or whose caller gives up while it is
+ * claimed leaves the line exactly once, and free spots go to the oldest
+ * vehicle they fit whatever size it needs
+ * <p>
+ * The claim is held by the check itself, so the timeout or cancel always
+ * lands between the claim and the put back. Timeouts are counted from the
+ * events they report.</p>
+ * @author Haryad
+ */
+public class WaitlistCheck {
+
+    private static final AtomicInteger timeouts = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        EventLevel level = EventLog.getLevel();
+        EventSink sink = EventLog.getSink();
+        EventLog.setLevel(EventLevel.WARN);
+        EventLog.setSink(event -> {
+            if (event.getType() == EventType.WAIT_TIMED_OUT) {
+                timeouts.incrementAndGet();
+            }
+        });
+        try {
+            timeoutWhileClaimed();
+            cancelWhileClaimed();
+            oldestFirstAcrossSizes();
+        } finally {
+            EventLog.setSink(sink);
+            EventLog.setLevel(level);
+        }
+    }
+
+    /** The timeout finishes the claimed waiter; putting it back must not count it out again */
+    private static void timeoutWhileClaimed() throws Exception {
+        Waitlist waitlist = new Waitlist();
+        CompletableFuture<ParkingSpot> future = waitlist.add(car("SLOW"), SpotSize.REGULAR, 100, TimeUnit.MILLISECONDS);
+        Waitlist.Waiter waiter = waitlist.claim(SpotSize.REGULAR);
+        check(waiter != null, "waiter not claimed");
+        check(future.get(5, TimeUnit.SECONDS) == null, "timed out waiter given a spot");
+        check(waitlist.isEmpty(), "timed out waiter still counted");
+        // Reported just after the future completes
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (timeouts.get() == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+
+        waitlist.putBack(waiter);
+        check(waitlist.isEmpty(), "put back a waiter that had timed out");
+        check(waitlist.claim(SpotSize.REGULAR) == null, "timed out waiter claimed again");
+
+        waitlist.add(car("NEXT"), SpotSize.REGULAR, 1, TimeUnit.MINUTES);
+        check(!waitlist.isEmpty(), "new waiter not counted after a double count out");
+        check(waitlist.getWaitingCount(SpotSize.REGULAR) == 1, "wrong number waiting");
+        check(timeouts.get() == 1, "timeout reported " + timeouts.get() + " times");
+    }
+
+    /** A cancel while claimed is only seen at the put back, which lets the waiter go once */
+    private static void cancelWhileClaimed() {
+        Waitlist waitlist = new Waitlist();
+        CompletableFuture<ParkingSpot> future = waitlist.add(car("GONE"), SpotSize.REGULAR, 1, TimeUnit.MINUTES);
+        Waitlist.Waiter waiter = waitlist.claim(SpotSize.REGULAR);
+        check(future.cancel(false), "cancel failed");
+        check(!waitlist.isEmpty(), "claimed waiter let go by the cancel");
+
+        waitlist.putBack(waiter);
+        check(waitlist.isEmpty(), "cancelled waiter still counted");
+        check(waitlist.claim(SpotSize.REGULAR) == null, "cancelled waiter claimed again");
+
+        waitlist.add(car("NEXT"), SpotSize.REGULAR, 1, TimeUnit.MINUTES);
+        check(waitlist.getWaitingCount(SpotSize.REGULAR) == 1 && !waitlist.isEmpty(), "wrong number waiting");
+    }
+
+    /** A freed large spot goes to the car that waited longest, not to a motorcycle behind it */
+    private static void oldestFirstAcrossSizes() {
+        ParkingLot lot = new ParkingLot("Waitlist", 10);
+        ParkingManager manager = new ParkingManager(lot);
+        for (int i = 0; manager.park(new Truck("T" + i, "White", "Volvo", "FH", 2020, 12)) != null; i++) {
+            // Fill the large spots
+        }
+        for (int i = 0; manager.park(car("C" + i)) != null; i++) {
+            // Fill the regular spots
+        }
+        for (int i = 0; manager.park(motorcycle("M" + i)) != null; i++) {
+            // Fill the compact spots
+        }
+        check(lot.isFull(), "lot not full");
+
+        CompletableFuture<ParkingSpot> car = manager.parkOrWait(car("WAITING-CAR"), 1, TimeUnit.MINUTES);
+        CompletableFuture<ParkingSpot> bike = manager.parkOrWait(motorcycle("WAITING-BIKE"), 1, TimeUnit.MINUTES);
+        check(!car.isDone() && !bike.isDone(), "vehicles parked in a full lot");
+
+        // Freed behind the manager's back, as a released reservation would be
+        check(lot.removeVehicle("T0") != null, "truck not removed");
+        check(manager.serveWaitlist() == 1, "free spot not served");
+        ParkingSpot spot = car.getNow(null);
+        check(spot != null && spot.getSize() == SpotSize.LARGE, "oldest waiter did not get the large spot");
+        check(!bike.isDone(), "younger waiter served first");
+        check(manager.getWaitingCount(SpotSize.COMPACT) == 1, "motorcycle left the line");
+        bike.cancel(false);
+    }
+
+    private static Car car(String licensePlate) {
+        return new Car(licensePlate, "Red", "Ford", "Focus", 2020);
+    }
+
+    private static Motorcycle motorcycle(String licensePlate) {
+        return new Motorcycle(licensePlate, "Black", "Honda", "CB500", 2020, false);
+    }
+}